@@ -16,6 +16,7 @@ import org.apache.jena.sparql.function.FunctionEnv;
 import org.apache.jena.vocabulary.RDF;
 import org.topbraid.shacl.engine.ShapesGraph;
 import org.topbraid.shacl.util.FailureLog;
+import org.topbraid.shacl.validation.ConformanceCache;
 import org.topbraid.shacl.validation.DefaultShapesGraphProvider;
 import org.topbraid.shacl.validation.ValidationEngineFactory;
 import org.topbraid.shacl.validation.sparql.AbstractSPARQLExecutor;
@@ -63,6 +64,7 @@ public class HasShapeFunction extends AbstractFunction3 {
 		}
 		try {
 			if(SHACLRecursionGuard.start(focusNode, shapeNode)) {
+				ConformanceCache.markUncacheable();
 				if(JenaDatatypes.TRUE.asNode().equals(recursionIsError) || (oldFlag != null && oldFlag)) {
 					String message = "Unsupported recursion";
 					Model resultsModel = resultsModelTL.get();
@@ -81,32 +83,32 @@ public class HasShapeFunction extends AbstractFunction3 {
 			else {
 				
 				try {
-					Model model = ModelFactory.createModelForGraph(env.getActiveGraph());
-					RDFNode resource = model.asRDFNode(focusNode);
 					Dataset dataset = DatasetImpl.wrap(env.getDataset());
-					Resource shape = (Resource) dataset.getDefaultModel().asRDFNode(shapeNode);
-					Model results = doRun(resource, shape, dataset);
-					if(resultsModelTL.get() != null) {
-						resultsModelTL.get().add(results);
-					}
-					if(results.contains(null, RDF.type, DASH.FailureResult)) {
-						throw new ExprEvalException("Propagating failure from nested shapes");
-					}
+					boolean result = ConformanceCache.nodeConformsToShape(focusNode, shapeNode, getShapesGraphURI(dataset), dataset.getDefaultModel().getGraph(), () -> {
+						Model model = ModelFactory.createModelForGraph(env.getActiveGraph());
+						RDFNode resource = model.asRDFNode(focusNode);
+						Resource shape = (Resource) dataset.getDefaultModel().asRDFNode(shapeNode);
+						Model results = doRun(resource, shape, dataset);
+						if(resultsModelTL.get() != null) {
+							resultsModelTL.get().add(results);
+						}
+						if(results.contains(null, RDF.type, DASH.FailureResult)) {
+							throw new ExprEvalException("Propagating failure from nested shapes");
+						}
 
-					if(AbstractSPARQLExecutor.createDetails) {
-						boolean result = true;
-						for(Resource r : results.listSubjectsWithProperty(RDF.type, SH.ValidationResult).toList()) {
-							if(!results.contains(null, SH.detail, r)) {
-								result = false;
-								break;
+						if(AbstractSPARQLExecutor.createDetails) {
+							for(Resource r : results.listSubjectsWithProperty(RDF.type, SH.ValidationResult).toList()) {
+								if(!results.contains(null, SH.detail, r)) {
+									return false;
+								}
 							}
+							return true;
 						}
-						return NodeValue.makeBoolean(result);
-					}
-					else {
-						boolean result = !results.contains(null, RDF.type, SH.ValidationResult);
-						return NodeValue.makeBoolean(result);
-					}
+						else {
+							return !results.contains(null, RDF.type, SH.ValidationResult);
+						}
+					});
+					return NodeValue.makeBoolean(result);
 				}
 				finally {
 					SHACLRecursionGuard.end(focusNode, shapeNode);
@@ -119,13 +121,20 @@ public class HasShapeFunction extends AbstractFunction3 {
 	}
 
 
-	private Model doRun(RDFNode focusNode, Resource shape, Dataset dataset) {
+	private static URI getShapesGraphURI(Dataset dataset) {
 		URI shapesGraphURI = shapesGraph.get();
 		if(shapesGraphURI == null) {
 			shapesGraphURI = DefaultShapesGraphProvider.get().getDefaultShapesGraphURI(dataset);
 		}
+		return shapesGraphURI;
+	}
+
+
+	private Model doRun(RDFNode focusNode, Resource shape, Dataset dataset) {
+		URI shapesGraphURI = getShapesGraphURI(dataset);
 		Model shapesModel = dataset.getNamedModel(shapesGraphURI.toString());
-		ShapesGraph vsg = new ShapesGraph(shapesModel);
+		ConformanceCache cache = ConformanceCache.getCurrent();
+		ShapesGraph vsg = cache != null ? cache.getShapesGraph(shapesModel) : new ShapesGraph(shapesModel);
 		return ValidationEngineFactory.get().create(dataset, shapesGraphURI, vsg, null).validateNodesAgainstShape(
 				Collections.singletonList(focusNode), shape.asNode()).getModel();
 	}
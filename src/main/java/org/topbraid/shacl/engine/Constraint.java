@@ -1,6 +1,10 @@
 package org.topbraid.shacl.engine;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.jena.query.QuerySolutionMap;
 import org.apache.jena.rdf.model.RDFNode;
@@ -20,8 +24,16 @@ import org.topbraid.spin.util.JenaUtil;
  */
 public class Constraint {
 	
+	// The values of the parameters by variable name, resolved when the Constraint is created
+	private Map<String,RDFNode> bindings;
+	
 	private SHConstraintComponent component;
 	
+	// The total execution time and number of focus nodes reported via recordExecution
+	private AtomicLong executionNanos = new AtomicLong();
+	
+	private AtomicLong executionFocusNodes = new AtomicLong();
+	
 	private RDFNode parameterValue;
 	
 	private List<SHParameter> params;
@@ -34,30 +46,50 @@ public class Constraint {
 		this.params = params;
 		this.parameterValue = parameterValue;
 		this.shape = shape;
+		this.bindings = createBindings();
 	}
 
 	
 	public void addBindings(QuerySolutionMap map) {
-		if(parameterValue != null) {
-			SHParameter param = params.get(0);
-			if(!map.contains(param.getVarName())) {
-				map.add(param.getVarName(), parameterValue);
+		for(Map.Entry<String,RDFNode> entry : bindings.entrySet()) {
+			if(!map.contains(entry.getKey())) {
+				map.add(entry.getKey(), entry.getValue());
 			}
 		}
+	}
+	
+	
+	private Map<String,RDFNode> createBindings() {
+		if(parameterValue != null) {
+			return Collections.singletonMap(params.get(0).getVarName(), parameterValue);
+		}
 		else {
+			Map<String,RDFNode> map = new LinkedHashMap<>();
 			for(SHParameter param : params) {
 				String varName = param.getVarName();
-				if(!map.contains(varName)) {
+				if(!map.containsKey(varName)) {
 					RDFNode parameterValue = JenaUtil.getProperty(shape.getShapeResource(), param.getPredicate());
 					if(parameterValue != null) {
-						map.add(varName, parameterValue);
+						map.put(varName, parameterValue);
 					}
 				}
 			}
+			return Collections.unmodifiableMap(map);
 		}
 	}
 	
 	
+	/**
+	 * Gets the average time that the validation of this Constraint has taken per focus node,
+	 * according to {@link #recordExecution(long, int)}.
+	 * @return the average time in nanoseconds or 0 if nothing has been recorded yet
+	 */
+	public double getAverageNanos() {
+		long count = executionFocusNodes.get();
+		return count > 0 ? (double)executionNanos.get() / count : 0;
+	}
+	
+	
 	public SHConstraintComponent getComponent() {
 		return component;
 	}
@@ -88,6 +120,17 @@ public class Constraint {
 	}
 	
 	
+	/**
+	 * Records the time it has taken to validate this Constraint for a number of focus nodes.
+	 * @param nanos  the time in nanoseconds
+	 * @param focusNodeCount  the number of focus nodes
+	 */
+	public void recordExecution(long nanos, int focusNodeCount) {
+		executionNanos.addAndGet(nanos);
+		executionFocusNodes.addAndGet(focusNodeCount);
+	}
+	
+	
 	public String toString() {
 		return "Constraint " + component.getLocalName() + " at " + shape;
 	}
@@ -23,7 +23,7 @@ import org.topbraid.spin.system.SPINLabels;
  */
 public class Shape {
 	
-	private List<Constraint> constraints;
+	private volatile List<Constraint> constraints;
 	
 	private Path jenaPath;
 
@@ -44,29 +44,39 @@ public class Shape {
 	
 	public Iterable<Constraint> getConstraints() {
 		if(constraints == null) {
-			constraints = new LinkedList<>();
-			Set<SHConstraintComponent> handled = new HashSet<>();
-			for(Statement s : shape.listProperties().toList()) {
-				SHConstraintComponent component = shapesGraph.getComponentWithParameter(s.getPredicate());
-				if(component != null && !handled.contains(component)) {
-					List<SHParameter> params = component.getParameters();
-					if(params.size() == 1) {
-						Constraint constraint = new Constraint(this, component, params, s.getObject());
-						if(!shapesGraph.isIgnoredConstraint(constraint)) {
-							constraints.add(constraint);
-						}
+			synchronized(this) {
+				if(constraints == null) {
+					constraints = createConstraints();
+				}
+			}
+		}
+		return constraints;
+	}
+	
+	
+	private List<Constraint> createConstraints() {
+		List<Constraint> results = new LinkedList<>();
+		Set<SHConstraintComponent> handled = new HashSet<>();
+		for(Statement s : shape.listProperties().toList()) {
+			SHConstraintComponent component = shapesGraph.getComponentWithParameter(s.getPredicate());
+			if(component != null && !handled.contains(component)) {
+				List<SHParameter> params = component.getParameters();
+				if(params.size() == 1) {
+					Constraint constraint = new Constraint(this, component, params, s.getObject());
+					if(!shapesGraph.isIgnoredConstraint(constraint)) {
+						results.add(constraint);
 					}
-					else if(isComplete(params)) {
-						handled.add(component);
-						Constraint constraint = new Constraint(this, component, params, null);
-						if(!shapesGraph.isIgnoredConstraint(constraint)) {
-							constraints.add(constraint);
-						}
+				}
+				else if(isComplete(params)) {
+					handled.add(component);
+					Constraint constraint = new Constraint(this, component, params, null);
+					if(!shapesGraph.isIgnoredConstraint(constraint)) {
+						results.add(constraint);
 					}
 				}
 			}
 		}
-		return constraints;
+		return results;
 	}
 	
 	
@@ -1,22 +1,36 @@
 package org.topbraid.shacl.engine;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 
 import org.apache.jena.graph.Node;
+import org.apache.jena.query.QueryParseException;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFList;
+import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import org.topbraid.shacl.model.SHConstraintComponent;
 import org.topbraid.shacl.model.SHFactory;
 import org.topbraid.shacl.model.SHParameter;
 import org.topbraid.shacl.model.SHShape;
+import org.topbraid.shacl.validation.ConstraintExecutor;
+import org.topbraid.shacl.validation.ConstraintExecutors;
+import org.topbraid.shacl.validation.SHACLException;
+import org.topbraid.shacl.validation.ValidationEngine;
+import org.topbraid.shacl.validation.sparql.AbstractSPARQLExecutor;
 import org.topbraid.shacl.vocabulary.SH;
 import org.topbraid.spin.util.JenaUtil;
 
@@ -28,17 +42,35 @@ import org.topbraid.spin.util.JenaUtil;
  */
 public class ShapesGraph {
 	
+	// The properties that point from a shape to other shapes (or lists of shapes)
+	private final static Property[] NESTED_SHAPE_PROPERTIES = {
+		SH.and, SH.node, SH.not, SH.or, SH.parameter, SH.property, SH.qualifiedValueShape, SH.xone
+	};
+	
+	private volatile boolean compiled;
+	
 	private Predicate<Constraint> constraintFilter;
 	
-	private Map<Property,SHConstraintComponent> parametersMap;
+	// The results of the shapeFilter
+	private Map<Node,Boolean> ignoredShapes = new ConcurrentHashMap<>();
+	
+	// The executors created by compile()
+	private volatile Map<Constraint,ConstraintExecutor> executors = Collections.emptyMap();
+	
+	// The executors created on demand, for each combination of the global settings that select them
+	private Map<Integer,Map<Constraint,ConstraintExecutor>> executorCaches = new ConcurrentHashMap<>();
+	
+	private volatile Map<Property,SHConstraintComponent> parametersMap;
 	
-	private List<Shape> rootShapes;
+	private volatile List<Shape> rootShapes;
 	
 	private Predicate<SHShape> shapeFilter;
 	
-	private Map<Node,Shape> shapesMap = new HashMap<>();
+	private Map<Node,Shape> shapesMap = new ConcurrentHashMap<>();
 	
 	private Model shapesModel;
+	
+	private volatile TargetIndex targetIndex;
 
 	
 	/**
@@ -50,17 +82,125 @@ public class ShapesGraph {
 	}
 	
 	
+	private void checkNotCompiled() {
+		if(compiled) {
+			throw new IllegalStateException("Cannot modify a compiled ShapesGraph");
+		}
+	}
+	
+	
 	private void computeParametersMap() {
 		if(parametersMap == null) {
-			parametersMap = new HashMap<>();
+			Map<Property,SHConstraintComponent> map = new HashMap<>();
 			for(Resource cc : JenaUtil.getAllInstances(SH.ConstraintComponent.inModel(shapesModel))) {
 				SHConstraintComponent component = SHFactory.asConstraintComponent(cc);
 				for(SHParameter param : component.getParameters()) {
 					if(!param.isOptional()) {
-						parametersMap.put(param.getPredicate(), component);
+						map.put(param.getPredicate(), component);
+					}
+				}
+			}
+			parametersMap = map;
+		}
+	}
+	
+	
+	/**
+	 * Eagerly resolves all root shapes and all shapes reachable from them (e.g. via sh:property
+	 * or sh:node), including their constraints, parameter bindings, paths and ConstraintExecutors.
+	 * Afterwards the ShapesGraph does not change any more and may be shared by any number of
+	 * ValidationEngines, including engines running concurrently on different threads,
+	 * so that the shapes do not need to be analyzed again for each validation.
+	 * The executors are selected based on the current global settings such as
+	 * {@link ConstraintExecutors#setJSPreferred(boolean)}, so those should be set up first.
+	 * Executors whose selection depends on the ValidationEngine (see
+	 * {@link ConstraintExecutors#getEngineIndependentExecutor(Constraint)}) and executors of
+	 * invalid constraints are still created on first use.
+	 * The shapes Model must not be modified after compilation.
+	 * @return this
+	 */
+	public synchronized ShapesGraph compile() {
+		if(!compiled) {
+			computeParametersMap();
+			Map<Constraint,ConstraintExecutor> map = new HashMap<>();
+			for(Shape shape : getReachableShapes(getRootShapes())) {
+				for(Constraint constraint : shape.getConstraints()) {
+					ConstraintExecutor executor = createExecutor(constraint);
+					if(executor != null) {
+						map.put(constraint, executor);
 					}
 				}
 			}
+			this.executors = map;
+			this.rootShapes = Collections.unmodifiableList(rootShapes);
+			getTargetIndex();
+			this.compiled = true;
+		}
+		return this;
+	}
+	
+	
+	/**
+	 * Gets the given shapes plus all shapes that can be reached from them,
+	 * e.g. via sh:property, sh:node or sh:or.
+	 * @param shapes  the start shapes
+	 * @return the reachable shapes, in breadth-first order
+	 */
+	public Set<Shape> getReachableShapes(Collection<Shape> shapes) {
+		Set<Shape> visited = new LinkedHashSet<>();
+		LinkedList<Shape> queue = new LinkedList<>(shapes);
+		while(!queue.isEmpty()) {
+			Shape shape = queue.removeFirst();
+			if(visited.add(shape)) {
+				addNestedShapes(shape.getShapeResource(), queue);
+			}
+		}
+		return visited;
+	}
+	
+	
+	/**
+	 * Gets the shapes that are directly nested in a given shape, e.g. via sh:property or sh:node.
+	 * @param shape  the Shape to get the nested shapes of
+	 * @return the nested shapes
+	 */
+	public List<Shape> getNestedShapes(Shape shape) {
+		List<Shape> results = new LinkedList<>();
+		addNestedShapes(shape.getShapeResource(), results);
+		return results;
+	}
+	
+	
+	private void addNestedShapes(Resource shape, List<Shape> queue) {
+		for(Property predicate : NESTED_SHAPE_PROPERTIES) {
+			for(Statement s : shape.listProperties(predicate).toList()) {
+				RDFNode object = s.getObject();
+				if(object.isResource()) {
+					if(object.asResource().hasProperty(RDF.first)) {
+						for(RDFNode member : object.as(RDFList.class).iterator().toList()) {
+							if(member.isResource()) {
+								queue.add(getShape(member.asNode()));
+							}
+						}
+					}
+					else {
+						queue.add(getShape(object.asNode()));
+					}
+				}
+			}
+		}
+	}
+	
+	
+	// Executors that cannot be created here due to errors in the shape definitions (e.g. SPARQL
+	// syntax errors) are left to the ValidationEngine, so that these errors are reported at the same
+	// time as without compilation.  The same applies to executors that need to know the engine.
+	private static ConstraintExecutor createExecutor(Constraint constraint) {
+		try {
+			return ConstraintExecutors.get().getEngineIndependentExecutor(constraint);
+		}
+		catch(SHACLException | QueryParseException ex) {
+			return null;
 		}
 	}
 	
@@ -98,25 +238,80 @@ public class ShapesGraph {
 			}
 
 			// Turn the shape Resource objects into Shape instances
-			this.rootShapes = new LinkedList<Shape>();
+			List<Shape> shapes = new LinkedList<Shape>();
 			for(Resource candidate : candidates) {
 				SHShape shape = SHFactory.asShape(candidate);
 				if(shapeFilter == null || shapeFilter.test(shape)) {
-					this.rootShapes.add(getShape(shape.asNode()));
+					shapes.add(getShape(shape.asNode()));
 				}
 			}
+			this.rootShapes = shapes;
 		}
 		return rootShapes;
 	}
 	
 	
+	/**
+	 * Gets the ConstraintExecutor that has been created for a given Constraint by {@link #compile()}.
+	 * @param constraint  the Constraint
+	 * @return the executor or null if not compiled
+	 */
+	public ConstraintExecutor getExecutor(Constraint constraint) {
+		return executors.get(constraint);
+	}
+	
+	
+	/**
+	 * Gets a ConstraintExecutor for a given Constraint, either the one created by {@link #compile()}
+	 * or one that is created on first use and then shared by all ValidationEngines using this
+	 * ShapesGraph, so that queries only need to be parsed once.
+	 * Like the shapes themselves, the executors reflect the shapes Model at the time they
+	 * were created, so a new ShapesGraph is needed after the shapes have been edited.
+	 * @param constraint  the Constraint
+	 * @param engine  the ValidationEngine that needs the executor
+	 * @return the executor or null if no suitable executor exists
+	 */
+	public ConstraintExecutor getExecutor(Constraint constraint, ValidationEngine engine) {
+		ConstraintExecutor executor = executors.get(constraint);
+		if(executor == null) {
+			int settings = (ConstraintExecutors.get().isJSPreferred() ? 1 : 0) + (AbstractSPARQLExecutor.createDetails ? 2 : 0) +
+					(ConstraintExecutors.get().isNativePreferred() ? 4 : 0);
+			Map<Constraint,ConstraintExecutor> cache = executorCaches.computeIfAbsent(settings, k -> new ConcurrentHashMap<>());
+			executor = cache.get(constraint);
+			if(executor == null) {
+				executor = ConstraintExecutors.get().getExecutor(constraint, engine);
+				if(executor != null) {
+					cache.put(constraint, executor);
+				}
+			}
+		}
+		return executor;
+	}
+	
+	
 	public Shape getShape(Node node) {
-		Shape shape = shapesMap.get(node);
-		if(shape == null) {
-			shape = new Shape(this, SHFactory.asShape(shapesModel.asRDFNode(node)));
-			shapesMap.put(node, shape);
+		return shapesMap.computeIfAbsent(node, n -> new Shape(this, SHFactory.asShape(shapesModel.asRDFNode(n))));
+	}
+	
+	
+	/**
+	 * Gets the TargetIndex of this shapes graph, which is created on demand.
+	 * @return the TargetIndex
+	 */
+	public TargetIndex getTargetIndex() {
+		if(targetIndex == null) {
+			synchronized(this) {
+				if(targetIndex == null) {
+					targetIndex = new TargetIndex(shapesModel);
+				}
+			}
 		}
-		return shape;
+		return targetIndex;
+	}
+	
+	
+	public boolean isCompiled() {
+		return compiled;
 	}
 	
 	
@@ -129,8 +324,7 @@ public class ShapesGraph {
 		if(shapeFilter == null) {
 			return false;
 		}
-		SHShape shape = SHFactory.asShape(shapesModel.asRDFNode(shapeNode));
-		return !shapeFilter.test(shape);
+		return ignoredShapes.computeIfAbsent(shapeNode, n -> !shapeFilter.test(getShape(n).getShapeResource()));
 	}
 	
 	
@@ -142,6 +336,7 @@ public class ShapesGraph {
 	 * @param value  the new constraint filter
 	 */
 	public void setConstraintFilter(Predicate<Constraint> value) {
+		checkNotCompiled();
 		this.constraintFilter = value;
 	}
 	
@@ -153,6 +348,8 @@ public class ShapesGraph {
 	 * @param value  the new shape filter
 	 */
 	public void setShapeFilter(Predicate<SHShape> value) {
+		checkNotCompiled();
 		this.shapeFilter = value;
+		this.ignoredShapes.clear();
 	}
 }
@@ -0,0 +1,188 @@
+package org.topbraid.shacl.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.RDF;
+import org.topbraid.shacl.util.ClassHierarchy;
+import org.topbraid.shacl.util.SHACLUtil;
+import org.topbraid.shacl.vocabulary.SH;
+import org.topbraid.spin.util.JenaUtil;
+
+/**
+ * An index of the targets declared in a shapes graph, used to quickly find the shapes
+ * that apply to a given focus node without walking the shapes graph each time.
+ *
+ * The index is built once from the shapes Model, which must not change afterwards.
+ * The shapes filter of the ShapesGraph is not applied here.
+ */
+public class TargetIndex {
+
+	// Shapes by the classes they apply to, either via sh:targetClass or as implicit class targets
+	private Map<Node,List<Resource>> classShapes = new HashMap<>();
+
+	// The shapes of each rdf:type including the ones of its superclasses, for the last used ClassHierarchy
+	private volatile ClosedClassShapes closedClassShapes;
+
+	private Map<Node,List<Resource>> nodeShapes = new HashMap<>();
+
+	private Map<Node,List<Resource>> objectsOfShapes = new HashMap<>();
+
+	private Model shapesModel;
+
+	private Map<Node,List<Resource>> subjectsOfShapes = new HashMap<>();
+
+	private List<Statement> targets;
+
+
+	public TargetIndex(Model shapesModel) {
+		this.shapesModel = shapesModel;
+		for(Resource shape : JenaUtil.getAllInstances(SH.Shape.inModel(shapesModel))) {
+			add(classShapes, shape, shape);
+		}
+		addAll(classShapes, SH.targetClass);
+		addAll(nodeShapes, SH.targetNode);
+		addAll(objectsOfShapes, SH.targetObjectsOf);
+		addAll(subjectsOfShapes, SH.targetSubjectsOf);
+		targets = shapesModel.listStatements(null, SH.target, (RDFNode)null).toList();
+	}
+
+
+	private static void add(Map<Node,List<Resource>> map, RDFNode key, Resource shape) {
+		map.computeIfAbsent(key.asNode(), k -> new ArrayList<>(1)).add(shape);
+	}
+
+
+	private void addAll(Map<Node,List<Resource>> map, Property predicate) {
+		for(Statement s : shapesModel.listStatements(null, predicate, (RDFNode)null).toList()) {
+			add(map, s.getObject(), s.getSubject());
+		}
+	}
+
+
+	private static List<Resource> get(Map<Node,List<Resource>> map, Node key) {
+		List<Resource> shapes = map.get(key);
+		return shapes != null ? shapes : Collections.emptyList();
+	}
+
+
+	/**
+	 * Gets all shapes that have a target that includes a given focus node.
+	 * @param focusNode  the node to get the shapes for (in the data graph)
+	 * @param dataset  the Dataset containing the data graph
+	 * @return a Set of shape resources
+	 */
+	public Set<Resource> getShapesForNode(RDFNode focusNode, Dataset dataset) {
+		Set<Resource> shapes = new LinkedHashSet<Resource>();
+
+		// sh:targetNode (literals are matched by value, as in the graph)
+		if(focusNode.isLiteral()) {
+			shapes.addAll(shapesModel.listSubjectsWithProperty(SH.targetNode, focusNode).toList());
+		}
+		else {
+			shapes.addAll(get(nodeShapes, focusNode.asNode()));
+		}
+
+		// property targets, looked up by the predicates of the node's own triples
+		Graph graph = focusNode.getModel().getGraph();
+		if(focusNode instanceof Resource && !subjectsOfShapes.isEmpty()) {
+			addPredicateShapes(graph.find(focusNode.asNode(), Node.ANY, Node.ANY), subjectsOfShapes, shapes);
+		}
+		if(!objectsOfShapes.isEmpty()) {
+			addPredicateShapes(graph.find(Node.ANY, Node.ANY, focusNode.asNode()), objectsOfShapes, shapes);
+		}
+
+		// rdf:type / sh:targetClass
+		if(focusNode instanceof Resource) {
+			ClosedClassShapes closed = getClosedClassShapes(ClassHierarchy.get(graph));
+			ExtendedIterator<Triple> it = graph.find(focusNode.asNode(), RDF.type.asNode(), Node.ANY);
+			try {
+				while(it.hasNext()) {
+					shapes.addAll(closed.get(it.next().getObject()));
+				}
+			}
+			finally {
+				it.close();
+			}
+		}
+
+		// sh:target
+		for(Statement s : targets) {
+			if(SHACLUtil.isInTarget(focusNode, dataset, s.getResource())) {
+				shapes.add(s.getSubject());
+			}
+		}
+
+		return shapes;
+	}
+
+
+	private static void addPredicateShapes(ExtendedIterator<Triple> it, Map<Node,List<Resource>> map, Set<Resource> shapes) {
+		Set<Node> predicates = new HashSet<>();
+		try {
+			while(it.hasNext()) {
+				Node predicate = it.next().getPredicate();
+				if(predicates.add(predicate)) {
+					shapes.addAll(get(map, predicate));
+				}
+			}
+		}
+		finally {
+			it.close();
+		}
+	}
+
+
+	private ClosedClassShapes getClosedClassShapes(ClassHierarchy classHierarchy) {
+		ClosedClassShapes closed = closedClassShapes;
+		if(closed == null || closed.classHierarchy != classHierarchy) {
+			closed = new ClosedClassShapes(classHierarchy);
+			closedClassShapes = closed;
+		}
+		return closed;
+	}
+
+
+	private class ClosedClassShapes {
+
+		private ClassHierarchy classHierarchy;
+
+		private Map<Node,Set<Resource>> map = new ConcurrentHashMap<>();
+
+
+		ClosedClassShapes(ClassHierarchy classHierarchy) {
+			this.classHierarchy = classHierarchy;
+		}
+
+
+		Set<Resource> get(Node type) {
+			if(type.isLiteral()) {
+				return Collections.emptySet();
+			}
+			return map.computeIfAbsent(type, t -> {
+				Set<Resource> results = new LinkedHashSet<>();
+				for(Node superClass : classHierarchy.getSuperClassesStar(t)) {
+					results.addAll(TargetIndex.get(classShapes, superClass));
+				}
+				return results;
+			});
+		}
+	}
+}
@@ -22,7 +22,12 @@ public class MinSeverityShapeFilter implements Predicate<SHShape> {
 	}
 	
 	
-	private Integer getScore(Resource severity) {
+	/**
+	 * Gets the rank of a severity: 2 for sh:Violation, 1 for sh:Warning and 0 for any other.
+	 * @param severity  the severity
+	 * @return the rank
+	 */
+	public static Integer getScore(Resource severity) {
 		if(SH.Violation.equals(severity)) {
 			return 2;
 		}
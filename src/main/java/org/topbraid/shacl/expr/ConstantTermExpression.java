@@ -18,6 +18,11 @@ public class ConstantTermExpression extends AtomicNodeExpression {
 	}
 
 
+	public RDFNode getTerm() {
+		return term;
+	}
+
+
 	@Override
 	public List<RDFNode> eval(RDFNode focusNode, NodeExpressionContext context) {
 		return result;
@@ -58,6 +58,29 @@ public class PathExpression extends ComplexNodeExpression {
 	}
 
 
+	/**
+	 * Gets the input nodes of the path.
+	 * @return the input or null if the path starts at the focus node
+	 */
+	public NodeExpression getInput() {
+		return input;
+	}
+
+
+	/**
+	 * Gets the path as a Jena Path, unless it is a predicate.
+	 * @return the Jena Path or null if the path is a URI resource
+	 */
+	public Path getJenaPath() {
+		return jenaPath;
+	}
+
+
+	public Resource getPath() {
+		return path;
+	}
+
+
 	@Override
 	public List<RDFNode> eval(RDFNode focusNode, NodeExpressionContext context) {
 		if(input != null) {
@@ -0,0 +1,118 @@
+package org.topbraid.shacl.rules;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementBind;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementOptional;
+import org.apache.jena.sparql.syntax.ElementPathBlock;
+import org.apache.jena.sparql.syntax.ElementTriplesBlock;
+import org.topbraid.shacl.engine.Shape;
+import org.topbraid.shacl.vocabulary.SH;
+import org.topbraid.spin.arq.ARQFactory;
+
+/**
+ * Executes the CONSTRUCT query of a rule for a whole chunk of focus nodes at once,
+ * by starting its WHERE clause with a VALUES block that binds $this to the focus nodes.
+ * See {@link RuleEngine#setBulkMode(boolean)}.
+ *
+ * This is only equivalent to one execution per focus node with a pre-bound $this if $this
+ * is bound before any nested scope uses it.  Therefore only queries whose WHERE clause is a
+ * flat group of triple patterns, FILTERs, BINDs and OPTIONALs of triple patterns and
+ * FILTERs are supported, see {@link #isSupported(Query)}.
+ * Inline VALUES are not supported either, because ARQ does not join them with the
+ * pre-bound $this of the single executions.
+ */
+class BulkConstruct {
+
+	/**
+	 * Executes a given CONSTRUCT query for some focus nodes and passes the constructed triples
+	 * into the RuleEngine without building an intermediate Model.
+	 * @param query  the (supported) CONSTRUCT query
+	 * @param focusNodes  the focus nodes
+	 * @param ruleEngine  the RuleEngine to infer the triples into
+	 * @param rule  the Rule being executed
+	 * @param shape  the Shape being executed
+	 */
+	static void execute(Query query, List<RDFNode> focusNodes, RuleEngine ruleEngine, Rule rule, Shape shape) {
+		if(focusNodes.isEmpty()) {
+			return;
+		}
+		ElementData values = new ElementData();
+		values.add(SH.thisVar);
+		for(RDFNode focusNode : focusNodes) {
+			values.add(BindingFactory.binding(SH.thisVar, focusNode.asNode()));
+		}
+		ElementGroup where = new ElementGroup();
+		where.addElement(values);
+		for(Element element : ((ElementGroup)query.getQueryPattern()).getElements()) {
+			where.addElement(element);
+		}
+		Query bulkQuery = query.cloneQuery();
+		bulkQuery.setQueryPattern(where);
+		try(QueryExecution qexec = ARQFactory.get().createQueryExecution(bulkQuery, ruleEngine.getDataset())) {
+			Iterator<Triple> it = qexec.execConstructTriples();
+			while(it.hasNext()) {
+				ruleEngine.infer(it.next(), rule, shape);
+			}
+		}
+	}
+
+
+	/**
+	 * Checks whether a given CONSTRUCT query can be executed in bulk.
+	 * @param query  the Query
+	 * @return true if supported
+	 */
+	static boolean isSupported(Query query) {
+		if(query.hasLimit() || query.hasOffset() || !(query.getQueryPattern() instanceof ElementGroup)) {
+			return false;
+		}
+		for(Element element : ((ElementGroup)query.getQueryPattern()).getElements()) {
+			if(element instanceof ElementBind) {
+				if(SH.thisVar.equals(((ElementBind)element).getVar())) {
+					return false;
+				}
+			}
+			else if(element instanceof ElementOptional) {
+				if(!isSimpleOptional(((ElementOptional)element).getOptionalElement())) {
+					return false;
+				}
+			}
+			else if(!isSimple(element)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	// The FILTERs of an OPTIONAL become part of the left join and therefore see the bound $this
+	private static boolean isSimpleOptional(Element element) {
+		if(element instanceof ElementGroup) {
+			for(Element child : ((ElementGroup)element).getElements()) {
+				if(!isSimple(child)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		else {
+			return isSimple(element);
+		}
+	}
+
+
+	private static boolean isSimple(Element element) {
+		return element instanceof ElementFilter || element instanceof ElementPathBlock || element instanceof ElementTriplesBlock;
+	}
+}
@@ -1,7 +1,9 @@
 package org.topbraid.shacl.rules;
 
 import java.util.List;
+import java.util.Set;
 
+import org.apache.jena.graph.Node;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.Statement;
@@ -38,6 +40,27 @@ public abstract class Rule {
 	public abstract void execute(RuleEngine ruleEngine, List<RDFNode> focusNodes, Shape shape);
 	
 	
+	/**
+	 * Gets the predicates of the data graph triples that the execution of this rule may read.
+	 * Used when rules are iterated to a fixpoint to skip the rules that cannot produce new
+	 * results after a round of inferences.
+	 * @return the predicates or null if any triple may be read (default)
+	 */
+	public Set<Node> getBodyPredicates() {
+		return null;
+	}
+	
+	
+	/**
+	 * Gets the predicates of the triples that this rule may infer.
+	 * Used for incremental updates to find the rules that may have inferred a deleted triple.
+	 * @return the predicates or null if any triple may be inferred (default)
+	 */
+	public Set<Node> getHeadPredicates() {
+		return null;
+	}
+	
+	
 	public String getLabel() {
 		Statement s = resource.getProperty(RDFS.label);
 		if(s != null && s.getObject().isLiteral()) {
@@ -63,4 +86,25 @@ public abstract class Rule {
 	public Resource getResource() {
 		return resource;
 	}
+	
+	
+	/**
+	 * Checks whether all triples that this rule infers for a focus node have the focus node
+	 * as their subject or object.
+	 * @return true if the inferences are local (default: false)
+	 */
+	public boolean isHeadLocal() {
+		return false;
+	}
+	
+	
+	/**
+	 * Checks whether the execution of this rule for a focus node only reads triples that have
+	 * the focus node as their subject or object, so that new triples can only change the results
+	 * for their own subjects and objects.
+	 * @return true if the rule is local (default: false)
+	 */
+	public boolean isLocal() {
+		return false;
+	}
 }
@@ -0,0 +1,268 @@
+package org.topbraid.shacl.rules;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.core.TriplePath;
+import org.apache.jena.sparql.expr.E_Function;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprFunction;
+import org.apache.jena.sparql.expr.ExprFunctionOp;
+import org.apache.jena.sparql.path.P_Inverse;
+import org.apache.jena.sparql.path.P_Link;
+import org.apache.jena.sparql.path.P_Path1;
+import org.apache.jena.sparql.path.P_Path2;
+import org.apache.jena.sparql.path.P_ReverseLink;
+import org.apache.jena.sparql.path.Path;
+import org.apache.jena.sparql.pfunction.PropertyFunctionRegistry;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementAssign;
+import org.apache.jena.sparql.syntax.ElementBind;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementPathBlock;
+import org.apache.jena.sparql.syntax.ElementService;
+import org.apache.jena.sparql.syntax.ElementSubQuery;
+import org.apache.jena.sparql.syntax.ElementTriplesBlock;
+import org.apache.jena.sparql.syntax.ElementVisitorBase;
+import org.apache.jena.sparql.syntax.ElementWalker;
+import org.apache.jena.vocabulary.XSD;
+import org.topbraid.shacl.vocabulary.SH;
+
+/**
+ * Describes which triples of the data graph the body of a rule may read and which
+ * triples its head may infer, so that the RuleEngine can decide which rules and focus nodes
+ * may produce new results after other rules have inferred new triples, and which ones
+ * may have inferred a given triple.
+ *
+ * The analysis is conservative: anything that it cannot see through, such as calls
+ * of non-XSD functions, property functions, SERVICE calls or complex paths, makes the
+ * predicates unknown or the rule non-local.
+ */
+class RuleDependencies {
+
+	private boolean headLocal = true;
+
+	private Set<Node> headPredicates = new HashSet<>();
+
+	private boolean local = true;
+
+	private Set<Node> predicates = new HashSet<>();
+
+
+	/**
+	 * Analyzes the WHERE clause of a given SPARQL query, with $this as the focus node.
+	 * @param query  the Query
+	 * @return the RuleDependencies
+	 */
+	static RuleDependencies forQuery(Query query) {
+		RuleDependencies result = new RuleDependencies();
+		result.addElement(query.getQueryPattern());
+		for(Triple triple : query.getConstructTemplate().getTriples()) {
+			result.addHeadPredicate(triple.getPredicate(), isFocusNode(triple.getSubject()) || isFocusNode(triple.getObject()));
+		}
+		return result;
+	}
+
+
+	/**
+	 * Creates an instance that reads unknown triples.
+	 * @return a new RuleDependencies
+	 */
+	static RuleDependencies unknown() {
+		RuleDependencies result = new RuleDependencies();
+		result.setUnknown();
+		result.addHeadPredicate(null, false);
+		return result;
+	}
+
+
+	/**
+	 * Gets the predicates of the triples that may be inferred.
+	 * @return the predicates or null if unknown
+	 */
+	Set<Node> getHeadPredicates() {
+		return headPredicates != null ? Collections.unmodifiableSet(headPredicates) : null;
+	}
+
+
+	/**
+	 * Gets the predicates of the triples that may be read.
+	 * @return the predicates or null if unknown
+	 */
+	Set<Node> getPredicates() {
+		return predicates != null ? Collections.unmodifiableSet(predicates) : null;
+	}
+
+
+	/**
+	 * Checks whether only triples that have the focus node as subject or object are inferred,
+	 * so that a triple can only have been inferred for its own subject or object.
+	 * @return true if local
+	 */
+	boolean isHeadLocal() {
+		return headLocal;
+	}
+
+
+	/**
+	 * Checks whether only triples that have the focus node as subject or object are read,
+	 * so that a new triple can only change the results for its own subject and object.
+	 * @return true if local
+	 */
+	boolean isLocal() {
+		return local;
+	}
+
+
+	/**
+	 * Records that triples with a given predicate may be inferred.
+	 * @param predicate  the predicate or null if unknown
+	 * @param local  true if the focus node is the subject or object of the triples
+	 */
+	void addHeadPredicate(Node predicate, boolean local) {
+		if(predicate == null || !predicate.isURI()) {
+			headPredicates = null;
+		}
+		else if(headPredicates != null) {
+			headPredicates.add(predicate);
+		}
+		headLocal &= local;
+	}
+
+
+	/**
+	 * Records that triples with a given predicate are read.
+	 * @param predicate  the predicate or null if unknown
+	 * @param local  true if only triples with the focus node as subject or object are read
+	 */
+	void addPredicate(Node predicate, boolean local) {
+		if(predicate == null || !predicate.isURI() || PropertyFunctionRegistry.get().isRegistered(predicate.getURI())) {
+			setUnknown();
+		}
+		else {
+			if(predicates != null) {
+				predicates.add(predicate);
+			}
+			this.local &= local;
+		}
+	}
+
+
+	/**
+	 * Records that the triples along a given path are read.
+	 * @param path  the path
+	 * @param local  true if the path starts or ends at the focus node
+	 */
+	void addPath(Path path, boolean local) {
+		if(path instanceof P_Link) {
+			addPredicate(((P_Link)path).getNode(), local);
+		}
+		else if(path instanceof P_ReverseLink) {
+			addPredicate(((P_ReverseLink)path).getNode(), local);
+		}
+		else if(path instanceof P_Inverse) {
+			addPath(((P_Inverse)path).getSubPath(), local);
+		}
+		else if(path instanceof P_Path1) {
+			addPath(((P_Path1)path).getSubPath(), false);
+		}
+		else if(path instanceof P_Path2) {
+			addPath(((P_Path2)path).getLeft(), false);
+			addPath(((P_Path2)path).getRight(), false);
+		}
+		else {
+			setUnknown();
+		}
+	}
+
+
+	void setUnknown() {
+		local = false;
+		predicates = null;
+	}
+
+
+	private void addElement(Element element) {
+		if(element == null) {
+			return;
+		}
+		ElementWalker.walk(element, new ElementVisitorBase() {
+
+			@Override
+			public void visit(ElementAssign el) {
+				addExpr(el.getExpr());
+			}
+
+			@Override
+			public void visit(ElementBind el) {
+				addExpr(el.getExpr());
+			}
+
+			@Override
+			public void visit(ElementFilter el) {
+				addExpr(el.getExpr());
+			}
+
+			@Override
+			public void visit(ElementPathBlock el) {
+				for(TriplePath triplePath : el.getPattern().getList()) {
+					addTriplePath(triplePath);
+				}
+			}
+
+			@Override
+			public void visit(ElementService el) {
+				setUnknown();
+			}
+
+			@Override
+			public void visit(ElementSubQuery el) {
+				Query subQuery = el.getQuery();
+				addElement(subQuery.getQueryPattern());
+				for(Expr expr : subQuery.getProject().getExprs().values()) {
+					addExpr(expr);
+				}
+			}
+
+			@Override
+			public void visit(ElementTriplesBlock el) {
+				el.getPattern().forEach(triple -> addTriplePath(new TriplePath(triple)));
+			}
+		});
+	}
+
+
+	private void addExpr(Expr expr) {
+		if(expr instanceof ExprFunctionOp) {
+			addElement(((ExprFunctionOp)expr).getElement());
+		}
+		if(expr instanceof E_Function && !((E_Function)expr).getFunctionIRI().startsWith(XSD.getURI())) {
+			setUnknown();
+		}
+		else if(expr instanceof ExprFunction) {
+			for(Expr arg : ((ExprFunction)expr).getArgs()) {
+				addExpr(arg);
+			}
+		}
+	}
+
+
+	private void addTriplePath(TriplePath triplePath) {
+		boolean local = isFocusNode(triplePath.getSubject()) || isFocusNode(triplePath.getObject());
+		if(triplePath.isTriple()) {
+			addPredicate(triplePath.getPredicate(), local);
+		}
+		else {
+			addPath(triplePath.getPath(), local);
+		}
+	}
+
+
+	private static boolean isFocusNode(Node node) {
+		return node.isVariable() && SH.thisVar.getVarName().equals(node.getName());
+	}
+}
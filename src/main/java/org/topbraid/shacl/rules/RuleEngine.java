@@ -2,29 +2,48 @@ package org.topbraid.shacl.rules;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
 
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.compose.Delta;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.topbraid.shacl.arq.functions.HasShapeFunction;
 import org.topbraid.shacl.engine.Shape;
 import org.topbraid.shacl.engine.ShapesGraph;
 import org.topbraid.shacl.expr.NodeExpressionContext;
 import org.topbraid.shacl.util.OrderComparator;
 import org.topbraid.shacl.util.SHACLUtil;
+import org.topbraid.shacl.validation.SHACLException;
 import org.topbraid.shacl.validation.ValidationEngine;
 import org.topbraid.shacl.validation.ValidationEngineFactory;
 import org.topbraid.shacl.vocabulary.SH;
+import org.topbraid.spin.arq.ARQFactory;
 import org.topbraid.spin.progress.ProgressMonitor;
 import org.topbraid.spin.statistics.SPINStatistics;
 import org.topbraid.spin.statistics.SPINStatisticsManager;
@@ -40,12 +59,29 @@ import org.topbraid.spin.util.JenaUtil;
  */
 public class RuleEngine implements NodeExpressionContext {
 	
+	private int chunkSize = 1000;
+	
+	// Whether a node conforms to a condition shape, remembered until the inferences change
+	private Map<Resource,Map<Node,Boolean>> conditionVerdicts = new ConcurrentHashMap<>();
+	
 	private Dataset dataset;
 	
+	private boolean bulkMode;
+	
+	private ExecutorService executorService;
+	
+	// The tasks that have been submitted since the last flush, in parallel mode
+	private List<Future<Set<Triple>>> futures = new LinkedList<>();
+	
 	private Model inferences;
 	
+	private int maxIterations = 1;
+	
 	private ProgressMonitor monitor;
 	
+	// The triples that were not yet in the data graph when they were flushed, if iterating
+	private Set<Triple> newTriples;
+	
 	private Set<Triple> pending = new HashSet<>();
 	
 	private Map<Rule,List<Resource>> rule2Conditions = new HashMap<>();
@@ -66,46 +102,188 @@ public class RuleEngine implements NodeExpressionContext {
 	
 	
 	public void executeAll() throws InterruptedException {
-		List<Shape> ruleShapes = new ArrayList<Shape>();
-		for(Shape shape : shapesGraph.getRootShapes()) {
-			if(shape.getShapeResource().hasProperty(SH.rule)) {
-				ruleShapes.add(shape);
-			}
-		}
+		List<Shape> ruleShapes = getRuleShapes();
 		if(ruleShapes.isEmpty()) {
 			return;
 		}
 		
-		Collections.sort(ruleShapes, new Comparator<Shape>() {
-			@Override
-			public int compare(Shape shape1, Shape shape2) {
-				return shape1.getOrder().compareTo(shape2.getOrder());
+		String baseMessage = null;
+		int rules = 0;
+		if(monitor != null) {
+			rules = countRules(ruleShapes);
+			baseMessage = "Executing " + rules + " SHACL rules from " + ruleShapes.size() + " shapes";
+			monitor.beginTask(baseMessage, rules);
+		}
+		
+		conditionVerdicts.clear();
+		newTriples = maxIterations > 1 ? new HashSet<>() : null;
+		try {
+			executeIteration(ruleShapes, baseMessage, null);
+			for(int i = 1; i < maxIterations && !newTriples.isEmpty(); i++) {
+				Set<Triple> changes = newTriples;
+				newTriples = new HashSet<>();
+				String message = null;
+				if(monitor != null) {
+					message = baseMessage + ", iteration " + (i + 1);
+					monitor.beginTask(message, rules);
+				}
+				executeIteration(ruleShapes, message, (shape, rule) -> getChangedFocusNodes(shape, rule, changes));
 			}
-		});
+		}
+		finally {
+			cancelFutures();
+			newTriples = null;
+		}
+	}
+	
+	
+	/**
+	 * Incrementally updates the inferences after the data graph has changed, instead of
+	 * discarding them and calling {@link #executeAll()} again.
+	 * The given triples must already have been added to or removed from the data graph,
+	 * and the inferences must be complete for the data graph before these changes, e.g. the
+	 * result of {@link #executeAll()} with enough iterations (see {@link #setMaxIterations(int)})
+	 * or of a previous update.
+	 * 
+	 * The update follows the delete/re-derive approach:
+	 * first all inferences that may have been derived from a removed triple, directly or via
+	 * other such inferences, are deleted.  Then the rules that may infer any of the deleted triples
+	 * are executed again, followed by rounds of the rules that may use the added and re-derived
+	 * triples, until no new triples are inferred.
+	 * Like in the iterations of executeAll, only the rules that read the changed predicates
+	 * or whose targets may have changed are executed, and for local rules
+	 * (see {@link Rule#isLocal()} and {@link Rule#isHeadLocal()}) only for the affected focus nodes,
+	 * so that the cost is roughly proportional to the size of the change.
+	 * 
+	 * The result is only the same as a complete re-computation if the rules and their
+	 * conditions are monotonic, i.e. adding triples never removes results, so rules that
+	 * use negation, such as FILTER NOT EXISTS or sh:not conditions, are not supported.
+	 * @param added  the triples that have been added to the data graph
+	 * @param removed  the triples that have been removed from the data graph
+	 */
+	public void update(Collection<Triple> added, Collection<Triple> removed) throws InterruptedException {
+		List<Shape> ruleShapes = getRuleShapes();
+		if(ruleShapes.isEmpty() || (added.isEmpty() && removed.isEmpty())) {
+			return;
+		}
 		
 		String baseMessage = null;
+		int rules = 0;
 		if(monitor != null) {
-			int rules = 0;
-			for(Shape shape : ruleShapes) {
-				rules += getShapeRules(shape).size();
-			}
-			baseMessage = "Executing " + rules + " SHACL rules from " + ruleShapes.size() + " shapes";
+			rules = countRules(ruleShapes);
+			baseMessage = "Updating the inferences of " + rules + " SHACL rules from " + ruleShapes.size() + " shapes";
 			monitor.beginTask(baseMessage, rules);
 		}
 		
+		try {
+			Set<Triple> deleted = new HashSet<>();
+			if(!removed.isEmpty()) {
+				overDelete(ruleShapes, baseMessage, added, removed, deleted);
+			}
+			
+			conditionVerdicts.clear();
+			newTriples = new HashSet<>();
+			if(!deleted.isEmpty()) {
+				for(Triple triple : deleted) {
+					inferences.getGraph().delete(triple);
+				}
+				executeIteration(ruleShapes, baseMessage, (shape, rule) -> getDerivingFocusNodes(shape, rule, deleted));
+			}
+			
+			Set<Triple> changes = new HashSet<>(added);
+			changes.addAll(newTriples);
+			while(!changes.isEmpty()) {
+				Set<Triple> c = changes;
+				newTriples = new HashSet<>();
+				if(monitor != null) {
+					monitor.beginTask(baseMessage, rules);
+				}
+				executeIteration(ruleShapes, baseMessage, (shape, rule) -> getChangedFocusNodes(shape, rule, c));
+				changes = newTriples;
+			}
+		}
+		finally {
+			cancelFutures();
+			newTriples = null;
+		}
+	}
+	
+	
+	// Collects the inferences that may depend on the removed triples into deleted, by executing
+	// the affected rules against the data graph as it was before the changes, in rounds until
+	// no further inferences are affected.
+	private void overDelete(List<Shape> ruleShapes, String baseMessage, Collection<Triple> added, Collection<Triple> removed, Set<Triple> deleted) throws InterruptedException {
+		Graph inferencesGraph = inferences.getGraph();
+		Delta oldGraph = new Delta(dataset.getDefaultModel().getGraph());
+		for(Triple triple : added) {
+			if(!inferencesGraph.contains(triple)) {
+				oldGraph.delete(triple);
+			}
+		}
+		for(Triple triple : removed) {
+			oldGraph.add(triple);
+		}
+		Dataset oldDataset = ARQFactory.get().getDataset(ModelFactory.createModelForGraph(oldGraph));
+		Iterator<String> names = dataset.listNames();
+		while(names.hasNext()) {
+			String name = names.next();
+			oldDataset.addNamedModel(name, dataset.getNamedModel(name));
+		}
+		
+		// The old engine collects the triples that it derives into a separate Model
+		Model derived = JenaUtil.createMemoryModel();
+		RuleEngine old = new RuleEngine(oldDataset, shapesGraphURI, shapesGraph, derived);
+		old.shape2Rules = shape2Rules;
+		old.rule2Conditions = rule2Conditions;
+		old.setBulkMode(bulkMode);
+		old.setChunkSize(chunkSize);
+		old.setExecutorService(executorService);
+		old.setProgressMonitor(monitor);
+		try {
+			Set<Triple> changes = new HashSet<>(removed);
+			while(!changes.isEmpty()) {
+				Set<Triple> c = changes;
+				old.executeIteration(ruleShapes, baseMessage, (shape, rule) -> old.getChangedFocusNodes(shape, rule, c));
+				changes = new HashSet<>();
+				ExtendedIterator<Triple> it = derived.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+				while(it.hasNext()) {
+					Triple triple = it.next();
+					if(inferencesGraph.contains(triple) && deleted.add(triple)) {
+						changes.add(triple);
+					}
+				}
+				derived.removeAll();
+			}
+		}
+		finally {
+			old.cancelFutures();
+		}
+	}
+	
+	
+	// Executes the rule shapes in their order.  The selector returns the focus nodes of a given
+	// shape that a given rule needs to be executed for, or null for all target nodes.
+	// If the selector itself is null then all rules are executed for all target nodes.
+	private void executeIteration(List<Shape> ruleShapes, String baseMessage, BiFunction<Shape,Rule,Set<Node>> selector) throws InterruptedException {
 		Double oldOrder = ruleShapes.get(0).getOrder();
 		for(Shape shape : ruleShapes) {
 			if(!oldOrder.equals(shape.getOrder())) {
 				oldOrder = shape.getOrder();
 				flushPending();
 			}
-			executeShape(shape, baseMessage);
+			executeShape(shape, baseMessage, selector);
 		}
 		flushPending();
 	}
 	
 	
 	public void executeShape(Shape shape, String baseMessage) throws InterruptedException {
+		conditionVerdicts.clear();
+		executeShape(shape, baseMessage, null);
+	}
+	
+	
+	private void executeShape(Shape shape, String baseMessage, BiFunction<Shape,Rule,Set<Node>> selector) throws InterruptedException {
 		
 		if(shape.getShapeResource().isDeactivated()) {
 			return;
@@ -116,42 +294,131 @@ public class RuleEngine implements NodeExpressionContext {
 			return;
 		}
 		
-		List<RDFNode> targetNodes = SHACLUtil.getTargetNodes(shape.getShapeResource(), dataset);
-		if(!targetNodes.isEmpty()) {
-			Number oldOrder = rules.get(0).getOrder();
+		// Consecutive rules with the same sh:order
+		List<List<Rule>> groups = new ArrayList<>();
+		for(Rule rule : rules) {
+			if(groups.isEmpty() || !groups.get(groups.size() - 1).get(0).getOrder().equals(rule.getOrder())) {
+				groups.add(new ArrayList<>());
+			}
+			groups.get(groups.size() - 1).add(rule);
+		}
+		
+		// The inferences are flushed between groups, which may change the target nodes,
+		// so the target nodes need to be collected up front if there is more than one group
+		List<Node> targetNodes = null;
+		if(groups.size() > 1) {
+			targetNodes = SHACLUtil.listTargetNodes(shape.getShapeResource(), dataset).toList();
+			if(targetNodes.isEmpty()) {
+				return;
+			}
+		}
+		
+		for(int i = 0; i < groups.size(); i++) {
+			if(i > 0) {
+				flushPending();
+			}
+			List<Rule> group = groups.get(i);
+			if(selector != null) {
+				// Rules that need to be executed for all target nodes remain in the group
+				group = new ArrayList<>();
+				for(Rule rule : groups.get(i)) {
+					Set<Node> focusNodes = selector.apply(shape, rule);
+					if(focusNodes == null) {
+						group.add(rule);
+					}
+					else if(!focusNodes.isEmpty()) {
+						executeRules(Collections.singletonList(rule), focusNodes.iterator(), shape, baseMessage);
+					}
+				}
+				if(group.isEmpty()) {
+					continue;
+				}
+			}
+			ExtendedIterator<Node> it = targetNodes != null ? WrappedIterator.create(targetNodes.iterator()) : SHACLUtil.listTargetNodes(shape.getShapeResource(), dataset);
+			try {
+				executeRules(group, it, shape, baseMessage);
+			}
+			finally {
+				it.close();
+			}
+		}
+	}
+	
+	
+	// Executes rules that have the same order for chunks of the given target nodes
+	private void executeRules(List<Rule> rules, Iterator<Node> targetNodes, Shape shape, String baseMessage) throws InterruptedException {
+		Model dataModel = dataset.getDefaultModel();
+		boolean found = false;
+		while(targetNodes.hasNext()) {
+			List<RDFNode> focusNodes = new ArrayList<>();
+			while(focusNodes.size() < chunkSize && targetNodes.hasNext()) {
+				focusNodes.add(dataModel.asRDFNode(targetNodes.next()));
+			}
+			if(!found && monitor != null) {
+				monitor.setTaskName(baseMessage + " (at " + SPINLabels.get().getLabel(shape.getShapeResource()) + ")");
+			}
+			found = true;
 			for(Rule rule : rules) {
 				if(monitor != null) {
 					if(monitor.isCanceled()) {
 						throw new InterruptedException();
 					}
-					monitor.setTaskName(baseMessage + " (at " + SPINLabels.get().getLabel(shape.getShapeResource()) + " with " + targetNodes.size() + " target nodes)");
 					monitor.subTask(rule.toString().replace("\n", " "));
 				}
-				if(!oldOrder.equals(rule.getOrder())) {
-					oldOrder = rule.getOrder();
-					flushPending();
-				}
 				List<Resource> conditions = rule2Conditions.get(rule);
-				if(!conditions.isEmpty()) {
-					List<RDFNode> filtered = new LinkedList<RDFNode>();
-					for(RDFNode targetNode : targetNodes) {
-						if(nodeConformsToAllShapes(targetNode, conditions)) {
-							filtered.add(targetNode);
-						}
-					}
-					executeRule(rule, filtered, shape);
+				if(executorService != null) {
+					List<RDFNode> chunk = focusNodes;
+					URI oldShapesGraphURI = HasShapeFunction.getShapesGraph();
+					futures.add(executorService.submit(() -> executeRuleTask(rule, conditions, chunk, shape, oldShapesGraphURI)));
 				}
 				else {
-					executeRule(rule, targetNodes, shape);
+					executeRule(rule, conditions, focusNodes, shape);
 				}
-				if(monitor != null) {
-					monitor.worked(1);
+			}
+		}
+		if(found && monitor != null) {
+			monitor.worked(rules.size());
+		}
+	}
+	
+	
+	private void executeRule(Rule rule, List<Resource> conditions, List<RDFNode> focusNodes, Shape shape) {
+		if(!conditions.isEmpty()) {
+			List<RDFNode> filtered = new ArrayList<RDFNode>();
+			for(RDFNode focusNode : focusNodes) {
+				if(nodeConformsToAllShapes(focusNode, conditions)) {
+					filtered.add(focusNode);
 				}
 			}
+			executeRule(rule, filtered, shape);
+		}
+		else {
+			executeRule(rule, focusNodes, shape);
 		}
 	}
 	
 	
+	/**
+	 * Called on a worker thread to execute a rule for a chunk of focus nodes,
+	 * using a separate engine that collects the inferences into its own buffer.
+	 */
+	private Set<Triple> executeRuleTask(Rule rule, List<Resource> conditions, List<RDFNode> focusNodes, Shape shape, URI hasShapeShapesGraphURI) {
+		RuleEngine worker = new RuleEngine(dataset, shapesGraphURI, shapesGraph, inferences);
+		worker.conditionVerdicts = conditionVerdicts;
+		worker.setBulkMode(bulkMode);
+		worker.setProgressMonitor(monitor);
+		URI oldShapesGraphURI = HasShapeFunction.getShapesGraph();
+		HasShapeFunction.setShapesGraph(hasShapeShapesGraphURI);
+		try {
+			worker.executeRule(rule, conditions, focusNodes, shape);
+		}
+		finally {
+			HasShapeFunction.setShapesGraph(oldShapesGraphURI);
+		}
+		return worker.pending;
+	}
+	
+	
 	private void executeRule(Rule rule, List<RDFNode> focusNodes, Shape shape) {
 		JenaUtil.setGraphReadOptimization(true);
 		try {
@@ -174,14 +441,149 @@ public class RuleEngine implements NodeExpressionContext {
 	}
 	
 	
-	private void flushPending() {
+	// In parallel mode, waits for the tasks of the current tier and merges their inferences first
+	private void flushPending() throws InterruptedException {
+		try {
+			for(Future<Set<Triple>> future : futures) {
+				pending.addAll(getFuture(future));
+			}
+		}
+		finally {
+			futures.clear();
+		}
+		Graph dataGraph = dataset.getDefaultModel().getGraph();
+		boolean track = newTriples != null || !conditionVerdicts.isEmpty();
+		boolean changed = false;
 		for(Triple triple : pending) {
+			if(track && !dataGraph.contains(triple) && !inferences.getGraph().contains(triple)) {
+				changed = true;
+				if(newTriples != null) {
+					newTriples.add(triple);
+				}
+			}
 			inferences.add(inferences.asStatement(triple));
 		}
 		pending.clear();
+		if(changed) {
+			conditionVerdicts.clear();
+		}
+	}
+	
+	
+	private void cancelFutures() {
+		for(Future<?> future : futures) {
+			future.cancel(true);
+		}
+		futures.clear();
+	}
+	
+	
+	private int countRules(List<Shape> ruleShapes) {
+		int rules = 0;
+		for(Shape shape : ruleShapes) {
+			rules += getShapeRules(shape).size();
+		}
+		return rules;
+	}
+	
+	
+	private static <T> T getFuture(Future<T> future) throws InterruptedException {
+		try {
+			return future.get();
+		}
+		catch(ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			else if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			else {
+				throw new SHACLException("Rule execution task failed: " + cause);
+			}
+		}
+	}
+	
+	
+	// Gets the target nodes of a shape for which a rule may produce new results after the given
+	// changes, or null if this cannot be narrowed down and all target nodes need to be considered.
+	// New results are possible for the nodes that have become targets and, for local rules,
+	// for the subjects and objects of the new triples that the rule reads.
+	private Set<Node> getChangedFocusNodes(Shape shape, Rule rule, Set<Triple> changes) {
+		Set<Node> bodyPredicates = rule.getBodyPredicates();
+		Set<Node> targetPredicates = getTargetPredicates(shape.getShapeResource());
+		if(bodyPredicates == null || targetPredicates == null || !rule2Conditions.get(rule).isEmpty()) {
+			return null;
+		}
+		Set<Node> candidates = new HashSet<>();
+		for(Triple triple : changes) {
+			Node predicate = triple.getPredicate();
+			boolean body = bodyPredicates.contains(predicate);
+			if((body && !rule.isLocal()) || (RDFS.subClassOf.asNode().equals(predicate) && targetPredicates.contains(predicate))) {
+				return null;
+			}
+			else if(body || targetPredicates.contains(predicate)) {
+				candidates.add(triple.getSubject());
+				candidates.add(triple.getObject());
+			}
+		}
+		Set<Node> results = new HashSet<>();
+		for(Node candidate : candidates) {
+			if(SHACLUtil.isTargetNode(candidate, shape.getShapeResource(), dataset)) {
+				results.add(candidate);
+			}
+		}
+		return results;
 	}
 
 
+	// Gets the target nodes of a shape for which a rule may infer some of the given deleted triples,
+	// or null if this cannot be narrowed down and all target nodes need to be considered
+	private Set<Node> getDerivingFocusNodes(Shape shape, Rule rule, Set<Triple> deleted) {
+		Set<Node> headPredicates = rule.getHeadPredicates();
+		Set<Node> candidates = new HashSet<>();
+		boolean found = false;
+		for(Triple triple : deleted) {
+			if(headPredicates == null || headPredicates.contains(triple.getPredicate())) {
+				if(headPredicates == null || !rule.isHeadLocal()) {
+					return null;
+				}
+				found = true;
+				candidates.add(triple.getSubject());
+				candidates.add(triple.getObject());
+			}
+		}
+		Set<Node> results = new HashSet<>();
+		if(found) {
+			for(Node candidate : candidates) {
+				if(SHACLUtil.isTargetNode(candidate, shape.getShapeResource(), dataset)) {
+					results.add(candidate);
+				}
+			}
+		}
+		return results;
+	}
+	
+	
+	// Gets the root shapes that have rules, sorted by their sh:order
+	private List<Shape> getRuleShapes() {
+		List<Shape> ruleShapes = new ArrayList<Shape>();
+		for(Shape shape : shapesGraph.getRootShapes()) {
+			if(shape.getShapeResource().hasProperty(SH.rule)) {
+				ruleShapes.add(shape);
+			}
+		}
+		Collections.sort(ruleShapes, new Comparator<Shape>() {
+			@Override
+			public int compare(Shape shape1, Shape shape2) {
+				return shape1.getOrder().compareTo(shape2.getOrder());
+			}
+		});
+		return ruleShapes;
+	}
+	
+	
 	private List<Rule> getShapeRules(Shape shape) {
 		List<Rule> rules = shape2Rules.get(shape);
 		if(rules == null) {
@@ -209,6 +611,26 @@ public class RuleEngine implements NodeExpressionContext {
 	}
 	
 	
+	// Gets the predicates of the triples that determine the target nodes of a shape, or null if unknown
+	private Set<Node> getTargetPredicates(Resource shape) {
+		if(shape.hasProperty(SH.target)) {
+			return null;
+		}
+		Set<Node> results = new HashSet<>();
+		if(shape.hasProperty(SH.targetClass) || JenaUtil.hasIndirectType(shape, RDFS.Class)) {
+			results.add(RDF.type.asNode());
+			results.add(RDFS.subClassOf.asNode());
+		}
+		for(Resource sof : JenaUtil.getResourceProperties(shape, SH.targetSubjectsOf)) {
+			results.add(sof.asNode());
+		}
+		for(Resource oof : JenaUtil.getResourceProperties(shape, SH.targetObjectsOf)) {
+			results.add(oof.asNode());
+		}
+		return results;
+	}
+	
+	
 	@Override
 	public Dataset getDataset() {
 		return dataset;
@@ -220,6 +642,16 @@ public class RuleEngine implements NodeExpressionContext {
 	}
 	
 	
+	/**
+	 * Checks whether rules should execute their queries for all focus nodes of a chunk at once.
+	 * @return true if in bulk mode
+	 * @see #setBulkMode(boolean)
+	 */
+	public boolean isBulkMode() {
+		return bulkMode;
+	}
+	
+	
 	public ProgressMonitor getProgressMonitor() {
 		return monitor;
 	}
@@ -248,9 +680,7 @@ public class RuleEngine implements NodeExpressionContext {
 	
 	private boolean nodeConformsToAllShapes(RDFNode focusNode, Iterable<Resource> shapes) {
 		for(Resource shape : shapes) {
-			ValidationEngine engine = ValidationEngineFactory.get().create(dataset, shapesGraphURI, shapesGraph, null);
-			Resource report = engine.validateNodesAgainstShape(Collections.singletonList(focusNode), shape.asNode());
-			if(report.hasProperty(SH.result)) {
+			if(!nodeConformsToShape(focusNode, shape)) {
 				return false;
 			}
 		}
@@ -258,6 +688,85 @@ public class RuleEngine implements NodeExpressionContext {
 	}
 	
 	
+	// A node conforms to a condition shape if its validation produces no results at all.
+	// The validation stops at the first result and uses an engine without a report.
+	private boolean nodeConformsToShape(RDFNode focusNode, Resource shape) {
+		Map<Node,Boolean> verdicts = conditionVerdicts.computeIfAbsent(shape, s -> new ConcurrentHashMap<>());
+		Boolean result = verdicts.get(focusNode.asNode());
+		if(result == null) {
+			AtomicBoolean found = new AtomicBoolean();
+			ValidationEngine engine = ValidationEngineFactory.get().createWithSink(dataset, shapesGraphURI, shapesGraph, r -> found.set(true));
+			engine.setMaxResults(1);
+			engine.validateNodesAgainstShape(Collections.singletonList(focusNode), shape.asNode());
+			result = !found.get();
+			verdicts.put(focusNode.asNode(), result);
+		}
+		return result;
+	}
+	
+	
+	/**
+	 * Activates the bulk mode, in which SPARQL rules execute their CONSTRUCT query once per
+	 * chunk of focus nodes (see {@link #setChunkSize(int)}) instead of once per focus node,
+	 * with the focus nodes in a VALUES block for $this.
+	 * Queries with nested scopes that use $this, such as sub-queries, UNIONs or MINUS, produce
+	 * different results that way and are still executed once per focus node.
+	 * @param value  true to use bulk mode (default: false)
+	 */
+	public void setBulkMode(boolean value) {
+		this.bulkMode = value;
+	}
+	
+	
+	/**
+	 * Sets the maximum number of target nodes that a rule is executed for at once.
+	 * The target nodes of each shape are enumerated lazily and processed in chunks of this size.
+	 * @param value  the new chunk size (default: 1000)
+	 */
+	public void setChunkSize(int value) {
+		if(value < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive");
+		}
+		this.chunkSize = value;
+	}
+	
+	
+	/**
+	 * Activates the parallel mode of {@link #executeAll()}, in which the rules and chunks of
+	 * their focus nodes are executed as separate tasks by the given ExecutorService.
+	 * Rules only see the inferences of rules with a lower sh:order (of the rule or its shape),
+	 * so all tasks between two such order boundaries run concurrently, each collecting its
+	 * own inferences that are merged once the tier is complete.
+	 * The data graph must be safe for concurrent reads, and the calling thread waits for the
+	 * tasks to complete, so the ExecutorService must not be one whose worker threads are busy
+	 * calling executeAll.
+	 * @param value  the ExecutorService or null to execute sequentially (default)
+	 */
+	public void setExecutorService(ExecutorService value) {
+		this.executorService = value;
+	}
+	
+	
+	/**
+	 * Sets the maximum number of times that the rules are executed by {@link #executeAll()}.
+	 * After the first round, the rules are executed again as long as the previous round has
+	 * inferred new triples, so that rules can use the inferences of rules that come after them.
+	 * These rounds are semi-naive: they only execute the rules that read the new triples
+	 * or whose targets may have changed, and for local rules (see {@link Rule#isLocal()}) only
+	 * for the affected focus nodes.
+	 * Inferences are never retracted, so rules that use negation may produce different
+	 * results than a single round.
+	 * @param value  the maximum number of rounds (default: 1), e.g. Integer.MAX_VALUE to
+	 *               iterate until no new triples are inferred
+	 */
+	public void setMaxIterations(int value) {
+		if(value < 1) {
+			throw new IllegalArgumentException("Maximum number of iterations must be positive");
+		}
+		this.maxIterations = value;
+	}
+	
+	
 	public void setProgressMonitor(ProgressMonitor value) {
 		this.monitor = value;
 	}
@@ -1,9 +1,11 @@
 package org.topbraid.shacl.rules;
 
 import java.net.URI;
+import java.util.Collection;
 import java.util.UUID;
 
 import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.graph.compose.MultiUnion;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.rdf.model.Model;
@@ -39,6 +41,69 @@ public class RuleUtil {
 	 * @return the Model of inferred triples (i.e. inferencesModel if not null, or a new Model)
 	 */
 	public static Model executeRules(Model dataModel, Model shapesModel, Model inferencesModel, ProgressMonitor monitor) {
+		return executeRules(dataModel, shapesModel, inferencesModel, monitor, 1);
+	}
+
+
+	/**
+	 * Executes all rules like {@link #executeRules(Model, Model, Model, ProgressMonitor)},
+	 * but repeats the rules that may produce new results from the triples inferred in the
+	 * previous round, until no new triples are inferred.
+	 * See {@link RuleEngine#setMaxIterations(int)}.
+	 * @param dataModel  the data Model
+	 * @param shapesModel  the shapes Model
+	 * @param inferencesModel  the Model for the inferred triples or null
+	 * @param monitor  an optional progress monitor
+	 * @param maxIterations  the maximum number of rounds, e.g. Integer.MAX_VALUE
+	 * @return the Model of inferred triples (i.e. inferencesModel if not null, or a new Model)
+	 */
+	public static Model executeRules(Model dataModel, Model shapesModel, Model inferencesModel, ProgressMonitor monitor, int maxIterations) {
+		
+		if(inferencesModel == null) {
+			inferencesModel = JenaUtil.createDefaultModel();
+			MultiUnion unionGraph = new MultiUnion(new Graph[] {
+				dataModel.getGraph(),
+				inferencesModel.getGraph()
+			});
+			dataModel = ModelFactory.createModelForGraph(unionGraph);
+		}
+		
+		RuleEngine engine = createEngine(dataModel, shapesModel, inferencesModel, monitor);
+		engine.setMaxIterations(maxIterations);
+		
+		try {
+			engine.executeAll();
+		}
+		catch(InterruptedException ex) {
+		}
+		return inferencesModel;
+	}
+
+
+	/**
+	 * Incrementally updates the inferences of all rules from a given shapes Model after
+	 * some triples have been added to or removed from the data Model, instead of discarding
+	 * the inferences and calling {@link #executeRules(Model, Model, Model, ProgressMonitor, int)}
+	 * again.  See {@link RuleEngine#update(Collection, Collection)} for the preconditions.
+	 * @param dataModel  the data Model, already including the changes
+	 * @param shapesModel  the shapes Model
+	 * @param inferencesModel  the Model of inferred triples, part of the dataModel (e.g. a sub-graph
+	 *                         of a Jena MultiUnion object) and complete for the data before the changes
+	 * @param added  the triples that have been added to the data
+	 * @param removed  the triples that have been removed from the data
+	 * @param monitor  an optional progress monitor
+	 */
+	public static void updateRules(Model dataModel, Model shapesModel, Model inferencesModel, Collection<Triple> added, Collection<Triple> removed, ProgressMonitor monitor) {
+		RuleEngine engine = createEngine(dataModel, shapesModel, inferencesModel, monitor);
+		try {
+			engine.update(added, removed);
+		}
+		catch(InterruptedException ex) {
+		}
+	}
+	
+	
+	private static RuleEngine createEngine(Model dataModel, Model shapesModel, Model inferencesModel, ProgressMonitor monitor) {
 		
 		// Ensure that the SHACL, DASH and TOSH graphs are present in the shapes Model
 		if(!shapesModel.contains(TOSH.hasShape, RDF.type, (RDFNode)null)) { // Heuristic
@@ -53,15 +118,6 @@ public class RuleUtil {
 		// Make sure all sh:Functions are registered
 		SHACLFunctions.registerFunctions(shapesModel);
 		
-		if(inferencesModel == null) {
-			inferencesModel = JenaUtil.createDefaultModel();
-			MultiUnion unionGraph = new MultiUnion(new Graph[] {
-				dataModel.getGraph(),
-				inferencesModel.getGraph()
-			});
-			dataModel = ModelFactory.createModelForGraph(unionGraph);
-		}
-		
 		// Create Dataset that contains both the data model and the shapes model
 		// (here, using a temporary URI for the shapes graph)
 		URI shapesGraphURI = URI.create("urn:x-shacl-shapes-graph:" + UUID.randomUUID().toString());
@@ -71,12 +127,6 @@ public class RuleUtil {
 		ShapesGraph shapesGraph = new ShapesGraph(shapesModel);
 		RuleEngine engine = new RuleEngine(dataset, shapesGraphURI, shapesGraph, inferencesModel);
 		engine.setProgressMonitor(monitor);
-		
-		try {
-			engine.executeAll();
-		}
-		catch(InterruptedException ex) {
-		}
-		return inferencesModel;
+		return engine;
 	}
 }
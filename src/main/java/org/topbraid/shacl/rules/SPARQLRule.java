@@ -1,11 +1,14 @@
 package org.topbraid.shacl.rules;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QuerySolutionMap;
-import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.Statement;
@@ -18,6 +21,10 @@ import org.topbraid.spin.util.JenaUtil;
 
 public class SPARQLRule extends Rule {
 	
+	private boolean bulk;
+	
+	private RuleDependencies dependencies;
+	
 	private Query query;
 	
 	
@@ -29,11 +36,17 @@ public class SPARQLRule extends Rule {
 		if(!query.isConstructType()) {
 			throw new IllegalArgumentException("Values of sh:construct must be CONSTRUCT queries");
 		}
+		bulk = BulkConstruct.isSupported(query);
+		dependencies = RuleDependencies.forQuery(query);
 	}
 	
 	
 	@Override
 	public void execute(RuleEngine ruleEngine, List<RDFNode> focusNodes, Shape shape) {
+		if(bulk && ruleEngine.isBulkMode()) {
+			BulkConstruct.execute(query, focusNodes, ruleEngine, this, shape);
+			return;
+		}
 		ProgressMonitor monitor = ruleEngine.getProgressMonitor();
 		for(RDFNode focusNode : focusNodes) {
 			
@@ -44,20 +57,44 @@ public class SPARQLRule extends Rule {
 			QuerySolutionMap bindings = new QuerySolutionMap();
 			bindings.add(SH.thisVar.getVarName(), focusNode);
 			try(QueryExecution qexec = ARQFactory.get().createQueryExecution(query, ruleEngine.getDataset(), bindings)) {
-				Model constructed = qexec.execConstruct();
-				for(Statement s : constructed.listStatements().toList()) {
-					ruleEngine.infer(s.asTriple(), this, shape);
+				Iterator<Triple> it = qexec.execConstructTriples();
+				while(it.hasNext()) {
+					ruleEngine.infer(it.next(), this, shape);
 				}
 			}
 		}
 	}
 	
 	
+	@Override
+	public Set<Node> getBodyPredicates() {
+		return dependencies.getPredicates();
+	}
+	
+	
+	@Override
+	public Set<Node> getHeadPredicates() {
+		return dependencies.getHeadPredicates();
+	}
+	
+	
 	public Query getQuery() {
 		return query;
 	}
 	
 	
+	@Override
+	public boolean isHeadLocal() {
+		return dependencies.isHeadLocal();
+	}
+	
+	
+	@Override
+	public boolean isLocal() {
+		return dependencies.isLocal();
+	}
+	
+	
 	public String toString() {
 		String label = getLabel();
 		if(label == null) {
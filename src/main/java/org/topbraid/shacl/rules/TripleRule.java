@@ -1,22 +1,27 @@
 package org.topbraid.shacl.rules;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QuerySolutionMap;
-import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.Property;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.Statement;
 import org.topbraid.shacl.engine.Shape;
 import org.topbraid.shacl.expr.AppendContext;
+import org.topbraid.shacl.expr.AtomicNodeExpression;
 import org.topbraid.shacl.expr.ComplexNodeExpression;
+import org.topbraid.shacl.expr.ConstantTermExpression;
+import org.topbraid.shacl.expr.FocusNodeExpression;
 import org.topbraid.shacl.expr.NodeExpression;
 import org.topbraid.shacl.expr.NodeExpressionFactory;
+import org.topbraid.shacl.expr.PathExpression;
 import org.topbraid.shacl.vocabulary.SH;
 import org.topbraid.spin.arq.ARQFactory;
 import org.topbraid.spin.progress.ProgressMonitor;
@@ -26,10 +31,17 @@ class TripleRule extends Rule {
 	
 	private static boolean SPARQL_MODE = false;
 	
+	private boolean bulk;
+	
+	private RuleDependencies dependencies = new RuleDependencies();
+	
 	private NodeExpression object;
 	
 	private NodeExpression predicate;
 	
+	// Only used in SPARQL mode
+	private Query query;
+	
 	private NodeExpression subject;
 
 	
@@ -38,6 +50,37 @@ class TripleRule extends Rule {
 		this.object = createNodeExpression(resource, SH.object);
 		this.predicate = createNodeExpression(resource, SH.predicate);
 		this.subject = createNodeExpression(resource, SH.subject);
+		addDependencies(object);
+		addDependencies(predicate);
+		addDependencies(subject);
+		Node headPredicate = null;
+		if(predicate instanceof ConstantTermExpression) {
+			headPredicate = ((ConstantTermExpression)predicate).getTerm().asNode();
+		}
+		dependencies.addHeadPredicate(headPredicate, subject instanceof FocusNodeExpression || object instanceof FocusNodeExpression);
+		if(SPARQL_MODE) {
+			// The constants and paths are rendered with the prefixes of the shapes graph
+			query = ARQFactory.get().createQuery(resource.getModel(), getSPARQL());
+			bulk = BulkConstruct.isSupported(query);
+		}
+	}
+	
+	
+	// Only constants, the focus node and paths starting at the focus node are analyzed
+	private void addDependencies(NodeExpression expr) {
+		if(expr instanceof PathExpression && (((PathExpression)expr).getInput() == null || ((PathExpression)expr).getInput() instanceof AtomicNodeExpression)) {
+			PathExpression pathExpr = (PathExpression) expr;
+			boolean local = pathExpr.getInput() == null || pathExpr.getInput() instanceof FocusNodeExpression;
+			if(pathExpr.getJenaPath() == null) {
+				dependencies.addPredicate(pathExpr.getPath().asNode(), local);
+			}
+			else {
+				dependencies.addPath(pathExpr.getJenaPath(), local);
+			}
+		}
+		else if(!(expr instanceof AtomicNodeExpression)) {
+			dependencies.setUnknown();
+		}
 	}
 	
 	
@@ -50,6 +93,30 @@ class TripleRule extends Rule {
 	}
 
 
+	@Override
+	public Set<Node> getBodyPredicates() {
+		return dependencies.getPredicates();
+	}
+	
+	
+	@Override
+	public Set<Node> getHeadPredicates() {
+		return dependencies.getHeadPredicates();
+	}
+	
+	
+	@Override
+	public boolean isHeadLocal() {
+		return dependencies.isHeadLocal();
+	}
+	
+	
+	@Override
+	public boolean isLocal() {
+		return dependencies.isLocal();
+	}
+
+
 	@Override
 	public void execute(RuleEngine ruleEngine, List<RDFNode> focusNodes, Shape shape) {
 		if(SPARQL_MODE) {
@@ -85,15 +152,18 @@ class TripleRule extends Rule {
 	
 	
 	private void executeSPARQL(RuleEngine ruleEngine, List<RDFNode> focusNodes, Shape shape) {
-		String queryString = getSPARQL();
-		Query query = ARQFactory.get().createQuery(ruleEngine.getDataset().getDefaultModel(), queryString);
+		if(bulk && ruleEngine.isBulkMode()) {
+			BulkConstruct.execute(query, focusNodes, ruleEngine, this, shape);
+			return;
+		}
 		QuerySolutionMap binding = new QuerySolutionMap();
 		for(RDFNode focusNode : focusNodes) {
 			binding.add(SH.thisVar.getVarName(), focusNode);
-			QueryExecution qexec = ARQFactory.get().createQueryExecution(query, ruleEngine.getDataset(), binding);
-			Model c = qexec.execConstruct();
-			for(Triple triple : c.getGraph().find(Node.ANY, Node.ANY, Node.ANY).toList()) {
-				ruleEngine.infer(triple, this, shape);
+			try(QueryExecution qexec = ARQFactory.get().createQueryExecution(query, ruleEngine.getDataset(), binding)) {
+				Iterator<Triple> it = qexec.execConstructTriples();
+				while(it.hasNext()) {
+					ruleEngine.infer(it.next(), this, shape);
+				}
 			}
 		}
 	}
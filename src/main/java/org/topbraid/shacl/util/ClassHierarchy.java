@@ -0,0 +1,351 @@
+package org.topbraid.shacl.util;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphListener;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.compose.Dyadic;
+import org.apache.jena.graph.compose.Polyadic;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.topbraid.shacl.validation.ConformanceCache;
+import org.topbraid.spin.util.AbstractGraphListener;
+
+/**
+ * An index of the rdfs:subClassOf closure of the classes in a graph, used for sh:class,
+ * sh:targetClass and implicit class targets.
+ *
+ * The closure of each class is computed on demand and then remembered, so that checking
+ * whether a node is an instance of a class only requires a few hash lookups.
+ * {@link #get(Graph)} keeps one index per graph across validations.  A listener on the graph
+ * (and on the subgraphs of unions) drops the index when rdfs:subClassOf triples are added
+ * or removed, so changes that bypass the graph's event manager are not noticed.
+ * The index of a union is also dropped when its subgraphs have changed.
+ * The index only holds a weak reference to its graph, so that the shared indices do not keep
+ * graphs alive.
+ * During a validation run (see {@link ConformanceCache#begin()}) the same index is
+ * used for the duration of the run.
+ */
+public class ClassHierarchy {
+	
+	// The shared indices, which may be dropped when memory runs low
+	private static Map<Graph,SoftReference<ClassHierarchy>> cache = new WeakHashMap<>();
+	
+	// The subgraphs of the unions in the cache at the time when their indices were created
+	private static Map<Graph,List<Graph>> cachedSubGraphs = new WeakHashMap<>();
+	
+	// The graphs that the listener has been registered on
+	private static Map<Graph,Boolean> listenedGraphs = new WeakHashMap<>();
+	
+	private static final GraphListener listener = new AbstractGraphListener() {
+
+		@Override
+		public void notifyAddTriple(Graph g, Triple t) {
+			if(RDFS.subClassOf.asNode().equals(t.getPredicate())) {
+				invalidate(g);
+			}
+		}
+
+
+		@Override
+		public void notifyDeleteTriple(Graph g, Triple t) {
+			if(RDFS.subClassOf.asNode().equals(t.getPredicate())) {
+				invalidate(g);
+			}
+		}
+
+
+		@Override
+		protected void notifyRemoveAll(Graph source, Triple pattern) {
+			invalidate(source);
+		}
+	};
+	
+	// Deeper hierarchies are walked without remembering the intermediate closures
+	private static final int maxDepth = 100;
+
+	// Weak, because the shared indices are the values of a map with the graph as weak key
+	private WeakReference<Graph> graph;
+
+	private Map<Node,Set<Node>> subClasses = new ConcurrentHashMap<>();
+
+	private Map<Node,Set<Node>> superClasses = new ConcurrentHashMap<>();
+
+
+	/**
+	 * Gets the ClassHierarchy of a given graph.
+	 * @param graph  the Graph
+	 * @return the index used by the current validation run, or else the shared index of the graph
+	 */
+	public static ClassHierarchy get(Graph graph) {
+		ConformanceCache conformanceCache = ConformanceCache.getCurrent();
+		if(conformanceCache != null) {
+			return conformanceCache.getClassHierarchy(graph);
+		}
+		else {
+			return getShared(graph);
+		}
+	}
+
+
+	/**
+	 * Gets the index of a given graph that is kept until rdfs:subClassOf triples change,
+	 * creating it on first use.
+	 * @param graph  the Graph
+	 * @return the shared ClassHierarchy
+	 */
+	public static synchronized ClassHierarchy getShared(Graph graph) {
+		List<Graph> subGraphs = new ArrayList<>();
+		addSubGraphs(graph, subGraphs);
+		SoftReference<ClassHierarchy> ref = cache.get(graph);
+		ClassHierarchy result = ref != null ? ref.get() : null;
+		if(result == null || !isSame(subGraphs, cachedSubGraphs.get(graph))) {
+			listen(graph);
+			for(Graph subGraph : subGraphs) {
+				listen(subGraph);
+			}
+			result = new ClassHierarchy(graph);
+			cache.put(graph, new SoftReference<>(result));
+			if(subGraphs.isEmpty()) {
+				cachedSubGraphs.remove(graph);
+			}
+			else {
+				cachedSubGraphs.put(graph, subGraphs);
+			}
+		}
+		return result;
+	}
+
+
+	// Unions do not forward the events of their subgraphs, so the listener is added to those too
+	private static void addSubGraphs(Graph graph, List<Graph> results) {
+		if(graph instanceof Polyadic) {
+			for(Graph subGraph : ((Polyadic)graph).getSubGraphs()) {
+				results.add(subGraph);
+				addSubGraphs(subGraph, results);
+			}
+		}
+		else if(graph instanceof Dyadic) {
+			for(Object subGraph : new Object[] { ((Dyadic)graph).getL(), ((Dyadic)graph).getR() }) {
+				results.add((Graph)subGraph);
+				addSubGraphs((Graph)subGraph, results);
+			}
+		}
+	}
+
+
+	// Compares by identity, because graphs with the same triples may be equal
+	private static boolean isSame(List<Graph> subGraphs, List<Graph> oldSubGraphs) {
+		if(oldSubGraphs == null) {
+			return subGraphs.isEmpty();
+		}
+		else if(subGraphs.size() != oldSubGraphs.size()) {
+			return false;
+		}
+		for(int i = 0; i < subGraphs.size(); i++) {
+			if(subGraphs.get(i) != oldSubGraphs.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	// The listener keeps no state, so it is registered at most once per graph
+	private static void listen(Graph graph) {
+		if(listenedGraphs.put(graph, Boolean.TRUE) == null) {
+			graph.getEventManager().register(listener);
+		}
+	}
+
+
+	// Drops the indices of the given graph and of all unions that include it
+	private static synchronized void invalidate(Graph changed) {
+		cache.keySet().removeIf(graph -> graph == changed || graph.dependsOn(changed));
+	}
+
+
+	/**
+	 * Constructs a new ClassHierarchy, which only holds a weak reference to the graph.
+	 * @param graph  the Graph, which must be kept alive by the caller
+	 */
+	public ClassHierarchy(Graph graph) {
+		this.graph = new WeakReference<>(graph);
+	}
+
+
+	/**
+	 * Gets all instances of a given class or its (transitive) subclasses.
+	 * @param cls  the class
+	 * @return the instances
+	 */
+	public Set<Node> getAllInstances(Node cls) {
+		Set<Node> results = new HashSet<>();
+		for(Node subClass : getSubClassesStar(cls)) {
+			ExtendedIterator<Triple> it = getGraph().find(Node.ANY, RDF.type.asNode(), subClass);
+			try {
+				while(it.hasNext()) {
+					results.add(it.next().getSubject());
+				}
+			}
+			finally {
+				it.close();
+			}
+		}
+		return results;
+	}
+
+
+	/**
+	 * Gets the rdf:types of a given node plus all their (transitive) superclasses.
+	 * @param instance  the node to get the types of
+	 * @return the types
+	 */
+	public Set<Node> getAllTypes(Node instance) {
+		Set<Node> results = new HashSet<>();
+		for(Node type : getObjects(instance, RDF.type.asNode())) {
+			results.addAll(getSuperClassesStar(type));
+		}
+		return results;
+	}
+
+
+	/**
+	 * Gets a given class and all its (transitive) subclasses, similar to ^rdfs:subClassOf*.
+	 * @param cls  the class
+	 * @return the classes (which must not be modified)
+	 */
+	public Set<Node> getSubClassesStar(Node cls) {
+		return getClosure(cls, subClasses, false, new HashSet<>());
+	}
+
+
+	/**
+	 * Gets a given class and all its (transitive) superclasses, similar to rdfs:subClassOf*.
+	 * @param cls  the class
+	 * @return the classes (which must not be modified)
+	 */
+	public Set<Node> getSuperClassesStar(Node cls) {
+		return getClosure(cls, superClasses, true, new HashSet<>());
+	}
+
+
+	/**
+	 * Checks whether a given node has a given class or one of its subclasses as rdf:type.
+	 * @param instance  the node to check
+	 * @param cls  the class
+	 * @return true if instance is an instance of cls
+	 */
+	public boolean isInstanceOf(Node instance, Node cls) {
+		if(instance.isLiteral()) {
+			return false;
+		}
+		for(Node type : getObjects(instance, RDF.type.asNode())) {
+			if(getSuperClassesStar(type).contains(cls)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	// Computes the closure as the union of the closures of the direct neighbors, so that
+	// the closures of all intermediate classes are remembered too.
+	// Returns null if a cycle is reached, in which case the caller walks the graph directly.
+	private Set<Node> getClosure(Node cls, Map<Node,Set<Node>> memo, boolean up, Set<Node> visiting) {
+		Set<Node> result = memo.get(cls);
+		if(result == null) {
+			if(visiting.size() > maxDepth || !visiting.add(cls)) {
+				return null;
+			}
+			result = new HashSet<>();
+			result.add(cls);
+			for(Node neighbor : getNeighbors(cls, up)) {
+				Set<Node> closure = getClosure(neighbor, memo, up, visiting);
+				if(closure == null) {
+					result = walkClosure(cls, up);
+					break;
+				}
+				result.addAll(closure);
+			}
+			visiting.remove(cls);
+			result = Collections.unmodifiableSet(result);
+			memo.put(cls, result);
+		}
+		return result;
+	}
+
+
+	private Set<Node> getNeighbors(Node cls, boolean up) {
+		return up ? getObjects(cls, RDFS.subClassOf.asNode()) : getSubjects(RDFS.subClassOf.asNode(), cls);
+	}
+
+
+	private Set<Node> walkClosure(Node cls, boolean up) {
+		Set<Node> result = new HashSet<>();
+		LinkedList<Node> queue = new LinkedList<>();
+		queue.add(cls);
+		while(!queue.isEmpty()) {
+			Node c = queue.removeFirst();
+			if(result.add(c)) {
+				queue.addAll(getNeighbors(c, up));
+			}
+		}
+		return result;
+	}
+
+
+	private Graph getGraph() {
+		Graph result = graph.get();
+		if(result == null) {
+			throw new IllegalStateException("The graph of this ClassHierarchy has been garbage collected");
+		}
+		return result;
+	}
+
+
+	private Set<Node> getObjects(Node subject, Node predicate) {
+		Set<Node> results = new HashSet<>();
+		ExtendedIterator<Triple> it = getGraph().find(subject, predicate, Node.ANY);
+		try {
+			while(it.hasNext()) {
+				Node object = it.next().getObject();
+				if(!object.isLiteral()) {
+					results.add(object);
+				}
+			}
+		}
+		finally {
+			it.close();
+		}
+		return results;
+	}
+
+
+	private Set<Node> getSubjects(Node predicate, Node object) {
+		Set<Node> results = new HashSet<>();
+		ExtendedIterator<Triple> it = getGraph().find(Node.ANY, predicate, object);
+		try {
+			while(it.hasNext()) {
+				results.add(it.next().getSubject());
+			}
+		}
+		finally {
+			it.close();
+		}
+		return results;
+	}
+}
@@ -5,10 +5,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
@@ -26,6 +29,9 @@ import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NiceIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
 import org.apache.jena.vocabulary.OWL;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
@@ -543,45 +549,191 @@ public class SHACLUtil {
 	
 	
 	public static List<RDFNode> getTargetNodes(Resource shape, Dataset dataset) {
-		
 		Model dataModel = dataset.getDefaultModel();
-
-		Set<RDFNode> results = new HashSet<RDFNode>();
+		List<RDFNode> results = new ArrayList<RDFNode>();
+		ExtendedIterator<Node> it = listTargetNodes(shape, dataset);
+		try {
+			while(it.hasNext()) {
+				results.add(dataModel.asRDFNode(it.next()));
+			}
+		}
+		finally {
+			it.close();
+		}
+		return results;
+	}
+	
+	
+	/**
+	 * Lazily enumerates the distinct target nodes of a given shape in the default graph of a dataset.
+	 * The nodes of each target are only computed when the iterator reaches them, and
+	 * duplicates are only tracked if the shape has targets that may overlap or repeat nodes.
+	 * The data graph must not be modified while the iterator is used.
+	 * @param shape  the shape to get the target nodes of
+	 * @param dataset  the Dataset containing the data graph
+	 * @return an iterator that must be closed unless it has been exhausted
+	 */
+	public static ExtendedIterator<Node> listTargetNodes(Resource shape, Dataset dataset) {
+		
+		Graph dataGraph = dataset.getDefaultModel().getGraph();
+		ClassHierarchy classHierarchy = ClassHierarchy.get(dataGraph);
 		
+		List<Supplier<Iterator<Node>>> sources = new LinkedList<>();
+		boolean distinct = true;
+		
+		List<Node> classes = new LinkedList<>();
 		if(JenaUtil.hasIndirectType(shape, RDFS.Class)) {
-			results.addAll(JenaUtil.getAllInstances(shape.inModel(dataModel)));
+			classes.add(shape.asNode());
 		}
-		
 		for(Resource targetClass : JenaUtil.getResourceProperties(shape, SH.targetClass)) {
-			results.addAll(JenaUtil.getAllInstances(targetClass.inModel(dataModel)));
+			classes.add(targetClass.asNode());
+		}
+		for(Node cls : classes) {
+			Set<Node> subClasses = classHierarchy.getSubClassesStar(cls);
+			for(Node subClass : subClasses) {
+				sources.add(() -> dataGraph.find(Node.ANY, RDF.type.asNode(), subClass).mapWith(t -> t.getSubject()));
+			}
+			// Instances may have multiple types
+			distinct &= subClasses.size() == 1;
 		}
 		
-		for(RDFNode targetNode : shape.getModel().listObjectsOfProperty(shape, SH.targetNode).toList()) {
-			results.add(targetNode.inModel(dataModel));
+		List<Node> targetNodes = shape.getModel().listObjectsOfProperty(shape, SH.targetNode).mapWith(n -> n.asNode()).toList();
+		if(!targetNodes.isEmpty()) {
+			sources.add(() -> targetNodes.iterator());
 		}
 		
 		for(Resource sof : JenaUtil.getResourceProperties(shape, SH.targetSubjectsOf)) {
-			for(Statement s : dataModel.listStatements(null, JenaUtil.asProperty(sof), (RDFNode)null).toList()) {
-				results.add(s.getSubject());
-			}
+			sources.add(() -> dataGraph.find(Node.ANY, sof.asNode(), Node.ANY).mapWith(t -> t.getSubject()));
+			distinct = false;
 		}
 		
-		for(Resource sof : JenaUtil.getResourceProperties(shape, SH.targetObjectsOf)) {
-			for(Statement s : dataModel.listStatements(null, JenaUtil.asProperty(sof), (RDFNode)null).toList()) {
-				results.add(s.getObject());
-			}
+		for(Resource oof : JenaUtil.getResourceProperties(shape, SH.targetObjectsOf)) {
+			sources.add(() -> dataGraph.find(Node.ANY, oof.asNode(), Node.ANY).mapWith(t -> t.getObject()));
+			distinct = false;
 		}
 		
 		for(Resource target : JenaUtil.getResourceProperties(shape, SH.target)) {
-			for(RDFNode targetNode : SHACLUtil.getResourcesInTarget(target, dataset)) {
-				results.add(targetNode);
+			sources.add(() -> WrappedIterator.create(SHACLUtil.getResourcesInTarget(target, dataset).iterator()).mapWith(n -> n.asNode()));
+			distinct = false;
+		}
+		
+		return new TargetNodesIterator(sources, distinct && sources.size() <= 1 ? null : new HashSet<>());
+	}
+	
+	
+	private static class TargetNodesIterator extends NiceIterator<Node> {
+		
+		private Iterator<Node> current;
+		
+		private Node next;
+		
+		private Set<Node> seen;
+		
+		private Iterator<Supplier<Iterator<Node>>> sources;
+		
+		
+		TargetNodesIterator(List<Supplier<Iterator<Node>>> sources, Set<Node> seen) {
+			this.sources = sources.iterator();
+			this.seen = seen;
+		}
+
+
+		@Override
+		public void close() {
+			if(current != null) {
+				NiceIterator.close(current);
+				current = null;
 			}
+			next = null;
+			sources = Collections.emptyIterator();
 		}
 
-		return new ArrayList<RDFNode>(results);
+
+		@Override
+		public boolean hasNext() {
+			while(next == null) {
+				if(current != null && current.hasNext()) {
+					Node node = current.next();
+					if(seen == null || seen.add(node)) {
+						next = node;
+					}
+				}
+				else if(sources.hasNext()) {
+					current = sources.next().get();
+				}
+				else {
+					current = null;
+					return false;
+				}
+			}
+			return true;
+		}
+
+
+		@Override
+		public Node next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Node result = next;
+			next = null;
+			return result;
+		}
 	}
 
-	
+
+	/**
+	 * Checks whether a given node is among the target nodes of a given shape in the default graph
+	 * of a dataset, without enumerating all target nodes.
+	 * @param node  the node to check
+	 * @param shape  the shape to check the targets of
+	 * @param dataset  the Dataset containing the data graph
+	 * @return true if node is a target node of shape
+	 * @see #listTargetNodes(Resource, Dataset)
+	 */
+	public static boolean isTargetNode(Node node, Resource shape, Dataset dataset) {
+
+		Graph dataGraph = dataset.getDefaultModel().getGraph();
+
+		if(shape.getModel().contains(shape, SH.targetNode, shape.getModel().asRDFNode(node))) {
+			return true;
+		}
+
+		List<Resource> classes = JenaUtil.getResourceProperties(shape, SH.targetClass);
+		if(JenaUtil.hasIndirectType(shape, RDFS.Class)) {
+			classes.add(shape);
+		}
+		if(!classes.isEmpty()) {
+			ClassHierarchy classHierarchy = ClassHierarchy.get(dataGraph);
+			for(Resource cls : classes) {
+				if(classHierarchy.isInstanceOf(node, cls.asNode())) {
+					return true;
+				}
+			}
+		}
+
+		for(Resource sof : JenaUtil.getResourceProperties(shape, SH.targetSubjectsOf)) {
+			if(dataGraph.contains(node, sof.asNode(), Node.ANY)) {
+				return true;
+			}
+		}
+
+		for(Resource oof : JenaUtil.getResourceProperties(shape, SH.targetObjectsOf)) {
+			if(dataGraph.contains(Node.ANY, oof.asNode(), node)) {
+				return true;
+			}
+		}
+
+		for(Resource target : JenaUtil.getResourceProperties(shape, SH.target)) {
+			if(isInTarget(dataset.getDefaultModel().asRDFNode(node), dataset, target)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+
 	public static List<Resource> getTypes(Resource subject) {
 		List<Resource> types = JenaUtil.getTypes(subject);
 		if(types.isEmpty()) {
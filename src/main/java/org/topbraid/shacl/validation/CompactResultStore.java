@@ -0,0 +1,270 @@
+package org.topbraid.shacl.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.topbraid.shacl.arq.SHACLPaths;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.validation.sparql.AbstractSPARQLExecutor;
+import org.topbraid.shacl.vocabulary.SH;
+import org.topbraid.spin.util.JenaDatatypes;
+import org.topbraid.spin.util.JenaUtil;
+
+/**
+ * A ValidationResultSink that stores the results in a compact columnar form instead of
+ * building the RDF report while the validation is running.
+ *
+ * Each result is a row of int references into tables of distinct constraints, result types,
+ * paths and sh:sourceConstraints, plus the focus and value Nodes and the list of messages.
+ * The messages are not interned because they usually differ for each result.  Deferred messages
+ * (see {@link DeferredMessages}) are stored as they are, so only their bindings take space per result.
+ * The standard sh:ValidationReport is only produced on request, see {@link #createReport()}.
+ * When the report is materialized, each distinct sh:resultPath is cloned only once and
+ * shared by all results with that path.
+ */
+public class CompactResultStore implements ValidationResultSink {
+
+	private static final int NONE = -1;
+
+	private int[] constraints = new int[16];
+
+	private Table<Constraint> constraintTable = new Table<>();
+
+	private Map<Integer,Model> details = new HashMap<>();
+
+	private Node[] focusNodes = new Node[16];
+
+	private List<List<RDFNode>> messages = new ArrayList<>();
+
+	private int[] paths = new int[16];
+
+	private Table<RDFNode> pathTable = new Table<>();
+
+	private int[] resultTypes = new int[16];
+
+	private Table<Resource> resultTypeTable = new Table<>();
+
+	private int size;
+
+	private int[] sourceConstraints = new int[16];
+
+	private Table<RDFNode> sourceConstraintTable = new Table<>();
+
+	private Node[] values = new Node[16];
+
+
+	@Override
+	public synchronized void addResult(ValidationResult result) {
+		if(size == focusNodes.length) {
+			int capacity = size + (size >> 1);
+			constraints = Arrays.copyOf(constraints, capacity);
+			focusNodes = Arrays.copyOf(focusNodes, capacity);
+			paths = Arrays.copyOf(paths, capacity);
+			resultTypes = Arrays.copyOf(resultTypes, capacity);
+			sourceConstraints = Arrays.copyOf(sourceConstraints, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		constraints[size] = constraintTable.intern(result.getConstraint());
+		focusNodes[size] = result.getFocusNode() != null ? result.getFocusNode().asNode() : null;
+		messages.add(result.getMessages());
+		paths[size] = pathTable.intern(result.getPath());
+		resultTypes[size] = resultTypeTable.intern(result.getResultType());
+		sourceConstraints[size] = sourceConstraintTable.intern(result.getSourceConstraint());
+		values[size] = result.getValue() != null ? result.getValue().asNode() : null;
+		if(result.getDetails() != null) {
+			details.put(size, result.getDetails());
+		}
+		size++;
+	}
+
+
+	/**
+	 * Adds all results to a given sh:ValidationReport, in the order in which they were produced.
+	 * Unlike {@link #createReport()}, this does not change the sh:conforms value of the report.
+	 * @param report  the report to add the sh:results to
+	 */
+	public synchronized void addResults(Resource report) {
+		Model model = report.getModel();
+		RDFNode[] clonedPaths = new RDFNode[pathTable.size()];
+		for(int i = 0; i < size; i++) {
+			Constraint constraint = constraintTable.get(constraints[i]);
+			Resource r = model.createResource(resultTypeTable.get(resultTypes[i]));
+			report.addProperty(SH.result, r);
+			r.addProperty(SH.resultSeverity, constraint.getShapeResource().getSeverity());
+			r.addProperty(SH.sourceConstraintComponent, constraint.getComponent());
+			r.addProperty(SH.sourceShape, constraint.getShapeResource());
+			if(focusNodes[i] != null) {
+				r.addProperty(SH.focusNode, model.asRDFNode(focusNodes[i]));
+			}
+			if(sourceConstraints[i] != NONE) {
+				r.addProperty(SH.sourceConstraint, sourceConstraintTable.get(sourceConstraints[i]));
+			}
+			for(RDFNode message : messages.get(i)) {
+				r.addProperty(SH.resultMessage, message);
+			}
+			if(paths[i] != NONE) {
+				RDFNode path = clonedPaths[paths[i]];
+				if(path == null) {
+					path = pathTable.get(paths[i]);
+					if(path.isResource()) {
+						path = SHACLPaths.clonePath((Resource)path, model);
+					}
+					clonedPaths[paths[i]] = path;
+				}
+				r.addProperty(SH.resultPath, path);
+			}
+			if(values[i] != null) {
+				r.addProperty(SH.value, model.asRDFNode(values[i]));
+			}
+			Model detailsModel = details.get(i);
+			if(detailsModel != null) {
+				AbstractSPARQLExecutor.addDetails(r, detailsModel);
+			}
+		}
+	}
+
+
+	/**
+	 * Checks whether none of the results is a sh:ValidationResult.
+	 * @return true if the data conforms
+	 */
+	public synchronized boolean conforms() {
+		int index = resultTypeTable.indexOf(SH.ValidationResult);
+		if(index != NONE) {
+			for(int i = 0; i < size; i++) {
+				if(resultTypes[i] == index) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Materializes the results as a new sh:ValidationReport in a new Model.
+	 * @return the sh:ValidationReport
+	 */
+	public synchronized Resource createReport() {
+		Model model = JenaUtil.createDefaultModel();
+		Resource report = model.createResource(SH.ValidationReport);
+		report.addProperty(SH.conforms, conforms() ? JenaDatatypes.TRUE : JenaDatatypes.FALSE);
+		addResults(report);
+		return report;
+	}
+
+
+	public synchronized Constraint getConstraint(int index) {
+		return constraintTable.get(constraints[checkIndex(index)]);
+	}
+
+
+	public synchronized Node getFocusNode(int index) {
+		return focusNodes[checkIndex(index)];
+	}
+
+
+	public synchronized List<RDFNode> getMessages(int index) {
+		return messages.get(checkIndex(index));
+	}
+
+
+	public synchronized RDFNode getPath(int index) {
+		return pathTable.get(paths[checkIndex(index)]);
+	}
+
+
+	public synchronized Resource getResultType(int index) {
+		return resultTypeTable.get(resultTypes[checkIndex(index)]);
+	}
+
+
+	public synchronized RDFNode getSourceConstraint(int index) {
+		return sourceConstraintTable.get(sourceConstraints[checkIndex(index)]);
+	}
+
+
+	public synchronized Node getValue(int index) {
+		return values[checkIndex(index)];
+	}
+
+
+	/**
+	 * Delivers all stored results to another sink, for example to write them to a
+	 * different format.
+	 * @param sink  the sink to deliver the results to
+	 * @param dataModel  the Model to use for the focus nodes and values
+	 */
+	public synchronized void replay(ValidationResultSink sink, Model dataModel) {
+		for(int i = 0; i < size; i++) {
+			sink.addResult(new ValidationResult(
+					resultTypeTable.get(resultTypes[i]),
+					constraintTable.get(constraints[i]),
+					focusNodes[i] != null ? dataModel.asRDFNode(focusNodes[i]) : null,
+					pathTable.get(paths[i]),
+					values[i] != null ? dataModel.asRDFNode(values[i]) : null,
+					messages.get(i),
+					sourceConstraintTable.get(sourceConstraints[i]),
+					details.get(i)));
+		}
+	}
+
+
+	public synchronized int size() {
+		return size;
+	}
+
+
+	private int checkIndex(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		return index;
+	}
+
+
+	// A list of distinct values that are referenced by their int index, with null as NONE
+	private static class Table<T> {
+
+		private Map<T,Integer> indices = new HashMap<>();
+
+		private List<T> values = new ArrayList<>();
+
+
+		T get(int index) {
+			return index == NONE ? null : values.get(index);
+		}
+
+
+		int indexOf(T value) {
+			Integer index = indices.get(value);
+			return index != null ? index : NONE;
+		}
+
+
+		int intern(T value) {
+			if(value == null) {
+				return NONE;
+			}
+			Integer index = indices.get(value);
+			if(index == null) {
+				index = values.size();
+				values.add(value);
+				indices.put(value, index);
+			}
+			return index;
+		}
+
+
+		int size() {
+			return values.size();
+		}
+	}
+}
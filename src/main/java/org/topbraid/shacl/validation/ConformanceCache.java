@@ -0,0 +1,215 @@
+package org.topbraid.shacl.validation;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.topbraid.shacl.engine.ShapesGraph;
+import org.topbraid.shacl.util.ClassHierarchy;
+import org.topbraid.shacl.validation.sparql.AbstractSPARQLExecutor;
+
+/**
+ * A memo table remembering whether a node conforms to a shape, so that shapes that are
+ * referenced via sh:node, sh:and, sh:or, sh:not, sh:xone or tosh:hasShape from many places
+ * only need to be validated once per value node.
+ * The verdicts are remembered per focus node, shape, shapes graph and data graph.
+ *
+ * An instance is active for the duration of a top-level validation (see {@link #begin()})
+ * and is shared by all threads working on the same validation.
+ * Results that depend on a cut-off recursion or that could not be fully computed are
+ * not remembered, and the cache is bypassed if sh:details are produced.
+ *
+ * The instance also holds the ClassHierarchy indices of the graphs used during the validation
+ * and the ShapesGraphs of nested validations, so that their executors are created once per run.
+ */
+public class ConformanceCache {
+
+	private static ThreadLocal<ConformanceCache> current = new ThreadLocal<>();
+
+	// Set to true if the currently running conformance check must not be remembered
+	private static ThreadLocal<Boolean> uncacheable = new ThreadLocal<>();
+	
+	private Map<Graph,ClassHierarchy> classHierarchies = new ConcurrentHashMap<>();
+	
+	private Map<Graph,ShapesGraph> shapesGraphs = new ConcurrentHashMap<>();
+
+
+	/**
+	 * Activates a new ConformanceCache for the current thread unless one is already active.
+	 * @return true if a cache was already active, to be passed into {@link #end(boolean)}
+	 */
+	public static boolean begin() {
+		if(current.get() != null) {
+			return true;
+		}
+		else {
+			current.set(new ConformanceCache());
+			return false;
+		}
+	}
+
+
+	public static void end(boolean nested) {
+		if(!nested) {
+			current.remove();
+		}
+	}
+
+
+	public static ConformanceCache getCurrent() {
+		return current.get();
+	}
+
+
+	/**
+	 * Sets the active cache of the current thread, e.g. to let a worker thread
+	 * share the cache of the thread that has started the validation.
+	 * @param value  the new cache or null
+	 */
+	public static void setCurrent(ConformanceCache value) {
+		if(value == null) {
+			current.remove();
+		}
+		else {
+			current.set(value);
+		}
+	}
+
+
+	/**
+	 * Gets the ClassHierarchy of a given graph, so that the whole run uses the same
+	 * index without going through the synchronized {@link ClassHierarchy#getShared(Graph)}.
+	 * @param graph  the Graph
+	 * @return the ClassHierarchy
+	 */
+	public ClassHierarchy getClassHierarchy(Graph graph) {
+		return classHierarchies.computeIfAbsent(graph, g -> ClassHierarchy.getShared(g));
+	}
+
+
+	/**
+	 * Gets a ShapesGraph for a given shapes Model that nested validations (e.g. by tosh:hasShape)
+	 * can share during the validation, creating it on first use.
+	 * @param shapesModel  the shapes Model
+	 * @return the ShapesGraph
+	 */
+	public ShapesGraph getShapesGraph(Model shapesModel) {
+		return shapesGraphs.computeIfAbsent(shapesModel.getGraph(), g -> new ShapesGraph(shapesModel));
+	}
+
+
+	/**
+	 * Marks the currently running conformance check (and all checks that it is nested in)
+	 * as not cacheable, for example because a recursion has been cut off.
+	 */
+	public static void markUncacheable() {
+		uncacheable.set(true);
+	}
+
+
+	/**
+	 * Checks whether a given node conforms to a given shape, using the result from the
+	 * active cache if present, or otherwise calling the provided validator and
+	 * remembering its result.
+	 * @param focusNode  the node to validate
+	 * @param shape  the shape to validate against
+	 * @param shapesGraphURI  the URI of the shapes graph
+	 * @param dataGraph  the data graph that the validator validates, i.e. the default graph of its Dataset
+	 * @param validator  performs the actual validation
+	 * @return true if focusNode conforms to shape
+	 */
+	public static boolean nodeConformsToShape(Node focusNode, Node shape, URI shapesGraphURI, Graph dataGraph, BooleanSupplier validator) {
+		ConformanceCache cache = AbstractSPARQLExecutor.createDetails ? null : current.get();
+		Key key = null;
+		if(cache != null) {
+			key = new Key(focusNode, shape, shapesGraphURI, dataGraph);
+			Boolean result = cache.map.get(key);
+			if(result != null) {
+				return result;
+			}
+		}
+		Boolean oldUncacheable = uncacheable.get();
+		uncacheable.set(false);
+		try {
+			boolean result = validator.getAsBoolean();
+			if(cache != null && !uncacheable.get()) {
+				cache.map.put(key, result);
+			}
+			return result;
+		}
+		finally {
+			if(Boolean.TRUE.equals(oldUncacheable) || uncacheable.get()) {
+				uncacheable.set(true);
+			}
+			else if(oldUncacheable == null) {
+				uncacheable.remove();
+			}
+		}
+	}
+
+
+	private static final int capacity = 100000;
+
+	@SuppressWarnings("serial")
+	private static class MyCache extends LinkedHashMap<Key,Boolean> {
+
+		MyCache() {
+			super(capacity + 1, 1.1f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Entry<Key, Boolean> eldest) {
+			return size() > capacity;
+		}
+	};
+
+	private Map<Key,Boolean> map = Collections.synchronizedMap(new MyCache());
+
+
+	private static class Key {
+		
+		// Compared by identity, like the graphs of the other caches
+		private Graph dataGraph;
+
+		private Node focusNode;
+
+		private Node shape;
+
+		private URI shapesGraphURI;
+
+
+		Key(Node focusNode, Node shape, URI shapesGraphURI, Graph dataGraph) {
+			this.dataGraph = dataGraph;
+			this.focusNode = focusNode;
+			this.shape = shape;
+			this.shapesGraphURI = shapesGraphURI;
+		}
+
+
+		@Override
+		public boolean equals(Object obj) {
+			if(obj instanceof Key) {
+				Key other = (Key) obj;
+				return focusNode.equals(other.focusNode) && shape.equals(other.shape) && Objects.equals(shapesGraphURI, other.shapesGraphURI) &&
+						dataGraph == other.dataGraph;
+			}
+			else {
+				return false;
+			}
+		}
+
+
+		@Override
+		public int hashCode() {
+			return focusNode.hashCode() + 31 * shape.hashCode() + 961 * System.identityHashCode(dataGraph);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package org.topbraid.shacl.validation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.rdf.model.Resource;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.engine.Shape;
+import org.topbraid.shacl.vocabulary.DASH;
+import org.topbraid.shacl.vocabulary.SH;
+
+/**
+ * Singleton that decides the order in which the constraints of a shape are validated,
+ * so that cheap constraints run first and e.g. a per-focus-node limit
+ * (see {@link ValidationEngine#setMaxResultsPerFocusNode(int)}) can skip the expensive ones.
+ *
+ * Constraints are ordered by the static cost class of their constraint component and,
+ * within the same cost class, by their declaration order.  If the results are limited,
+ * the constraints of the same cost class can instead be ordered by their average execution
+ * time per focus node as measured so far (see {@link Constraint#getAverageNanos()}).
+ * The measured order may differ between runs, so it is only used when it can save work.
+ */
+public class ConstraintCosts {
+
+	// Checks that only look at the value nodes
+	public final static int VALUE_NODES = 0;
+
+	// Checks that need further lookups in the data graph
+	public final static int GRAPH = 1;
+
+	// Checks that validate the value nodes against other shapes
+	public final static int SHAPES = 2;
+
+	// Everything else, including SPARQL- and JavaScript-based constraints
+	public final static int CUSTOM = 3;
+
+	private static ConstraintCosts singleton = new ConstraintCosts();
+
+	public static ConstraintCosts get() {
+		return singleton;
+	}
+
+	public static void set(ConstraintCosts value) {
+		singleton = value;
+	}
+
+
+	private Map<Resource,Integer> costClasses = new ConcurrentHashMap<>();
+
+
+	public ConstraintCosts() {
+		setCostClass(SH.DatatypeConstraintComponent, VALUE_NODES);
+		setCostClass(SH.HasValueConstraintComponent, VALUE_NODES);
+		setCostClass(SH.InConstraintComponent, VALUE_NODES);
+		setCostClass(SH.LanguageInConstraintComponent, VALUE_NODES);
+		setCostClass(SH.MaxCountConstraintComponent, VALUE_NODES);
+		setCostClass(SH.MaxExclusiveConstraintComponent, VALUE_NODES);
+		setCostClass(SH.MaxInclusiveConstraintComponent, VALUE_NODES);
+		setCostClass(SH.MaxLengthConstraintComponent, VALUE_NODES);
+		setCostClass(SH.MinCountConstraintComponent, VALUE_NODES);
+		setCostClass(SH.MinExclusiveConstraintComponent, VALUE_NODES);
+		setCostClass(SH.MinInclusiveConstraintComponent, VALUE_NODES);
+		setCostClass(SH.MinLengthConstraintComponent, VALUE_NODES);
+		setCostClass(SH.NodeKindConstraintComponent, VALUE_NODES);
+		setCostClass(SH.PatternConstraintComponent, VALUE_NODES);
+		setCostClass(SH.UniqueLangConstraintComponent, VALUE_NODES);
+
+		setCostClass(SH.ClassConstraintComponent, GRAPH);
+		setCostClass(SH.ClosedConstraintComponent, GRAPH);
+		setCostClass(SH.DisjointConstraintComponent, GRAPH);
+		setCostClass(SH.EqualsConstraintComponent, GRAPH);
+		setCostClass(SH.LessThanConstraintComponent, GRAPH);
+		setCostClass(SH.LessThanOrEqualsConstraintComponent, GRAPH);
+
+		setCostClass(SH.AndConstraintComponent, SHAPES);
+		setCostClass(SH.NodeConstraintComponent, SHAPES);
+		setCostClass(SH.NotConstraintComponent, SHAPES);
+		setCostClass(SH.OrConstraintComponent, SHAPES);
+		setCostClass(SH.PropertyConstraintComponent, SHAPES);
+		setCostClass(SH.QualifiedMaxCountConstraintComponent, SHAPES);
+		setCostClass(SH.QualifiedMinCountConstraintComponent, SHAPES);
+		setCostClass(SH.XoneConstraintComponent, SHAPES);
+		setCostClass(DASH.ParameterConstraintComponent, SHAPES);
+	}
+
+
+	/**
+	 * Gets the cost class of a given Constraint, based on its constraint component.
+	 * @param constraint  the Constraint
+	 * @return the cost class, e.g. {@link #VALUE_NODES}
+	 */
+	public int getCostClass(Constraint constraint) {
+		Integer costClass = costClasses.get(constraint.getComponent());
+		return costClass != null ? costClass : CUSTOM;
+	}
+
+
+	/**
+	 * Gets the constraints of a given Shape in the order in which they should be validated.
+	 * @param shape  the Shape
+	 * @param measured  true to order the constraints of the same cost class by their timings
+	 * @return a new List of the constraints
+	 */
+	public List<Constraint> getOrderedConstraints(Shape shape, boolean measured) {
+		return getOrderedConstraints(shape.getConstraints(), measured);
+	}
+
+
+	/**
+	 * Gets some constraints in the order in which they should be validated.
+	 * @param constraints  the constraints, e.g. a subset of the constraints of a shape
+	 * @param measured  true to order the constraints of the same cost class by their timings
+	 * @return a new List of the constraints
+	 */
+	public List<Constraint> getOrderedConstraints(Iterable<Constraint> constraints, boolean measured) {
+		// The timings may change concurrently, so they are copied before sorting
+		List<Cost> costs = new ArrayList<>();
+		for(Constraint constraint : constraints) {
+			costs.add(new Cost(constraint, getCostClass(constraint), measured ? constraint.getAverageNanos() : 0));
+		}
+		// The sort is stable, so constraints with the same cost stay in declaration order
+		costs.sort(Comparator.<Cost>comparingInt(c -> c.costClass).thenComparingDouble(c -> c.averageNanos));
+		List<Constraint> results = new ArrayList<>(costs.size());
+		for(Cost cost : costs) {
+			results.add(cost.constraint);
+		}
+		return results;
+	}
+
+
+	/**
+	 * Sets the cost class of a constraint component, e.g. for a custom component
+	 * that has a cheap native executor.
+	 * @param component  the constraint component
+	 * @param costClass  the cost class
+	 */
+	public void setCostClass(Resource component, int costClass) {
+		costClasses.put(component, costClass);
+	}
+
+
+	private static class Cost {
+
+		double averageNanos;
+
+		Constraint constraint;
+
+		int costClass;
+
+
+		Cost(Constraint constraint, int costClass, double averageNanos) {
+			this.averageNanos = averageNanos;
+			this.constraint = constraint;
+			this.costClass = costClass;
+		}
+	}
+}
@@ -4,11 +4,24 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import org.apache.jena.rdf.model.Resource;
 import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.engine.ShapesGraph;
+import org.topbraid.shacl.validation.java.ClassConstraintExecutor;
+import org.topbraid.shacl.validation.java.CountConstraintExecutor;
+import org.topbraid.shacl.validation.java.DatatypeConstraintExecutor;
+import org.topbraid.shacl.validation.java.HasValueConstraintExecutor;
+import org.topbraid.shacl.validation.java.InConstraintExecutor;
+import org.topbraid.shacl.validation.java.LanguageInConstraintExecutor;
+import org.topbraid.shacl.validation.java.NodeKindConstraintExecutor;
+import org.topbraid.shacl.validation.java.PatternConstraintExecutor;
+import org.topbraid.shacl.validation.java.StringLengthConstraintExecutor;
+import org.topbraid.shacl.validation.java.ValueRangeConstraintExecutor;
 import org.topbraid.shacl.validation.js.JSConstraintExecutor;
 import org.topbraid.shacl.validation.js.JSValidationLanguage;
+import org.topbraid.shacl.validation.sparql.AbstractSPARQLExecutor;
 import org.topbraid.shacl.validation.sparql.SPARQLConstraintExecutor;
 import org.topbraid.shacl.validation.sparql.SPARQLValidationLanguage;
 import org.topbraid.shacl.vocabulary.DASH;
@@ -27,43 +40,63 @@ public class ConstraintExecutors {
 		return singleton;
 	}
 	
+	private boolean jsPreferred;
+	
 	private List<ValidationLanguage> languages = new ArrayList<>();
 	
+	private boolean nativePreferred = true;
+	
 	private Map<Resource,SpecialConstraintExecutorFactory> specialExecutors = new HashMap<>();
 
 	
 	public ConstraintExecutors() {
-		addSpecialExecutor(SH.PropertyConstraintComponent, new AbstractSpecialConstraintExecutorFactory() {
+		addSpecialExecutor(SH.PropertyConstraintComponent, new BuiltInExecutorFactory() {
 			@Override
 			public ConstraintExecutor create(Constraint constraint) {
 				return new PropertyConstraintExecutor();
 			}
 		});
-		addSpecialExecutor(DASH.ParameterConstraintComponent, new AbstractSpecialConstraintExecutorFactory() {
+		addSpecialExecutor(DASH.ParameterConstraintComponent, new BuiltInExecutorFactory() {
 			@Override
 			public ConstraintExecutor create(Constraint constraint) {
 				return new PropertyConstraintExecutor();
 			}
 		});
-		addSpecialExecutor(SH.JSConstraintComponent, new AbstractSpecialConstraintExecutorFactory() {
+		addSpecialExecutor(SH.JSConstraintComponent, new BuiltInExecutorFactory() {
 			@Override
 			public ConstraintExecutor create(Constraint constraint) {
 				return new JSConstraintExecutor();
 			}
 		});
-		addSpecialExecutor(SH.SPARQLConstraintComponent, new AbstractSpecialConstraintExecutorFactory() {
+		addSpecialExecutor(SH.SPARQLConstraintComponent, new BuiltInExecutorFactory() {
 			@Override
 			public ConstraintExecutor create(Constraint constraint) {
 				return new SPARQLConstraintExecutor(constraint);
 			}
 		});
-		addSpecialExecutor(SH.ExpressionConstraintComponent, new AbstractSpecialConstraintExecutorFactory() {
+		addSpecialExecutor(SH.ExpressionConstraintComponent, new BuiltInExecutorFactory() {
 			@Override
 			public ConstraintExecutor create(Constraint constraint) {
 				return new ExpressionConstraintExecutor();
 			}
 		});
 		
+		addNativeExecutor(SH.ClassConstraintComponent, ClassConstraintExecutor::new);
+		addNativeExecutor(SH.DatatypeConstraintComponent, DatatypeConstraintExecutor::new);
+		addNativeExecutor(SH.HasValueConstraintComponent, HasValueConstraintExecutor::new);
+		addNativeExecutor(SH.InConstraintComponent, InConstraintExecutor::new);
+		addNativeExecutor(SH.LanguageInConstraintComponent, LanguageInConstraintExecutor::new);
+		addNativeExecutor(SH.MaxCountConstraintComponent, CountConstraintExecutor::new);
+		addNativeExecutor(SH.MaxExclusiveConstraintComponent, ValueRangeConstraintExecutor::new);
+		addNativeExecutor(SH.MaxInclusiveConstraintComponent, ValueRangeConstraintExecutor::new);
+		addNativeExecutor(SH.MaxLengthConstraintComponent, StringLengthConstraintExecutor::new);
+		addNativeExecutor(SH.MinCountConstraintComponent, CountConstraintExecutor::new);
+		addNativeExecutor(SH.MinExclusiveConstraintComponent, ValueRangeConstraintExecutor::new);
+		addNativeExecutor(SH.MinInclusiveConstraintComponent, ValueRangeConstraintExecutor::new);
+		addNativeExecutor(SH.MinLengthConstraintComponent, StringLengthConstraintExecutor::new);
+		addNativeExecutor(SH.NodeKindConstraintComponent, NodeKindConstraintExecutor::new);
+		addNativeExecutor(SH.PatternConstraintComponent, PatternConstraintExecutor::new);
+		
 		addLanguage(SPARQLValidationLanguage.get());
 		addLanguage(JSValidationLanguage.get());
 	}
@@ -74,11 +107,79 @@ public class ConstraintExecutors {
 	}
 	
 	
+	/**
+	 * Registers a native (Java) executor for a SHACL Core constraint component.
+	 * Native executors are only used where the SPARQL-based executor would otherwise
+	 * be chosen, and only if no sh:details need to be produced, so that the results
+	 * remain identical.
+	 * @param constraintComponent  the constraint component
+	 * @param factory  the function creating an executor for a given Constraint
+	 */
+	private void addNativeExecutor(Resource constraintComponent, Function<Constraint,ConstraintExecutor> factory) {
+		addSpecialExecutor(constraintComponent, new BuiltInExecutorFactory() {
+			
+			@Override
+			public boolean canExecute(Constraint constraint, ValidationEngine engine) {
+				return nativePreferred && !jsPreferred && !AbstractSPARQLExecutor.createDetails && 
+						SPARQLValidationLanguage.get().canExecute(constraint, engine);
+			}
+
+			@Override
+			public ConstraintExecutor create(Constraint constraint) {
+				return factory.apply(constraint);
+			}
+		});
+	}
+	
+	
 	public void addSpecialExecutor(Resource constraintComponent, SpecialConstraintExecutorFactory executor) {
 		specialExecutors.put(constraintComponent, executor);
 	}
 	
 	
+	/**
+	 * Creates a ConstraintExecutor for a given Constraint without a ValidationEngine,
+	 * as done by {@link ShapesGraph#compile()}.
+	 * This selects the same executor as {@link #getExecutor(Constraint, ValidationEngine)},
+	 * unless the selection may depend on the engine, i.e. unless a special executor factory
+	 * or ValidationLanguage that would be asked is not engine-independent.
+	 * @param constraint  the Constraint to get an executor for
+	 * @return the executor or null if it needs to be created for a specific engine
+	 *         or if no suitable executor exists
+	 */
+	public ConstraintExecutor getEngineIndependentExecutor(Constraint constraint) {
+		
+		SpecialConstraintExecutorFactory special = specialExecutors.get(constraint.getComponent());
+		if(special != null) {
+			if(!special.isEngineIndependent()) {
+				return null;
+			}
+			else if(special.canExecute(constraint, null)) {
+				return special.create(constraint);
+			}
+		}
+		
+		for(ValidationLanguage language : languages) {
+			if(!language.isEngineIndependent()) {
+				return null;
+			}
+			else if(language.canExecute(constraint, null)) {
+				return language.createExecutor(constraint, null);
+			}
+		}
+		
+		return null;
+	}
+	
+	
+	/**
+	 * Creates a ConstraintExecutor for a given Constraint.
+	 * Use {@link ShapesGraph#getExecutor(Constraint, ValidationEngine)} to reuse the executors
+	 * of a shapes graph across ValidationEngines.
+	 * @param constraint  the Constraint to get an executor for
+	 * @param engine  the ValidationEngine (may be null)
+	 * @return the executor or null if no suitable executor exists
+	 */
 	public ConstraintExecutor getExecutor(Constraint constraint, ValidationEngine engine) {
 
 		SpecialConstraintExecutorFactory special = specialExecutors.get(constraint.getComponent());
@@ -96,6 +197,27 @@ public class ConstraintExecutors {
 	}
 	
 	
+	public boolean isJSPreferred() {
+		return jsPreferred;
+	}
+	
+	
+	public boolean isNativePreferred() {
+		return nativePreferred;
+	}
+	
+	
+	/**
+	 * Can be used to switch off the native (Java) executors of the SHACL Core constraint
+	 * components, so that the SPARQL-based validators are used instead.
+	 * This does not affect the executors of a ShapesGraph that has already been compiled.
+	 * @param value  false to use the SPARQL-based validators (default: true)
+	 */
+	public void setNativePreferred(boolean value) {
+		nativePreferred = value;
+	}
+	
+	
 	/**
 	 * Can be used to make the JavaScript engine the preferred implementation over SPARQL.
 	 * By default, SPARQL is preferred.
@@ -104,6 +226,7 @@ public class ConstraintExecutors {
 	 * @param value  true to make JS
 	 */
 	public void setJSPreferred(boolean value) {
+		jsPreferred = value;
 		languages.remove(0);
 		languages.remove(0);
 		if(value) {
@@ -115,4 +238,14 @@ public class ConstraintExecutors {
 			languages.add(1, JSValidationLanguage.get());
 		}
 	}
+	
+	
+	// The factories of the built-in executors, which do not use the ValidationEngine
+	private static abstract class BuiltInExecutorFactory extends AbstractSpecialConstraintExecutorFactory {
+
+		@Override
+		public boolean isEngineIndependent() {
+			return true;
+		}
+	}
 }
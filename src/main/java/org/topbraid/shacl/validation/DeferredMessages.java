@@ -0,0 +1,79 @@
+package org.topbraid.shacl.validation;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.RDFNode;
+import org.topbraid.shacl.validation.sparql.SPARQLSubstitutions;
+
+/**
+ * The sh:resultMessages of a ValidationResult that are only produced from their templates
+ * when the list is first accessed, for results that are typically counted but not displayed.
+ * See {@link ValidationEngine#setDeferMessages(boolean)}.
+ *
+ * The labels of the variable values are computed when the messages are produced,
+ * so the graphs should not be changed in between.
+ */
+public class DeferredMessages extends AbstractList<RDFNode> {
+
+	private Supplier<QuerySolution> bindings;
+
+	private Function<RDFNode,String> labelFunction;
+
+	private List<RDFNode> messages;
+
+	private List<Literal> templates;
+
+
+	/**
+	 * Constructs a new DeferredMessages.
+	 * @param templates  the message templates
+	 * @param bindings  produces the variable bindings for the templates
+	 * @param labelFunction  the label function of the ValidationEngine
+	 */
+	public DeferredMessages(List<Literal> templates, Supplier<QuerySolution> bindings, Function<RDFNode,String> labelFunction) {
+		this.bindings = bindings;
+		this.labelFunction = labelFunction;
+		this.templates = templates;
+	}
+
+
+	@Override
+	public RDFNode get(int index) {
+		return getMessages().get(index);
+	}
+
+
+	private synchronized List<RDFNode> getMessages() {
+		if(messages == null) {
+			QuerySolution solution = bindings.get();
+			messages = new ArrayList<>(templates.size());
+			for(Literal template : templates) {
+				messages.add(SPARQLSubstitutions.withSubstitutions(template, solution, labelFunction));
+			}
+			bindings = null;
+			templates = null;
+		}
+		return messages;
+	}
+
+
+	/**
+	 * Checks whether the messages have already been produced.
+	 * @return true if the messages have been produced
+	 */
+	public synchronized boolean isRendered() {
+		return messages != null;
+	}
+
+
+	@Override
+	public synchronized int size() {
+		return messages != null ? messages.size() : templates.size();
+	}
+}
@@ -1,9 +1,11 @@
 package org.topbraid.shacl.validation;
 
+import java.util.LinkedList;
 import java.util.List;
 
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
 import org.apache.jena.rdf.model.Statement;
 import org.topbraid.shacl.engine.Constraint;
 import org.topbraid.shacl.expr.NodeExpression;
@@ -18,25 +20,27 @@ public class ExpressionConstraintExecutor implements ConstraintExecutor {
 		// TODO: optimize, currently produces a new NodeExpression each time
 		NodeExpression expr = NodeExpressionFactory.get().create(constraint.getParameterValue());
 		for(RDFNode focusNode : focusNodes) {
+			if(engine.isStopped(constraint)) {
+				break;
+			}
 			for(RDFNode valueNode : engine.getValueNodes(constraint, focusNode)) {
 				List<RDFNode> results = expr.eval(valueNode, engine);
 				if(results.size() != 1 || !JenaDatatypes.TRUE.equals(results.get(0))) {
-					Resource result = engine.createResult(SH.ValidationResult, constraint, focusNode);
-					result.addProperty(SH.value, valueNode);
-					result.addProperty(SH.sourceConstraint, constraint.getParameterValue());
+					List<RDFNode> messages = new LinkedList<>();
 					if(constraint.getParameterValue() instanceof Resource && ((Resource)constraint.getParameterValue()).hasProperty(SH.message)) {
 						for(Statement s : ((Resource)constraint.getParameterValue()).listProperties(SH.message).toList()) {
-							result.addProperty(SH.resultMessage, s.getObject());
+							messages.add(s.getObject());
 						}
 					}
 					else if(constraint.getShapeResource().hasProperty(SH.message)) {
 						for(Statement s : constraint.getShapeResource().listProperties(SH.message).toList()) {
-							result.addProperty(SH.resultMessage, s.getObject());
+							messages.add(s.getObject());
 						}
 					}
 					else {
-						result.addProperty(SH.resultMessage, "Expression does not evaluate to true");
+						messages.add(ResourceFactory.createTypedLiteral("Expression does not evaluate to true"));
 					}
+					engine.addResult(new ValidationResult(SH.ValidationResult, constraint, focusNode, null, valueNode, messages, constraint.getParameterValue(), null));
 				}
 			}
 		}
@@ -0,0 +1,562 @@
+package org.topbraid.shacl.validation;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.sparql.path.P_Inverse;
+import org.apache.jena.sparql.path.P_Link;
+import org.apache.jena.sparql.path.P_Path1;
+import org.apache.jena.sparql.path.P_Path2;
+import org.apache.jena.sparql.path.P_ReverseLink;
+import org.apache.jena.sparql.path.P_Seq;
+import org.apache.jena.sparql.path.P_ZeroOrOne;
+import org.apache.jena.sparql.path.Path;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.RDFS;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.engine.Shape;
+import org.topbraid.shacl.engine.ShapesGraph;
+import org.topbraid.shacl.util.ClassHierarchy;
+import org.topbraid.shacl.util.SHACLUtil;
+import org.topbraid.shacl.vocabulary.SH;
+import org.topbraid.spin.util.AbstractGraphListener;
+import org.topbraid.spin.util.JenaUtil;
+
+/**
+ * Keeps a validation report up to date while the data graph changes, by only
+ * re-validating the focus nodes that may be affected by the added or removed triples.
+ *
+ * After an initial {@link #validateAll()}, each call to {@link #update(Collection, Collection)}
+ * starts at the nodes that read the changed triples (the subjects, and the objects if the predicate
+ * is used by an inverse path step) and walks backwards along the paths used by the shapes, up to the
+ * longest chain of paths from a root shape.  The root shapes are re-run for those nodes that are
+ * still in the shape's target, and the old results of those focus nodes are replaced in the report.
+ * Shapes that use constraints or targets outside of SHACL Core (e.g. SPARQL or JavaScript)
+ * may look at arbitrary triples and are therefore re-run for all of their focus nodes.
+ * Changes to rdfs:subClassOf triples lead to a complete re-validation.
+ *
+ * The shapes are assumed to be unchanged: if the data graph also holds the shapes then
+ * changes to triples using the SHACL namespace are rejected, and a new IncrementalValidator
+ * needs to be created.  Entailments are not re-computed.
+ */
+public class IncrementalValidator {
+
+	private Set<Triple> addedTriples = new LinkedHashSet<>();
+
+	private boolean anyPredicate;
+
+	private Dataset dataset;
+
+	private boolean fullValidationNeeded;
+
+	private Map<Shape,Map<Node,List<Resource>>> index = new HashMap<>();
+
+	private DeltaListener listener;
+
+	// The predicates that are walked backwards (from object to subject) from the touched nodes
+	private Set<Node> inversePredicates = new HashSet<>();
+
+	// The maximum number of path steps from a focus node to any node that its validation looks at
+	private int maxDepth;
+
+	private Set<Shape> nonLocalShapes = new HashSet<>();
+
+	// The predicates that are walked forwards (from subject to object) by the paths of the shapes
+	private Set<Node> predicates = new HashSet<>();
+
+	private Set<Triple> removedTriples = new LinkedHashSet<>();
+
+	private RDFReportSink reportSink;
+
+	private Resource report;
+
+	private Set<Shape> singleFocusNodeShapes = new HashSet<>();
+
+	private Set<Node> targetObjectsOfPredicates = new HashSet<>();
+
+	private ShapesGraph shapesGraph;
+
+	private URI shapesGraphURI;
+
+
+	/**
+	 * Constructs a new IncrementalValidator.
+	 * @param dataset  the Dataset to operate on
+	 * @param shapesGraphURI  the URI of the shapes graph (must be in the dataset)
+	 * @param shapesGraph  the ShapesGraph with the shapes to validate against
+	 */
+	public IncrementalValidator(Dataset dataset, URI shapesGraphURI, ShapesGraph shapesGraph) {
+		this.dataset = dataset;
+		this.shapesGraph = shapesGraph;
+		this.shapesGraphURI = shapesGraphURI;
+		Model reportModel = JenaUtil.createDefaultModel();
+		reportModel.setNsPrefixes(dataset.getDefaultModel());
+		this.report = reportModel.createResource(SH.ValidationReport);
+		this.reportSink = new RDFReportSink(report);
+		for(Shape rootShape : shapesGraph.getRootShapes()) {
+			analyzeRootShape(rootShape);
+		}
+	}
+
+
+	private void analyzeRootShape(Shape rootShape) {
+		if(rootShape.getShapeResource().hasProperty(SH.target)) {
+			nonLocalShapes.add(rootShape);
+		}
+		for(Shape shape : shapesGraph.getReachableShapes(Collections.singletonList(rootShape))) {
+			for(Constraint constraint : shape.getConstraints()) {
+				if(!isLocal(constraint.getComponent())) {
+					nonLocalShapes.add(rootShape);
+				}
+			}
+		}
+		Resource shape = rootShape.getShapeResource();
+		for(Resource property : JenaUtil.getResourceProperties(shape, SH.targetObjectsOf)) {
+			targetObjectsOfPredicates.add(property.asNode());
+		}
+		if(!nonLocalShapes.contains(rootShape)) {
+			// Non-local shapes are re-run for all focus nodes anyway
+			maxDepth = Math.max(maxDepth, getDepth(rootShape, new HashSet<>()));
+		}
+		if((rootShape.getShapeResource().isPropertyShape() && shape.hasProperty(SH.property)) || hasNestedPropertyShapes(shape, new HashSet<>())) {
+			singleFocusNodeShapes.add(rootShape);
+		}
+	}
+
+
+	// Collects the predicates of the paths of a shape and its nested shapes, and returns the
+	// maximum number of steps of those paths combined, or Integer.MAX_VALUE for recursive shapes
+	private int getDepth(Shape shape, Set<Shape> visiting) {
+		if(!visiting.add(shape)) {
+			return Integer.MAX_VALUE;
+		}
+		int depth = 0;
+		Resource path = shape.getShapeResource().getPath();
+		if(path != null) {
+			if(path.isURIResource()) {
+				predicates.add(path.asNode());
+				depth = 1;
+			}
+			else if(shape.getJenaPath() != null) {
+				depth = addPredicates(shape.getJenaPath(), false);
+			}
+			else {
+				anyPredicate = true;
+				depth = Integer.MAX_VALUE;
+			}
+		}
+		int nestedDepth = 0;
+		for(Shape nested : shapesGraph.getNestedShapes(shape)) {
+			nestedDepth = Math.max(nestedDepth, getDepth(nested, visiting));
+		}
+		visiting.remove(shape);
+		return add(depth, nestedDepth);
+	}
+
+
+	// Collects the predicates of a path and returns its maximum length, or Integer.MAX_VALUE if unbounded
+	private int addPredicates(Path path, boolean inverse) {
+		if(path instanceof P_Link) {
+			(inverse ? inversePredicates : predicates).add(((P_Link)path).getNode());
+			return 1;
+		}
+		else if(path instanceof P_ReverseLink) {
+			(inverse ? predicates : inversePredicates).add(((P_ReverseLink)path).getNode());
+			return 1;
+		}
+		else if(path instanceof P_Inverse) {
+			return addPredicates(((P_Inverse)path).getSubPath(), !inverse);
+		}
+		else if(path instanceof P_ZeroOrOne) {
+			return addPredicates(((P_ZeroOrOne)path).getSubPath(), inverse);
+		}
+		else if(path instanceof P_Path1) {
+			// sh:zeroOrMorePath and sh:oneOrMorePath
+			addPredicates(((P_Path1)path).getSubPath(), inverse);
+			return Integer.MAX_VALUE;
+		}
+		else if(path instanceof P_Seq) {
+			return add(addPredicates(((P_Seq)path).getLeft(), inverse), addPredicates(((P_Seq)path).getRight(), inverse));
+		}
+		else if(path instanceof P_Path2) {
+			return Math.max(addPredicates(((P_Path2)path).getLeft(), inverse), addPredicates(((P_Path2)path).getRight(), inverse));
+		}
+		else {
+			// Includes P_NegPropSet
+			anyPredicate = true;
+			return 1;
+		}
+	}
+
+
+	private static int add(int a, int b) {
+		return a == Integer.MAX_VALUE || b == Integer.MAX_VALUE ? Integer.MAX_VALUE : a + b;
+	}
+
+
+	// Checks whether a constraint only looks at triples that can be reached from the focus nodes
+	// via the paths of the shapes
+	private static boolean isLocal(Resource component) {
+		return component.isURIResource() &&
+				component.getURI().startsWith(SH.NS) &&
+				!SH.SPARQLConstraintComponent.equals(component) &&
+				!SH.JSConstraintComponent.equals(component) &&
+				!SH.ExpressionConstraintComponent.equals(component);
+	}
+
+
+	// Property shapes that have their own property shapes produce results for other focus nodes
+	// than the ones of the root shape, so those need to be validated one by one to be indexed
+	private static boolean hasNestedPropertyShapes(Resource shape, Set<Resource> visited) {
+		if(visited.add(shape)) {
+			for(Resource property : JenaUtil.getResourceProperties(shape, SH.property)) {
+				if(property.hasProperty(SH.property) || hasNestedPropertyShapes(property, visited)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+
+	public Resource getReport() {
+		return report;
+	}
+
+
+	/**
+	 * Starts recording the changes to the default graph of the dataset, so that they
+	 * can be processed with {@link #update()}.
+	 */
+	public void startListening() {
+		if(listener == null) {
+			listener = new DeltaListener();
+			getDataGraph().getEventManager().register(listener);
+		}
+	}
+
+
+	public void stopListening() {
+		if(listener != null) {
+			getDataGraph().getEventManager().unregister(listener);
+			listener = null;
+		}
+	}
+
+
+	private Graph getDataGraph() {
+		return dataset.getDefaultModel().getGraph();
+	}
+
+
+	/**
+	 * Validates all target nodes against all of their shapes, replacing any previous results.
+	 * @return the sh:ValidationReport
+	 */
+	public Resource validateAll() {
+		for(Map<Node,List<Resource>> map : index.values()) {
+			for(List<Resource> results : map.values()) {
+				deleteResults(results);
+			}
+		}
+		index.clear();
+		addedTriples.clear();
+		removedTriples.clear();
+		fullValidationNeeded = false;
+		boolean nestedCache = ConformanceCache.begin();
+		try {
+			for(Shape shape : shapesGraph.getRootShapes()) {
+				validateShape(shape, SHACLUtil.getTargetNodes(shape.getShapeResource(), dataset));
+			}
+		}
+		finally {
+			ConformanceCache.end(nestedCache);
+		}
+		updateConforms();
+		return report;
+	}
+
+
+	/**
+	 * Updates the report based on the changes that have been recorded since {@link #startListening()}
+	 * or the previous update.
+	 * @return the sh:ValidationReport
+	 */
+	public Resource update() {
+		List<Triple> added = new ArrayList<>(addedTriples);
+		List<Triple> removed = new ArrayList<>(removedTriples);
+		addedTriples.clear();
+		removedTriples.clear();
+		if(fullValidationNeeded) {
+			return validateAll();
+		}
+		else {
+			return update(added, removed);
+		}
+	}
+
+
+	/**
+	 * Updates the report after some triples have been added to or removed from the data graph.
+	 * The data graph is expected to already include the changes.
+	 * @param added  the added triples
+	 * @param removed  the removed triples
+	 * @return the sh:ValidationReport
+	 */
+	public Resource update(Collection<Triple> added, Collection<Triple> removed) {
+		Set<Node> touched = new HashSet<>();
+		for(Collection<Triple> triples : Arrays.asList(added, removed)) {
+			for(Triple triple : triples) {
+				if(isSHACLTriple(triple) && dataset.getNamedModel(shapesGraphURI.toString()).getGraph().dependsOn(getDataGraph())) {
+					throw new IllegalStateException("Changes to the shapes are not supported: " + triple);
+				}
+				if(RDFS.subClassOf.asNode().equals(triple.getPredicate())) {
+					return validateAll();
+				}
+				// The subject's own triples are read by its shapes, e.g. by sh:class or sh:closed
+				touched.add(triple.getSubject());
+				Node predicate = triple.getPredicate();
+				if(anyPredicate || inversePredicates.contains(predicate) || targetObjectsOfPredicates.contains(predicate)) {
+					touched.add(triple.getObject());
+				}
+			}
+		}
+		if(touched.isEmpty()) {
+			return report;
+		}
+
+		Set<Node> candidates = getAffectedNodes(touched);
+		Model dataModel = dataset.getDefaultModel();
+		boolean nestedCache = ConformanceCache.begin();
+		try {
+			for(Shape shape : shapesGraph.getRootShapes()) {
+				Map<Node,List<Resource>> map = index.get(shape);
+				// Results that could not be attributed to a focus node may belong to any of them
+				if(nonLocalShapes.contains(shape) || (map != null && map.containsKey(null))) {
+					if(map != null) {
+						for(List<Resource> results : map.values()) {
+							deleteResults(results);
+						}
+						index.remove(shape);
+					}
+					validateShape(shape, SHACLUtil.getTargetNodes(shape.getShapeResource(), dataset));
+				}
+				else {
+					List<RDFNode> focusNodes = new LinkedList<>();
+					for(Node candidate : candidates) {
+						if(map != null) {
+							List<Resource> results = map.remove(candidate);
+							if(results != null) {
+								deleteResults(results);
+							}
+						}
+						RDFNode focusNode = dataModel.asRDFNode(candidate);
+						if(isInTarget(shape.getShapeResource(), focusNode)) {
+							focusNodes.add(focusNode);
+						}
+					}
+					validateShape(shape, focusNodes);
+				}
+			}
+		}
+		finally {
+			ConformanceCache.end(nestedCache);
+		}
+		updateConforms();
+		return report;
+	}
+
+
+	private static boolean isSHACLTriple(Triple triple) {
+		return SH.NS.equals(triple.getPredicate().getNameSpace()) ||
+				(triple.getObject().isURI() && SH.NS.equals(triple.getObject().getNameSpace()));
+	}
+
+
+	// Collects the touched nodes plus all nodes that can reach them via at most maxDepth path steps
+	private Set<Node> getAffectedNodes(Set<Node> touched) {
+		Graph graph = getDataGraph();
+		Set<Node> results = new HashSet<>(touched);
+		List<Node> frontier = new ArrayList<>(touched);
+		for(int depth = 0; depth < maxDepth && !frontier.isEmpty(); depth++) {
+			List<Node> next = new ArrayList<>();
+			for(Node node : frontier) {
+				if(anyPredicate) {
+					addAll(graph.find(Node.ANY, Node.ANY, node).mapWith(t -> t.getSubject()), results, next);
+					if(!node.isLiteral()) {
+						addAll(graph.find(node, Node.ANY, Node.ANY).mapWith(t -> t.getObject()), results, next);
+					}
+				}
+				else {
+					for(Node predicate : predicates) {
+						addAll(graph.find(Node.ANY, predicate, node).mapWith(t -> t.getSubject()), results, next);
+					}
+					if(!node.isLiteral()) {
+						for(Node predicate : inversePredicates) {
+							addAll(graph.find(node, predicate, Node.ANY).mapWith(t -> t.getObject()), results, next);
+						}
+					}
+				}
+			}
+			frontier = next;
+		}
+		return results;
+	}
+
+
+	private static void addAll(ExtendedIterator<Node> it, Set<Node> results, List<Node> queue) {
+		try {
+			while(it.hasNext()) {
+				Node node = it.next();
+				if(results.add(node)) {
+					queue.add(node);
+				}
+			}
+		}
+		finally {
+			it.close();
+		}
+	}
+
+
+	private boolean isInTarget(Resource shape, RDFNode focusNode) {
+		Model dataModel = dataset.getDefaultModel();
+		if(shape.getModel().contains(shape, SH.targetNode, focusNode)) {
+			return true;
+		}
+		for(Resource property : JenaUtil.getResourceProperties(shape, SH.targetObjectsOf)) {
+			if(dataModel.contains(null, JenaUtil.asProperty(property), focusNode)) {
+				return true;
+			}
+		}
+		if(focusNode.isResource()) {
+			Resource resource = (Resource) focusNode;
+			ClassHierarchy classHierarchy = ClassHierarchy.get(getDataGraph());
+			if(JenaUtil.hasIndirectType(shape, RDFS.Class) && classHierarchy.isInstanceOf(focusNode.asNode(), shape.asNode())) {
+				return true;
+			}
+			for(Resource targetClass : JenaUtil.getResourceProperties(shape, SH.targetClass)) {
+				if(classHierarchy.isInstanceOf(focusNode.asNode(), targetClass.asNode())) {
+					return true;
+				}
+			}
+			for(Resource property : JenaUtil.getResourceProperties(shape, SH.targetSubjectsOf)) {
+				if(resource.hasProperty(JenaUtil.asProperty(property))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+
+	private void validateShape(Shape shape, List<RDFNode> focusNodes) {
+		if(focusNodes.isEmpty()) {
+			return;
+		}
+		if(singleFocusNodeShapes.contains(shape)) {
+			for(RDFNode focusNode : focusNodes) {
+				validateNodes(shape, Collections.singletonList(focusNode), focusNode.asNode());
+			}
+		}
+		else {
+			validateNodes(shape, focusNodes, null);
+		}
+	}
+
+
+	// If focusNode is not null then all results are attributed to it
+	private void validateNodes(Shape shape, List<RDFNode> focusNodes, Node focusNode) {
+		List<ValidationResult> results = new ArrayList<>();
+		ValidationEngine engine = ValidationEngineFactory.get().create(dataset, shapesGraphURI, shapesGraph, null);
+		engine.setResultSink(result -> results.add(result));
+		engine.validateNodesAgainstShape(focusNodes, shape.getShapeResource().asNode());
+		if(!results.isEmpty()) {
+			Map<Node,List<Resource>> map = index.computeIfAbsent(shape, s -> new HashMap<>());
+			Set<Node> focusNodeSet = new HashSet<>();
+			for(RDFNode node : focusNodes) {
+				focusNodeSet.add(node.asNode());
+			}
+			for(ValidationResult result : results) {
+				Node key = focusNode;
+				if(key == null) {
+					if(result.getFocusNode() != null && focusNodeSet.contains(result.getFocusNode().asNode())) {
+						key = result.getFocusNode().asNode();
+					}
+					else {
+						// From now on, validate the shape one focus node at a time to attribute its results
+						singleFocusNodeShapes.add(shape);
+					}
+				}
+				map.computeIfAbsent(key, k -> new LinkedList<>()).add(reportSink.createResult(result));
+			}
+		}
+	}
+
+
+	private void deleteResults(List<Resource> results) {
+		for(Resource result : results) {
+			report.getModel().remove(report, SH.result, result);
+			deleteResource(result);
+		}
+	}
+
+
+	// Deletes the properties of a resource, including any blank nodes that are only used by it
+	private static void deleteResource(Resource resource) {
+		Model model = resource.getModel();
+		List<Statement> statements = resource.listProperties().toList();
+		model.remove(statements);
+		for(Statement s : statements) {
+			RDFNode object = s.getObject();
+			if(object.isAnon() && !model.contains(null, null, object)) {
+				deleteResource(object.asResource());
+			}
+		}
+	}
+
+
+	private void updateConforms() {
+		report.removeAll(SH.conforms);
+		report.addLiteral(SH.conforms, !ValidationEngine.hasValidationResults(report));
+	}
+
+
+	private class DeltaListener extends AbstractGraphListener {
+
+		@Override
+		public void notifyAddTriple(Graph g, Triple t) {
+			addedTriples.add(t);
+		}
+
+
+		@Override
+		public void notifyDeleteTriple(Graph g, Triple t) {
+			removedTriples.add(t);
+		}
+
+
+		@Override
+		protected void notifyRemoveAll(Graph source, Triple pattern) {
+			fullValidationNeeded = true;
+		}
+	}
+}
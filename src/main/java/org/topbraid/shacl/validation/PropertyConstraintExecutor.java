@@ -22,6 +22,9 @@ class PropertyConstraintExecutor implements ConstraintExecutor {
 		if(constraint.getShapeResource().isPropertyShape()) {
 			List<RDFNode> valueNodes = new LinkedList<RDFNode>();
 			for(RDFNode focusNode : focusNodes) {
+				if(engine.isStopped(constraint)) {
+					return;
+				}
 				valueNodes.addAll(engine.getValueNodes(constraint, focusNode));
 			}
 			engine.validateNodesAgainstShape(valueNodes, propertyShape.asNode());
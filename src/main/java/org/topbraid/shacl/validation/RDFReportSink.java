@@ -0,0 +1,72 @@
+package org.topbraid.shacl.validation;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.topbraid.shacl.arq.SHACLPaths;
+import org.topbraid.shacl.validation.sparql.AbstractSPARQLExecutor;
+import org.topbraid.shacl.vocabulary.SH;
+
+/**
+ * A ValidationResultSink that adds the results as RDF resources to a sh:ValidationReport.
+ * This is the default sink of each ValidationEngine.
+ */
+public class RDFReportSink implements ValidationResultSink {
+	
+	private Resource report;
+	
+	
+	public RDFReportSink(Resource report) {
+		this.report = report;
+	}
+
+
+	@Override
+	public void addResult(ValidationResult result) {
+		createResult(result);
+	}
+	
+	
+	/**
+	 * Adds a new result to the report.
+	 * @param result  the ValidationResult to add
+	 * @return the new result Resource in the report Model
+	 */
+	public Resource createResult(ValidationResult result) {
+		Model model = report.getModel();
+		Resource r = model.createResource(result.getResultType());
+		report.addProperty(SH.result, r);
+		r.addProperty(SH.resultSeverity, result.getSeverity());
+		r.addProperty(SH.sourceConstraintComponent, result.getSourceConstraintComponent());
+		r.addProperty(SH.sourceShape, result.getSourceShape());
+		if(result.getFocusNode() != null) {
+			r.addProperty(SH.focusNode, result.getFocusNode());
+		}
+		if(result.getSourceConstraint() != null) {
+			r.addProperty(SH.sourceConstraint, result.getSourceConstraint());
+		}
+		for(RDFNode message : result.getMessages()) {
+			r.addProperty(SH.resultMessage, message);
+		}
+		if(result.getPath() != null) {
+			if(result.getPath().isResource()) {
+				r.addProperty(SH.resultPath, SHACLPaths.clonePath((Resource)result.getPath(), model));
+			}
+			else {
+				r.addProperty(SH.resultPath, result.getPath());
+			}
+		}
+		if(result.getValue() != null) {
+			r.addProperty(SH.value, result.getValue());
+		}
+		if(result.getDetails() != null) {
+			AbstractSPARQLExecutor.addDetails(r, result.getDetails());
+		}
+		return r;
+	}
+	
+	
+	public Resource getReport() {
+		return report;
+	}
+}
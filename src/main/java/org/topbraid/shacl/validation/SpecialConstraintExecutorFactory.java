@@ -7,4 +7,14 @@ public interface SpecialConstraintExecutorFactory {
 	boolean canExecute(Constraint constraint, ValidationEngine engine);
 
 	ConstraintExecutor create(Constraint constraint);
+	
+	
+	/**
+	 * Checks whether canExecute ignores the ValidationEngine, so that ShapesGraph.compile()
+	 * can create the executors of this factory in advance.
+	 * @return true if the engine is not needed
+	 */
+	default boolean isEngineIndependent() {
+		return false;
+	}
 }
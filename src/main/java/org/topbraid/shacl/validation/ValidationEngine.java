@@ -1,37 +1,57 @@
 package org.topbraid.shacl.validation;
 
 import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import org.apache.jena.graph.Node;
 import org.apache.jena.query.Dataset;
+import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
 import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.rdf.model.StmtIterator;
 import org.apache.jena.sparql.path.Path;
+import org.apache.jena.util.iterator.ExtendedIterator;
 import org.apache.jena.vocabulary.RDF;
 import org.topbraid.shacl.arq.SHACLPaths;
+import org.topbraid.shacl.arq.functions.HasShapeFunction;
 import org.topbraid.shacl.engine.Constraint;
 import org.topbraid.shacl.engine.Shape;
 import org.topbraid.shacl.engine.ShapesGraph;
+import org.topbraid.shacl.engine.filters.MinSeverityShapeFilter;
 import org.topbraid.shacl.entailment.SHACLEntailment;
 import org.topbraid.shacl.expr.NodeExpressionContext;
 import org.topbraid.shacl.js.SHACLScriptEngineManager;
 import org.topbraid.shacl.util.FailureLog;
 import org.topbraid.shacl.util.SHACLUtil;
 import org.topbraid.shacl.validation.sparql.SPARQLSubstitutions;
+import org.topbraid.shacl.vocabulary.DASH;
 import org.topbraid.shacl.vocabulary.SH;
 import org.topbraid.spin.progress.ProgressMonitor;
 import org.topbraid.spin.util.JenaDatatypes;
@@ -47,22 +67,91 @@ import org.topbraid.spin.util.JenaUtil;
  */
 public class ValidationEngine implements NodeExpressionContext {
 	
+	private int chunkSize = 1000;
+	
+	private boolean conforms = true;
+	
 	private Dataset dataset;
 	
-	private Map<Constraint,ConstraintExecutor> executors = new HashMap<>();
+	private boolean deferMessages;
+	
+	private ExecutorService executorService;
+	
+	private boolean failFast;
 	
 	private Predicate<RDFNode> focusNodeFilter;
 	
+	// The number of results per focus node, only maintained if maxResultsPerFocusNode is set
+	private Map<RDFNode,Integer> focusNodeResultCounts = new ConcurrentHashMap<>();
+	
 	private Function<RDFNode,String> labelFunction;
 	
+	private int maxResults;
+	
+	private int maxResultsPerFocusNode;
+	
+	private Resource minSeverity;
+	
+	private int maxResultsPerShape;
+	
 	private ProgressMonitor monitor;
 	
+	// The constraints of each shape that need to be validated if minSeverity is set, see getPlan
+	private Map<Shape,List<Constraint>> plans = new ConcurrentHashMap<>();
+	
 	private Resource report;
 	
+	private int resultCount;
+	
+	// True for the engines of the tasks of the parallel mode, whose results still need to be
+	// delivered in order before they count towards failFast and maxResults
+	private boolean worker;
+	
+	private ValidationResultSink resultSink;
+	
+	private Map<Resource,Integer> shapeResultCounts = new HashMap<>();
+	
 	private ShapesGraph shapesGraph;
 	
 	private URI shapesGraphURI;
 	
+	private RunState runState = new RunState();
+	
+	private boolean stopped;
+	
+	// The maximum time per constraint execution in milliseconds, or 0
+	private long constraintTimeout;
+	
+	// The nanoTime at which the running constraint execution runs out of time, or 0
+	private long constraintDeadline;
+	
+	// True if the running constraint execution has been stopped because of constraintDeadline
+	private boolean constraintTimedOut;
+	
+	// The maximum time per validation in milliseconds, or 0
+	private long timeout;
+	
+	// The maximum number of (focus node, path) combinations in the valueNodesCache
+	private static final int valueNodesCacheCapacity = 10000;
+	
+	// Value node lists larger than this (e.g. for hub nodes) are not cached
+	private static final int maxCachedValueNodes = 1000;
+	
+	@SuppressWarnings("serial")
+	private static class ValueNodesLRU extends LinkedHashMap<ValueNodesKey,List<RDFNode>> {
+		
+		ValueNodesLRU() {
+			super(valueNodesCacheCapacity + 1, 1.1f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Entry<ValueNodesKey,List<RDFNode>> eldest) {
+			return size() > valueNodesCacheCapacity;
+		}
+	};
+	
+	private Map<ValueNodesKey,List<RDFNode>> valueNodesCache = Collections.synchronizedMap(new ValueNodesLRU());
+	
 
 	
 	/**
@@ -73,6 +162,22 @@ public class ValidationEngine implements NodeExpressionContext {
 	 * @param report  the sh:ValidationReport object in the results Model, or null to create a new one
 	 */
 	protected ValidationEngine(Dataset dataset, URI shapesGraphURI, ShapesGraph shapesGraph, Resource report) {
+		this(dataset, shapesGraphURI, shapesGraph, report, null);
+	}
+	
+	
+	/**
+	 * Constructs a new ValidationEngine that delivers its results to a given sink.
+	 * If no report is given then none is created either, so that {@link #getReport()}
+	 * and the validate methods return null.  This is meant for engines that only
+	 * need to find out whether there are results, e.g. to check conformance.
+	 * @param dataset  the Dataset to operate on
+	 * @param shapesGraphURI  the URI of the shapes graph (must be in the dataset)
+	 * @param shapesGraph  the ShapesGraph with the shapes to validate against
+	 * @param report  the sh:ValidationReport object in the results Model, or null
+	 * @param resultSink  the ValidationResultSink, or null to write into the report
+	 */
+	protected ValidationEngine(Dataset dataset, URI shapesGraphURI, ShapesGraph shapesGraph, Resource report, ValidationResultSink resultSink) {
 		this.dataset = dataset;
 		this.shapesGraph = shapesGraph;
 		
@@ -81,6 +186,14 @@ public class ValidationEngine implements NodeExpressionContext {
 		}
 
 		this.shapesGraphURI = shapesGraphURI;
+		if(resultSink != null) {
+			this.report = report;
+			this.resultSink = resultSink;
+			if(report != null) {
+				this.conforms = !hasValidationResults(report);
+			}
+			return;
+		}
 		if(report == null) {
 			Model reportModel = JenaUtil.createDefaultModel();
 			reportModel.setNsPrefixes(dataset.getDefaultModel());
@@ -88,7 +201,9 @@ public class ValidationEngine implements NodeExpressionContext {
 		}
 		else {
 			this.report = report;
+			this.conforms = !hasValidationResults(report);
 		}
+		this.resultSink = new RDFReportSink(this.report);
 	}
 	
 	
@@ -120,12 +235,7 @@ public class ValidationEngine implements NodeExpressionContext {
 	
 	
 	private ConstraintExecutor getExecutor(Constraint constraint) {
-		ConstraintExecutor executor = executors.get(constraint);
-		if(executor == null) {
-			executor = ConstraintExecutors.get().getExecutor(constraint, this);
-			executors.put(constraint, executor);
-		}
-		return executor;
+		return shapesGraph.getExecutor(constraint, this);
 	}
 
 	
@@ -149,21 +259,402 @@ public class ValidationEngine implements NodeExpressionContext {
 	}
 	
 	
+	/**
+	 * Sets the maximum number of focus nodes that are validated together by {@link #validateAll()}.
+	 * The focus nodes of each shape are enumerated lazily and processed in chunks of this size,
+	 * and in parallel mode (see {@link #setExecutorService(ExecutorService)}) each chunk
+	 * becomes a separate task.
+	 * @param value  the new chunk size (default: 1000)
+	 */
+	public void setChunkSize(int value) {
+		if(value < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive");
+		}
+		this.chunkSize = value;
+	}
+	
+	
+	/**
+	 * Activates the parallel mode of {@link #validateAll()}, in which the root shapes and
+	 * chunks of their focus nodes get validated as separate tasks by the given ExecutorService.
+	 * Each task collects its own results which are then delivered to the result sink in the
+	 * same order as in sequential mode, so that the resulting reports are the same.
+	 * Only a small multiple of the number of threads of the ExecutorService is submitted
+	 * at a time, so that the focus nodes are still enumerated as the results are consumed,
+	 * and no further tasks are submitted once validation has stopped (see {@link #isStopped()}).
+	 * The calling thread waits for the tasks to complete, so the ExecutorService must not
+	 * be one whose worker threads are busy calling validateAll.
+	 * @param value  the ExecutorService or null to validate sequentially (default)
+	 */
+	public void setExecutorService(ExecutorService value) {
+		this.executorService = value;
+	}
+	
+	
+	/**
+	 * Activates the deferred mode for the messages produced from sh:message templates,
+	 * in which the templates are only filled in once the sh:resultMessages of a result
+	 * are accessed, e.g. when the report is built or serialized.
+	 * This saves time if most results are only counted.
+	 * @param value  true to defer the messages
+	 * @see DeferredMessages
+	 */
+	public void setDeferMessages(boolean value) {
+		this.deferMessages = value;
+	}
+	
+	
+	/**
+	 * Sets the time budget of each execution of a constraint, i.e. of the validation of a
+	 * constraint for one chunk of focus nodes (see {@link #setChunkSize(int)}).
+	 * Constraints that run out of time are stopped and produce a dash:FailureResult,
+	 * and the validation continues with the next constraint.
+	 * SPARQL queries get the remaining time as their timeout.
+	 * @param millis  the maximum time in milliseconds or 0 for no limit (default)
+	 */
+	public void setConstraintTimeout(long millis) {
+		if(millis < 0) {
+			throw new IllegalArgumentException("Timeout must not be negative");
+		}
+		this.constraintTimeout = millis;
+	}
+	
+	
+	/**
+	 * Sets the time budget of each call of validateAll, validateNode or validateNodesAgainstShape.
+	 * Once the time is up the validation stops, and the constraint that was running at that
+	 * time produces a dash:FailureResult.
+	 * @param millis  the maximum time in milliseconds or 0 for no limit (default)
+	 */
+	public void setTimeout(long millis) {
+		if(millis < 0) {
+			throw new IllegalArgumentException("Timeout must not be negative");
+		}
+		this.timeout = millis;
+	}
+	
+	
+	/**
+	 * Cancels the running validation, for example from a different thread.
+	 * The executors stop at their next check of {@link #isStopped()}, and SPARQL queries
+	 * that have already started are aborted.  validateAll and validateNode then throw an
+	 * InterruptedException.
+	 * Like the ProgressMonitor, this cannot be undone for this engine.
+	 */
+	public void cancel() {
+		runState.canceled = true;
+		for(QueryExecution qexec : runState.queries) {
+			qexec.abort();
+		}
+	}
+	
+	
+	/**
+	 * Activates the fail-fast mode, in which validation stops as soon as the first
+	 * sh:ValidationResult has been produced, i.e. as soon as it is known that the
+	 * data does not conform.
+	 * @param value  true to stop at the first violation
+	 */
+	public void setFailFast(boolean value) {
+		this.failFast = value;
+	}
+	
+	
+	/**
+	 * Sets the maximum number of results that this engine will produce.
+	 * Validation stops once this number has been reached.
+	 * @param value  the maximum number of results or 0 for no limit (default)
+	 */
+	public void setMaxResults(int value) {
+		if(value < 0) {
+			throw new IllegalArgumentException("Maximum number of results must not be negative");
+		}
+		this.maxResults = value;
+	}
+	
+	
+	/**
+	 * Sets the maximum number of results that this engine will produce for each focus node.
+	 * Once this number has been reached for a focus node, the remaining constraints are skipped
+	 * for that node, which makes validation faster if only the first problem of each node matters.
+	 * The constraints of each shape are validated cheapest first (see {@link ConstraintCosts}).
+	 * @param value  the maximum number of results per focus node or 0 for no limit (default)
+	 */
+	public void setMaxResultsPerFocusNode(int value) {
+		if(value < 0) {
+			throw new IllegalArgumentException("Maximum number of results per focus node must not be negative");
+		}
+		this.maxResultsPerFocusNode = value;
+	}
+	
+	
+	/**
+	 * Sets the minimum severity of the results that this engine will produce, in the order
+	 * sh:Violation, sh:Warning and any other (see {@link MinSeverityShapeFilter}).
+	 * Constraints of shapes with a lower severity are not executed at all, and root shapes
+	 * that cannot produce any results with the given severity are skipped without enumerating
+	 * their targets.  Unlike a MinSeverityShapeFilter on the ShapesGraph, this still validates
+	 * the property shapes of a shape that has a lower severity itself, and it does not change
+	 * the outcome of nested conformance checks such as sh:node.
+	 * This must be called before validation starts.
+	 * @param value  the minimum severity or null to produce all results (default)
+	 */
+	public void setMinSeverity(Resource value) {
+		this.minSeverity = value;
+		this.plans.clear();
+	}
+	
+	
+	/**
+	 * Sets the maximum number of results that this engine will produce for each shape.
+	 * Once this number has been reached for a shape, its remaining constraints are skipped.
+	 * @param value  the maximum number of results per shape or 0 for no limit (default)
+	 */
+	public void setMaxResultsPerShape(int value) {
+		if(value < 0) {
+			throw new IllegalArgumentException("Maximum number of results per shape must not be negative");
+		}
+		this.maxResultsPerShape = value;
+	}
+	
+	
+	/**
+	 * Checks whether validation has been stopped, because the fail-fast mode is active
+	 * and a violation has been found, because the maximum number of results has been reached,
+	 * because the validation has been canceled (see {@link #cancel()} and
+	 * {@link ProgressMonitor#isCanceled()}) or because it has run out of time.
+	 * Executors should call this (or {@link #isStopped(Constraint)}) in their loops over the
+	 * focus nodes and skip the remaining work once this returns true.
+	 * @return true if validation has been stopped
+	 */
+	public boolean isStopped() {
+		if(!stopped) {
+			if(runState.canceled || runState.limitReached || (monitor != null && monitor.isCanceled())) {
+				stopped = true;
+			}
+			else if(runState.deadline != 0 && System.nanoTime() - runState.deadline > 0) {
+				stopped = true;
+				runState.timedOut = true;
+			}
+		}
+		return stopped;
+	}
+	
+	
+	/**
+	 * Checks whether validation of a given constraint should stop, either because
+	 * the whole validation has been stopped, because the constraint has run out of time
+	 * (see {@link #setConstraintTimeout(long)}) or because its shape has reached the
+	 * maximum number of results per shape.
+	 * @param constraint  the Constraint to check
+	 * @return true if no further results will be accepted for the constraint
+	 */
+	public boolean isStopped(Constraint constraint) {
+		if(isStopped()) {
+			return true;
+		}
+		else if(constraintDeadline != 0 && System.nanoTime() - constraintDeadline > 0) {
+			constraintTimedOut = true;
+			return true;
+		}
+		else if(maxResultsPerShape > 0) {
+			Integer count = shapeResultCounts.get(constraint.getShapeResource());
+			return count != null && count >= maxResultsPerShape;
+		}
+		else {
+			return false;
+		}
+	}
+	
+	
+	/**
+	 * Delivers a new result to the current ValidationResultSink.
+	 * Results that exceed the configured limits are ignored.
+	 * @param result  the new result
+	 */
+	public void addResult(ValidationResult result) {
+		deliverResult(result, false);
+	}
+	
+	
+	// Delivers a result unless it exceeds the limits.  If create is true and the sink is an
+	// RDFReportSink then this returns the Resource that it has created, otherwise null
+	private Resource deliverResult(ValidationResult result, boolean create) {
+		if(result instanceof TimeoutResult) {
+			return sendToSink(result, create);
+		}
+		if(isStopped(result.getConstraint())) {
+			return null;
+		}
+		if(maxResultsPerFocusNode > 0 && result.getFocusNode() != null) {
+			if(focusNodeResultCounts.merge(result.getFocusNode(), 1, Integer::sum) > maxResultsPerFocusNode) {
+				return null;
+			}
+		}
+		boolean violation = SH.ValidationResult.equals(result.getResultType());
+		if(violation) {
+			conforms = false;
+		}
+		Resource resource = sendToSink(result, create);
+		if(maxResultsPerShape > 0) {
+			shapeResultCounts.merge(result.getSourceShape(), 1, Integer::sum);
+		}
+		if((failFast && violation) || (maxResults > 0 && ++resultCount >= maxResults)) {
+			stopped = true;
+			if(!worker) {
+				runState.limitReached = true;
+			}
+		}
+		return resource;
+	}
+	
+	
+	private Resource sendToSink(ValidationResult result, boolean create) {
+		if(create && resultSink instanceof RDFReportSink) {
+			return ((RDFReportSink)resultSink).createResult(result);
+		}
+		else {
+			resultSink.addResult(result);
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Adds a sh:resultMessage to a result that has been created by
+	 * {@link #createResult(Resource, Constraint, RDFNode)}, substituting the variables
+	 * of the message template with the values from the provided bindings.
+	 * @param result  the result Resource
+	 * @param message  the message template
+	 * @param bindings  the variable bindings
+	 * @deprecated  pass the messages to the constructor of {@link ValidationResult} instead,
+	 *              see {@link #createResultMessages(List, Supplier)}
+	 */
+	@Deprecated
 	public void addResultMessage(Resource result, Literal message, QuerySolution bindings) {
-		result.addProperty(SH.resultMessage, SPARQLSubstitutions.withSubstitutions(message, bindings, getLabelFunction()));
+		result.addProperty(SH.resultMessage, createResultMessage(message, bindings));
 	}
 	
 	
+	/**
+	 * Creates a new result for a given constraint and focus node and delivers it to the
+	 * current ValidationResultSink, like {@link #addResult(ValidationResult)}.
+	 * Properties such as sh:value that are added to the returned Resource afterwards only
+	 * end up in the report if the sink is an RDFReportSink: for other sinks, and for results
+	 * that exceed the configured limits, the returned Resource is not part of the report.
+	 * @param type  the type of the result, e.g. sh:ValidationResult
+	 * @param constraint  the Constraint that has produced the result
+	 * @param focusNode  the focus node or null
+	 * @return the result Resource
+	 * @deprecated  construct a {@link ValidationResult} and call {@link #addResult(ValidationResult)} instead
+	 */
+	@Deprecated
 	public Resource createResult(Resource type, Constraint constraint, RDFNode focusNode) {
-		Resource result = report.getModel().createResource(type);
-		report.addProperty(SH.result, result);
-		result.addProperty(SH.resultSeverity, constraint.getShapeResource().getSeverity());
-		result.addProperty(SH.sourceConstraintComponent, constraint.getComponent());
-		result.addProperty(SH.sourceShape, constraint.getShapeResource());
-		if(focusNode != null) {
-			result.addProperty(SH.focusNode, focusNode);
+		ValidationResult result = new ValidationResult(type, constraint, focusNode, null, null, Collections.emptyList(), null, null);
+		Resource resource = deliverResult(result, true);
+		if(resource == null) {
+			resource = JenaUtil.createDefaultModel().createResource(type);
 		}
-		return result;
+		return resource;
+	}
+	
+	
+	/**
+	 * Checks whether no sh:ValidationResult has been produced so far.
+	 * @return true if the validated nodes conform
+	 */
+	public boolean conforms() {
+		return conforms;
+	}
+	
+	
+	/**
+	 * Produces the sh:resultMessage for a given message template, substituting the
+	 * variables with the values from the provided bindings.
+	 * @param message  the message template
+	 * @param bindings  the variable bindings
+	 * @return the message
+	 */
+	public Literal createResultMessage(Literal message, QuerySolution bindings) {
+		return SPARQLSubstitutions.withSubstitutions(message, bindings, getLabelFunction());
+	}
+	
+	
+	/**
+	 * Produces the sh:resultMessages for given message templates, either right away or,
+	 * in the deferred mode (see {@link #setDeferMessages(boolean)}), when they are first accessed.
+	 * @param templates  the message templates
+	 * @param bindings  produces the variable bindings, called at most once
+	 * @return the messages
+	 */
+	public List<RDFNode> createResultMessages(List<Literal> templates, Supplier<QuerySolution> bindings) {
+		if(templates.isEmpty()) {
+			return new LinkedList<>();
+		}
+		else if(deferMessages) {
+			return new DeferredMessages(templates, bindings, getLabelFunction());
+		}
+		else {
+			QuerySolution solution = bindings.get();
+			List<RDFNode> messages = new LinkedList<>();
+			for(Literal template : templates) {
+				messages.add(createResultMessage(template, solution));
+			}
+			return messages;
+		}
+	}
+	
+	
+	/**
+	 * Prepares a QueryExecution that is about to be executed for a constraint, so that it
+	 * times out when the time budget is used up.
+	 * If this returns true then the caller must call {@link #startQuery(QueryExecution, Constraint)}
+	 * once execSelect has returned, and {@link #endQuery(QueryExecution)} at the end.
+	 * If the query gets aborted, it throws a QueryCancelledException and
+	 * {@link #isStopped(Constraint)} returns true.
+	 * @param qexec  the QueryExecution
+	 * @param constraint  the Constraint that the query is executed for
+	 * @return false if the query must not be executed, because the constraint has been stopped
+	 */
+	public boolean beginQuery(QueryExecution qexec, Constraint constraint) {
+		if(isStopped(constraint)) {
+			return false;
+		}
+		long deadline = getDeadline();
+		if(deadline != 0) {
+			qexec.setTimeout(Math.max(1, (deadline - System.nanoTime() + 999999) / 1000000));
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Registers a QueryExecution whose execSelect has returned, so that {@link #cancel()} can abort it.
+	 * Jena ignores aborts and timeouts that happen before a query has started, so the query is
+	 * aborted here if the constraint has been stopped in the meantime.
+	 * @param qexec  the QueryExecution
+	 * @param constraint  the Constraint that the query is executed for
+	 */
+	public void startQuery(QueryExecution qexec, Constraint constraint) {
+		runState.queries.add(qexec);
+		if(isStopped(constraint)) {
+			qexec.abort();
+		}
+	}
+	
+	
+	public void endQuery(QueryExecution qexec) {
+		runState.queries.remove(qexec);
+	}
+	
+	
+	// Gets the earlier of the validation and constraint deadlines, or 0
+	private long getDeadline() {
+		long deadline = runState.deadline;
+		if(constraintDeadline != 0 && (deadline == 0 || constraintDeadline - deadline < 0)) {
+			deadline = constraintDeadline;
+		}
+		return deadline;
 	}
 	
 	
@@ -179,76 +670,60 @@ public class ValidationEngine implements NodeExpressionContext {
 	
 	/**
 	 * Gets the validation report as a Resource in the report Model.
-	 * @return the report Resource
+	 * Unless the default RDFReportSink has been replaced, this contains all results.
+	 * @return the report Resource, or null if the engine has been created without a report
 	 */
 	public Resource getReport() {
 		return report;
 	}
-
-
+	
+	
+	public ValidationResultSink getResultSink() {
+		return resultSink;
+	}
+	
+	
 	/**
-	 * Gets a Set of all Shapes that should be evaluated for a given resource.
-	 * @param focusNode  the resource to get the shapes for
-	 * @param dataset  the Dataset containing the resource
-	 * @param shapesModel  the shapes Model
-	 * @return a Set of shape resources
+	 * Replaces the default RDFReportSink, which writes all results into the report Model,
+	 * with a different ValidationResultSink, for example to stream results to disk
+	 * without materializing them in memory.
+	 * @param value  the new sink (not null)
 	 */
-	private Set<Resource> getShapesForNode(RDFNode focusNode, Dataset dataset, Model shapesModel) {
-		Set<Resource> shapes = new HashSet<Resource>();
-
-		// sh:targetNode
-		shapes.addAll(shapesModel.listSubjectsWithProperty(SH.targetNode, focusNode).toList());
-		
-		// property targets
-		if(focusNode instanceof Resource) {
-			for(Statement s : shapesModel.listStatements(null, SH.targetSubjectsOf, (RDFNode)null).toList()) {
-				if(((Resource)focusNode).hasProperty(JenaUtil.asProperty(s.getResource()))) {
-					shapes.add(s.getSubject());
-				}
-			}
-		}
-		for(Statement s : shapesModel.listStatements(null, SH.targetObjectsOf, (RDFNode)null).toList()) {
-			if(focusNode.getModel().contains(null, JenaUtil.asProperty(s.getResource()), focusNode)) {
-				shapes.add(s.getSubject());
-			}
-		}
-		
-		// rdf:type / sh:targetClass
-		if(focusNode instanceof Resource) {
-			for(Resource type : JenaUtil.getAllTypes((Resource)focusNode)) {
-				if(JenaUtil.hasIndirectType(type.inModel(shapesModel), SH.Shape)) {
-					shapes.add(type);
-				}
-				for(Statement s : shapesModel.listStatements(null, SH.targetClass, type).toList()) {
-					shapes.add(s.getSubject());
-				}
-			}
-		}
-		
-		// sh:target
-		for(Statement s : shapesModel.listStatements(null, SH.target, (RDFNode)null).toList()) {
-			if(SHACLUtil.isInTarget(focusNode, dataset, s.getResource())) {
-				shapes.add(s.getSubject());
-			}
-		}
-		
-		return shapes;
+	public void setResultSink(ValidationResultSink value) {
+		this.resultSink = value;
 	}
 
-	
+
+	/**
+	 * Gets the value nodes of a given focus node for the path of the shape of a given constraint,
+	 * or the focus node itself for node shapes.
+	 * The value nodes are distinct and are cached during a validation run, so that the
+	 * constraints of a property shape only need to walk the path once per focus node.
+	 * @param constraint  the Constraint
+	 * @param focusNode  the focus node
+	 * @return the value nodes (which must not be modified)
+	 */
 	public List<RDFNode> getValueNodes(Constraint constraint, RDFNode focusNode) {
-		Resource path = JenaUtil.getResourceProperty(constraint.getShapeResource(), SH.path);
+		Resource path = constraint.getShapeResource().getPath();
 		if(path == null) {
 			return Collections.singletonList(focusNode);
 		}
 		else {
-			List<RDFNode> results = new LinkedList<RDFNode>();
 			Path jenaPath = constraint.getShape().getJenaPath();
-			if(jenaPath != null) {
-				SHACLPaths.addValueNodes(focusNode, jenaPath, results);
-			}
-			else {
-				SHACLPaths.addValueNodes(focusNode, path, results);
+			ValueNodesKey key = new ValueNodesKey(focusNode.asNode(), jenaPath != null ? jenaPath : path.asNode());
+			List<RDFNode> results = valueNodesCache.get(key);
+			if(results == null) {
+				results = new ArrayList<RDFNode>();
+				if(jenaPath != null) {
+					SHACLPaths.addValueNodes(focusNode, jenaPath, results);
+				}
+				else {
+					SHACLPaths.addValueNodes(focusNode, path, results);
+				}
+				results = Collections.unmodifiableList(results);
+				if(results.size() <= maxCachedValueNodes) {
+					valueNodesCache.put(key, results);
+				}
 			}
 			return results;
 		}
@@ -266,16 +741,30 @@ public class ValidationEngine implements NodeExpressionContext {
 	}
 	
 	
-	public void updateConforms() {
-		boolean conforms = true;
+	static boolean hasValidationResults(Resource report) {
 		StmtIterator it = report.listProperties(SH.result);
-		while(it.hasNext()) {
-			Statement s = it.next();
-			if(s.getResource().hasProperty(RDF.type, SH.ValidationResult)) {
-				conforms = false;
-				it.close();
-				break;
+		try {
+			while(it.hasNext()) {
+				Statement s = it.next();
+				if(s.getResource().hasProperty(RDF.type, SH.ValidationResult)) {
+					return true;
+				}
 			}
+			return false;
+		}
+		finally {
+			it.close();
+		}
+	}
+	
+	
+	/**
+	 * Updates the sh:conforms value of the report, based on the results that have
+	 * been produced so far.
+	 */
+	public void updateConforms() {
+		if(report == null) {
+			return;
 		}
 		report.removeAll(SH.conforms);
 		report.addProperty(SH.conforms, conforms ? JenaDatatypes.TRUE : JenaDatatypes.FALSE);
@@ -288,33 +777,110 @@ public class ValidationEngine implements NodeExpressionContext {
 	 * @return an instance of sh:ValidationReport in the results Model
 	 */
 	public Resource validateAll() throws InterruptedException {
-		boolean nested = SHACLScriptEngineManager.begin();
+		boolean nestedCache = ConformanceCache.begin();
+		if(!nestedCache) {
+			beginRun();
+		}
 		try {
-			List<Shape> rootShapes = shapesGraph.getRootShapes();
-			if(monitor != null) {
-				monitor.beginTask("Validating " + rootShapes.size() + " shapes", rootShapes.size());
+			validateAllShapes();
+		}
+		finally {
+			ConformanceCache.end(nestedCache);
+		}
+		if(runState.canceled) {
+			throw new InterruptedException();
+		}
+		updateConforms();
+		return report;
+	}
+	
+	
+	private void validateAllShapes() throws InterruptedException {
+		if(executorService != null) {
+			validateAllParallel();
+		}
+		else {
+			boolean nested = SHACLScriptEngineManager.begin();
+			try {
+				List<Shape> rootShapes = shapesGraph.getRootShapes();
+				if(monitor != null) {
+					monitor.beginTask("Validating " + rootShapes.size() + " shapes", rootShapes.size());
+				}
+				int i = 0;
+				for(Shape shape : rootShapes) {
+					if(stopped) {
+						break;
+					}
+					if(monitor != null) {
+						monitor.subTask("Shape " + (++i) + ": " + getLabelFunction().apply(shape.getShapeResource()));
+					}
+					
+					if(isActive(shape)) {
+						ExtendedIterator<Node> targetNodes = SHACLUtil.listTargetNodes(shape.getShapeResource(), dataset);
+						try {
+							for(List<RDFNode> focusNodes = nextFocusNodes(targetNodes); !focusNodes.isEmpty() && !stopped; focusNodes = nextFocusNodes(targetNodes)) {
+								for(Constraint constraint : getConstraints(shape)) {
+									validateNodesAgainstConstraint(focusNodes, constraint);
+								}
+							}
+						}
+						finally {
+							targetNodes.close();
+						}
+					}
+					if(monitor != null) {
+						monitor.worked(1);
+						if(monitor.isCanceled()) {
+							throw new InterruptedException();
+						}
+					}
+				}
 			}
+			finally {
+				SHACLScriptEngineManager.end(nested);
+			}
+		}
+	}
+	
+	
+	private void validateAllParallel() throws InterruptedException {
+		
+		ConformanceCache conformanceCache = ConformanceCache.getCurrent();
+		List<Shape> rootShapes = shapesGraph.getRootShapes();
+		if(monitor != null) {
+			monitor.beginTask("Validating " + rootShapes.size() + " shapes", rootShapes.size());
+		}
+		
+		// Submits one task per chunk of focus nodes and shape while the focus nodes are enumerated,
+		// but only up to maxPending at a time, and delivers the results of the completed tasks
+		// in submission order, i.e. in the same order as in sequential mode
+		int maxPending = getMaxPendingTasks();
+		Deque<Future<List<ValidationResult>>> pending = new ArrayDeque<>();
+		try {
 			int i = 0;
 			for(Shape shape : rootShapes) {
+				if(isStopped()) {
+					break;
+				}
 				if(monitor != null) {
 					monitor.subTask("Shape " + (++i) + ": " + getLabelFunction().apply(shape.getShapeResource()));
 				}
-				
-				List<RDFNode> focusNodes = SHACLUtil.getTargetNodes(shape.getShapeResource(), dataset);
-				if(focusNodeFilter != null) {
-					List<RDFNode> filteredFocusNodes = new LinkedList<RDFNode>();
-					for(RDFNode focusNode : focusNodes) {
-						if(focusNodeFilter.test(focusNode)) {
-							filteredFocusNodes.add(focusNode);
+				if(isActive(shape)) {
+					ExtendedIterator<Node> targetNodes = SHACLUtil.listTargetNodes(shape.getShapeResource(), dataset);
+					try {
+						for(List<RDFNode> chunk = nextFocusNodes(targetNodes); !chunk.isEmpty(); chunk = nextFocusNodes(targetNodes)) {
+							while(pending.size() >= maxPending) {
+								deliverResults(pending.removeFirst());
+							}
+							if(isStopped()) {
+								break;
+							}
+							List<RDFNode> focusNodes = chunk;
+							pending.add(executorService.submit(() -> validateChunk(focusNodes, shape, conformanceCache)));
 						}
 					}
-					focusNodes = filteredFocusNodes;
-				}
-				if(!focusNodes.isEmpty()) {
-					if(!shapesGraph.isIgnored(shape.getShapeResource().asNode()) && !shape.getShapeResource().isDeactivated()) {
-						for(Constraint constraint : shape.getConstraints()) {
-							validateNodesAgainstConstraint(focusNodes, constraint);
-						}
+					finally {
+						targetNodes.close();
 					}
 				}
 				if(monitor != null) {
@@ -324,12 +890,168 @@ public class ValidationEngine implements NodeExpressionContext {
 					}
 				}
 			}
+			
+			// The tasks that are still running stop early if validation has been stopped,
+			// but their results may include dash:FailureResults for timeouts
+			while(!pending.isEmpty()) {
+				deliverResults(pending.removeFirst());
+			}
+		}
+		finally {
+			for(Future<?> future : pending) {
+				future.cancel(true);
+			}
+		}
+	}
+	
+	
+	private void deliverResults(Future<List<ValidationResult>> future) throws InterruptedException {
+		for(ValidationResult result : getFuture(future)) {
+			addResult(result);
+		}
+	}
+	
+	
+	// Gets the maximum number of chunks that are submitted to the executorService at the same time
+	private int getMaxPendingTasks() {
+		int threads = Runtime.getRuntime().availableProcessors();
+		if(executorService instanceof ThreadPoolExecutor) {
+			int poolSize = ((ThreadPoolExecutor)executorService).getMaximumPoolSize();
+			if(poolSize < 1000) {
+				threads = poolSize;
+			}
+		}
+		else if(executorService instanceof ForkJoinPool) {
+			threads = ((ForkJoinPool)executorService).getParallelism();
+		}
+		return 2 * threads;
+	}
+	
+	
+	private boolean isActive(Shape shape) {
+		return !shapesGraph.isIgnored(shape.getShapeResource().asNode()) && !shape.getShapeResource().isDeactivated() &&
+				(minSeverity == null || !getPlan(shape, new HashSet<>()).isEmpty());
+	}
+	
+	
+	// Gets the constraints of a shape that need to be validated, cheapest first.
+	// The measured timings are only used if a result limit may skip the more expensive ones.
+	private List<Constraint> getConstraints(Shape shape) {
+		boolean measured = failFast || maxResults > 0 || maxResultsPerShape > 0 || maxResultsPerFocusNode > 0;
+		if(minSeverity == null) {
+			return ConstraintCosts.get().getOrderedConstraints(shape, measured);
+		}
+		else {
+			return ConstraintCosts.get().getOrderedConstraints(getPlan(shape, new HashSet<>()), measured);
+		}
+	}
+	
+	
+	/**
+	 * Gets the constraints of a shape that can produce results of at least minSeverity,
+	 * either directly or via sh:property.
+	 * Returns null if the shape is already being visited, i.e. for recursive shapes.
+	 */
+	private List<Constraint> getPlan(Shape shape, Set<Shape> visiting) {
+		List<Constraint> plan = plans.get(shape);
+		if(plan == null) {
+			if(!visiting.add(shape)) {
+				return null;
+			}
+			boolean relevant = MinSeverityShapeFilter.getScore(shape.getShapeResource().getSeverity()) >= MinSeverityShapeFilter.getScore(minSeverity);
+			plan = new ArrayList<>();
+			for(Constraint constraint : shape.getConstraints()) {
+				if(SH.PropertyConstraintComponent.equals(constraint.getComponent()) || DASH.ParameterConstraintComponent.equals(constraint.getComponent())) {
+					// The results of these come from the nested shape and have its severity
+					if(constraint.getParameterValue() instanceof Resource) {
+						List<Constraint> nestedPlan = getPlan(shapesGraph.getShape(constraint.getParameterValue().asNode()), visiting);
+						if(nestedPlan == null || !nestedPlan.isEmpty()) {
+							plan.add(constraint);
+						}
+					}
+				}
+				else if(relevant) {
+					plan.add(constraint);
+				}
+			}
+			visiting.remove(shape);
+			plan = Collections.unmodifiableList(plan);
+			plans.put(shape, plan);
+		}
+		return plan;
+	}
+	
+	
+	// Gets the next chunk of up to chunkSize focus nodes that pass the focusNodeFilter
+	private List<RDFNode> nextFocusNodes(Iterator<Node> targetNodes) {
+		Model dataModel = dataset.getDefaultModel();
+		List<RDFNode> focusNodes = new ArrayList<>();
+		while(focusNodes.size() < chunkSize && targetNodes.hasNext()) {
+			RDFNode focusNode = dataModel.asRDFNode(targetNodes.next());
+			if(focusNodeFilter == null || focusNodeFilter.test(focusNode)) {
+				focusNodes.add(focusNode);
+			}
+		}
+		return focusNodes;
+	}
+	
+	
+	private static <T> T getFuture(Future<T> future) throws InterruptedException {
+		try {
+			return future.get();
+		}
+		catch(ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			else if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			else {
+				throw new SHACLException("Validation task failed: " + cause);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Called on a worker thread to validate a chunk of focus nodes against a shape,
+	 * using a separate engine that collects the results into a List.
+	 */
+	private List<ValidationResult> validateChunk(List<RDFNode> focusNodes, Shape shape, ConformanceCache conformanceCache) {
+		ValidationEngine worker = ValidationEngineFactory.get().create(dataset, shapesGraphURI, shapesGraph, null);
+		worker.setLabelFunction(labelFunction);
+		worker.setDeferMessages(deferMessages);
+		worker.setFailFast(failFast);
+		worker.setMaxResults(maxResults);
+		worker.setMaxResultsPerFocusNode(maxResultsPerFocusNode);
+		worker.setMaxResultsPerShape(maxResultsPerShape);
+		// The worker counts the results per focus node of its chunk only: the shared counts are
+		// updated when addResult delivers the results, so that each result is counted once
+		worker.runState = runState;
+		worker.worker = true;
+		worker.minSeverity = minSeverity;
+		worker.plans = plans;
+		worker.setConstraintTimeout(constraintTimeout);
+		List<ValidationResult> results = new ArrayList<>();
+		worker.setResultSink(results::add);
+		URI oldShapesGraphURI = HasShapeFunction.getShapesGraph();
+		HasShapeFunction.setShapesGraph(shapesGraphURI);
+		ConformanceCache oldConformanceCache = ConformanceCache.getCurrent();
+		ConformanceCache.setCurrent(conformanceCache);
+		boolean nested = SHACLScriptEngineManager.begin();
+		try {
+			for(Constraint constraint : worker.getConstraints(shape)) {
+				worker.validateNodesAgainstConstraint(focusNodes, constraint);
+			}
 		}
 		finally {
 			SHACLScriptEngineManager.end(nested);
+			ConformanceCache.setCurrent(oldConformanceCache);
+			HasShapeFunction.setShapesGraph(oldShapesGraphURI);
 		}
-		updateConforms();
-		return report;
+		return results;
 	}
 	
 	
@@ -340,13 +1062,18 @@ public class ValidationEngine implements NodeExpressionContext {
 	 */
 	public Resource validateNode(Node focusNode) throws InterruptedException {
 		
-		Model shapesModel = dataset.getNamedModel(shapesGraphURI.toString());
-		
 		RDFNode focusRDFNode = dataset.getDefaultModel().asRDFNode(focusNode);
-		Set<Resource> shapes = getShapesForNode(focusRDFNode, dataset, shapesModel);
+		boolean nestedCache = ConformanceCache.begin();
+		if(!nestedCache) {
+			beginRun();
+		}
 		boolean nested = SHACLScriptEngineManager.begin();
 		try {
+			Set<Resource> shapes = shapesGraph.getTargetIndex().getShapesForNode(focusRDFNode, dataset);
 			for(Resource shape : shapes) {
+				if(stopped) {
+					break;
+				}
 				if(monitor != null && monitor.isCanceled()) {
 					throw new InterruptedException();
 				}
@@ -355,6 +1082,10 @@ public class ValidationEngine implements NodeExpressionContext {
 		}
 		finally {
 			SHACLScriptEngineManager.end(nested);
+			ConformanceCache.end(nestedCache);
+		}
+		if(runState.canceled) {
+			throw new InterruptedException();
 		}
 		
 		return report;
@@ -371,14 +1102,19 @@ public class ValidationEngine implements NodeExpressionContext {
 		if(!shapesGraph.isIgnored(shape)) {
 			Shape vs = shapesGraph.getShape(shape);
 			if(!vs.getShapeResource().isDeactivated()) {
+				boolean nestedCache = ConformanceCache.begin();
+				if(!nestedCache) {
+					beginRun();
+				}
 				boolean nested = SHACLScriptEngineManager.begin();
 				try {
-					for(Constraint constraint : vs.getConstraints()) {
+					for(Constraint constraint : getConstraints(vs)) {
 						validateNodesAgainstConstraint(focusNodes, constraint);
 					}
 				}
 				finally {
 					SHACLScriptEngineManager.end(nested);
+					ConformanceCache.end(nestedCache);
 				}
 			}
 		}
@@ -386,14 +1122,147 @@ public class ValidationEngine implements NodeExpressionContext {
 	}
 	
 	
+	// Gets the focus nodes that have not reached maxResultsPerFocusNode yet
+	private List<RDFNode> getUnfinishedFocusNodes(List<RDFNode> focusNodes) {
+		List<RDFNode> results = null;
+		for(int i = 0; i < focusNodes.size(); i++) {
+			RDFNode focusNode = focusNodes.get(i);
+			Integer count = focusNodeResultCounts.get(focusNode);
+			if(count != null && count >= maxResultsPerFocusNode) {
+				if(results == null) {
+					results = new ArrayList<>(focusNodes.subList(0, i));
+				}
+			}
+			else if(results != null) {
+				results.add(focusNode);
+			}
+		}
+		return results != null ? results : focusNodes;
+	}
+	
+	
 	private void validateNodesAgainstConstraint(List<RDFNode> focusNodes, Constraint constraint) {
+		if(isStopped(constraint)) {
+			return;
+		}
+		if(maxResultsPerFocusNode > 0) {
+			focusNodes = getUnfinishedFocusNodes(focusNodes);
+			if(focusNodes.isEmpty()) {
+				return;
+			}
+		}
 		ConstraintExecutor executor = getExecutor(constraint);
 		if(executor != null) {
-			executor.executeConstraint(constraint, this, focusNodes);
+			long startTime = System.nanoTime();
+			long oldConstraintDeadline = constraintDeadline;
+			boolean oldConstraintTimedOut = constraintTimedOut;
+			if(constraintTimeout > 0) {
+				// Nested constraints (e.g. from sh:property) must not exceed the outer deadline
+				long deadline = startTime + constraintTimeout * 1000000;
+				if(oldConstraintDeadline == 0 || deadline - oldConstraintDeadline < 0) {
+					constraintDeadline = deadline;
+				}
+			}
+			constraintTimedOut = false;
+			try {
+				executor.executeConstraint(constraint, this, focusNodes);
+			}
+			finally {
+				boolean timedOut = constraintTimedOut;
+				constraintDeadline = oldConstraintDeadline;
+				constraintTimedOut = oldConstraintTimedOut;
+				if(timedOut) {
+					addTimeoutResult(constraint, "Constraint has exceeded its time budget of " + constraintTimeout + " ms");
+				}
+				else if(runState.timedOut && runState.timeoutReported.compareAndSet(false, true)) {
+					addTimeoutResult(constraint, "Validation has exceeded its time budget of " + timeout + " ms");
+				}
+			}
+			constraint.recordExecution(System.nanoTime() - startTime, focusNodes.size());
 		}
 		else {
 			FailureLog.get().logFailure("No suitable validator found for constraint " + constraint);
 			executor = getExecutor(constraint);
 		}
 	}
+	
+	
+	private void addTimeoutResult(Constraint constraint, String message) {
+		FailureLog.get().logFailure(message + ": " + constraint);
+		List<RDFNode> messages = Collections.singletonList(ResourceFactory.createTypedLiteral(message));
+		RDFNode sourceConstraint = SH.SPARQLConstraintComponent.equals(constraint.getComponent()) || SH.JSConstraintComponent.equals(constraint.getComponent()) ?
+				constraint.getParameterValue() : null;
+		addResult(new TimeoutResult(constraint, messages, sourceConstraint));
+	}
+	
+	
+	// Called at the beginning of each top-level validation
+	private void beginRun() {
+		valueNodesCache.clear();
+		focusNodeResultCounts.clear();
+		runState.deadline = timeout > 0 ? System.nanoTime() + timeout * 1000000 : 0;
+		runState.timedOut = false;
+		runState.timeoutReported.set(false);
+	}
+	
+	
+	// The state of a top-level validation that is shared with the engines of parallel workers
+	private static class RunState {
+		
+		volatile boolean canceled;
+		
+		// True once the engine that delivers the results has reached failFast or maxResults
+		volatile boolean limitReached;
+		
+		// The nanoTime at which the validation runs out of time, or 0
+		volatile long deadline;
+		
+		Set<QueryExecution> queries = ConcurrentHashMap.newKeySet();
+		
+		volatile boolean timedOut;
+		
+		AtomicBoolean timeoutReported = new AtomicBoolean();
+	}
+	
+	
+	// A dash:FailureResult for a constraint that ran out of time, delivered even if validation has stopped
+	private static class TimeoutResult extends ValidationResult {
+		
+		TimeoutResult(Constraint constraint, List<RDFNode> messages, RDFNode sourceConstraint) {
+			super(DASH.FailureResult, constraint, null, null, null, messages, sourceConstraint, null);
+		}
+	}
+	
+	
+	private static class ValueNodesKey {
+		
+		private Node focusNode;
+		
+		// The predicate Node of a simple path or the Jena Path otherwise
+		private Object path;
+		
+		
+		ValueNodesKey(Node focusNode, Object path) {
+			this.focusNode = focusNode;
+			this.path = path;
+		}
+
+
+		@Override
+		public boolean equals(Object obj) {
+			if(obj instanceof ValueNodesKey) {
+				ValueNodesKey other = (ValueNodesKey) obj;
+				return focusNode.equals(other.focusNode) && path.equals(other.path);
+			}
+			else {
+				return false;
+			}
+		}
+
+
+		@Override
+		public int hashCode() {
+			return focusNode.hashCode() + 31 * path.hashCode();
+		}
+	}
 }
@@ -38,4 +38,18 @@ public class ValidationEngineFactory {
 	public ValidationEngine create(Dataset dataset, URI shapesGraphURI, ShapesGraph shapesGraph, Resource report) {
 		return new ValidationEngine(dataset, shapesGraphURI, shapesGraph, report);
 	}
+	
+	
+	/**
+	 * Constructs a new ValidationEngine that delivers its results to a given sink
+	 * and does not create a report Model, e.g. to check whether nodes conform.
+	 * @param dataset  the Dataset to operate on
+	 * @param shapesGraphURI  the URI of the shapes graph (must be in the dataset)
+	 * @param shapesGraph  the ShapesGraph with the shapes to validate against
+	 * @param resultSink  the ValidationResultSink to deliver the results to
+	 * @return a new ValidationEngine
+	 */
+	public ValidationEngine createWithSink(Dataset dataset, URI shapesGraphURI, ShapesGraph shapesGraph, ValidationResultSink resultSink) {
+		return new ValidationEngine(dataset, shapesGraphURI, shapesGraph, null, resultSink);
+	}
 }
@@ -14,4 +14,14 @@ public interface ValidationLanguage {
 	boolean canExecute(Constraint constraint, ValidationEngine engine);
 	
 	ConstraintExecutor createExecutor(Constraint constraint, ValidationEngine engine);
+	
+	
+	/**
+	 * Checks whether canExecute and createExecutor ignore the ValidationEngine, so that
+	 * ShapesGraph.compile() can create the executors of this language in advance.
+	 * @return true if the engine is not needed
+	 */
+	default boolean isEngineIndependent() {
+		return false;
+	}
 }
@@ -0,0 +1,131 @@
+package org.topbraid.shacl.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.topbraid.shacl.engine.Constraint;
+
+/**
+ * An immutable representation of a single validation result, as produced by the
+ * ConstraintExecutors and delivered to a ValidationResultSink.
+ * 
+ * The severity, source shape and source constraint component are derived from the Constraint.
+ */
+public class ValidationResult {
+	
+	private Constraint constraint;
+	
+	private Model details;
+	
+	private RDFNode focusNode;
+	
+	private List<RDFNode> messages;
+	
+	private RDFNode path;
+	
+	private Resource resultType;
+	
+	private RDFNode sourceConstraint;
+	
+	private RDFNode value;
+	
+	
+	/**
+	 * Constructs a new ValidationResult.
+	 * @param resultType  the type, e.g. sh:ValidationResult or dash:FailureResult
+	 * @param constraint  the Constraint that has produced the result
+	 * @param focusNode  the focus node or null
+	 * @param path  the sh:resultPath (a path structure in the shapes graph) or null
+	 * @param value  the sh:value or null
+	 * @param messages  the sh:resultMessages, possibly empty
+	 * @param sourceConstraint  the sh:sourceConstraint or null
+	 * @param details  a Model with nested results for sh:detail or null
+	 */
+	public ValidationResult(Resource resultType, Constraint constraint, RDFNode focusNode, RDFNode path, RDFNode value, 
+			List<RDFNode> messages, RDFNode sourceConstraint, Model details) {
+		this.constraint = constraint;
+		this.details = details;
+		this.focusNode = focusNode;
+		if(messages instanceof DeferredMessages) {
+			// Already unmodifiable, and copying would produce the messages
+			this.messages = messages;
+		}
+		else {
+			this.messages = messages.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(messages));
+		}
+		this.path = path;
+		this.resultType = resultType;
+		this.sourceConstraint = sourceConstraint;
+		this.value = value;
+	}
+	
+	
+	public Constraint getConstraint() {
+		return constraint;
+	}
+	
+	
+	/**
+	 * Gets the nested results that shall be linked via sh:detail, if any.
+	 * The returned Model must not be modified.
+	 * @return the details Model or null
+	 */
+	public Model getDetails() {
+		return details;
+	}
+	
+	
+	public RDFNode getFocusNode() {
+		return focusNode;
+	}
+	
+	
+	public List<RDFNode> getMessages() {
+		return messages;
+	}
+	
+	
+	public RDFNode getPath() {
+		return path;
+	}
+	
+	
+	public Resource getResultType() {
+		return resultType;
+	}
+	
+	
+	public Resource getSeverity() {
+		return constraint.getShapeResource().getSeverity();
+	}
+	
+	
+	public RDFNode getSourceConstraint() {
+		return sourceConstraint;
+	}
+	
+	
+	public Resource getSourceConstraintComponent() {
+		return constraint.getComponent();
+	}
+	
+	
+	public Resource getSourceShape() {
+		return constraint.getShapeResource();
+	}
+	
+	
+	public RDFNode getValue() {
+		return value;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return "Result of " + constraint + " for focus node " + focusNode + (value != null ? " and value " + value : "");
+	}
+}
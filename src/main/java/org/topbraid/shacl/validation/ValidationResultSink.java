@@ -0,0 +1,17 @@
+package org.topbraid.shacl.validation;
+
+/**
+ * Receives the ValidationResults of a ValidationEngine as soon as they are produced.
+ * 
+ * The default implementation is RDFReportSink, which adds the results to an RDF report.
+ * Other implementations may stream the results to disk, count or aggregate them
+ * without materializing the report Model.
+ */
+public interface ValidationResultSink {
+
+	/**
+	 * Called for each new result.
+	 * @param result  the new result
+	 */
+	void addResult(ValidationResult result);
+}
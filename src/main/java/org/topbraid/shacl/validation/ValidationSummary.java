@@ -0,0 +1,217 @@
+package org.topbraid.shacl.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.topbraid.shacl.vocabulary.SH;
+import org.topbraid.spin.util.JenaDatatypes;
+import org.topbraid.spin.util.JenaUtil;
+
+/**
+ * A ValidationResultSink that only counts the results per group of result type, shape,
+ * constraint component, severity and path, and keeps a bounded random sample of the
+ * results of each group.
+ * The memory consumption therefore only depends on the number of groups, not on the
+ * number of results.
+ *
+ * See {@link ValidationUtil#summarizeModel(Model, Model, boolean, int)}.
+ */
+public class ValidationSummary implements ValidationResultSink {
+
+	private Map<Group,Group> groups = new LinkedHashMap<>();
+
+	private Random random = new Random();
+
+	private int sampleSize;
+
+	private long totalCount;
+
+
+	/**
+	 * Constructs a new ValidationSummary.
+	 * @param sampleSize  the maximum number of sample results per group, may be 0
+	 */
+	public ValidationSummary(int sampleSize) {
+		if(sampleSize < 0) {
+			throw new IllegalArgumentException("Sample size must not be negative");
+		}
+		this.sampleSize = sampleSize;
+	}
+
+
+	@Override
+	public synchronized void addResult(ValidationResult result) {
+		Group key = new Group(result);
+		Group group = groups.get(key);
+		if(group == null) {
+			group = key;
+			groups.put(key, group);
+		}
+		group.add(result, sampleSize, random);
+		totalCount++;
+	}
+
+
+	/**
+	 * Checks whether none of the results is a sh:ValidationResult.
+	 * @return true if the data conforms
+	 */
+	public synchronized boolean conforms() {
+		for(Group group : groups.values()) {
+			if(SH.ValidationResult.equals(group.getResultType())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Creates a sh:ValidationReport in a new Model, with the sh:conforms value of all results
+	 * but with only the sample results.
+	 * @return the sh:ValidationReport
+	 */
+	public synchronized Resource createSampleReport() {
+		Model model = JenaUtil.createDefaultModel();
+		Resource report = model.createResource(SH.ValidationReport);
+		report.addProperty(SH.conforms, conforms() ? JenaDatatypes.TRUE : JenaDatatypes.FALSE);
+		RDFReportSink sink = new RDFReportSink(report);
+		for(Group group : groups.values()) {
+			for(ValidationResult sample : group.getSamples()) {
+				sink.addResult(sample);
+			}
+		}
+		return report;
+	}
+
+
+	/**
+	 * Gets the groups in the order in which their first result has been produced.
+	 * @return the groups
+	 */
+	public synchronized List<Group> getGroups() {
+		return new ArrayList<>(groups.values());
+	}
+
+
+	/**
+	 * Gets the total number of results.
+	 * @return the number of results in all groups
+	 */
+	public synchronized long getTotalCount() {
+		return totalCount;
+	}
+
+
+	/**
+	 * The results of one combination of result type, shape, component, severity and path.
+	 */
+	public static class Group {
+
+		private Resource component;
+
+		private long count;
+
+		private RDFNode path;
+
+		private Resource resultType;
+
+		private List<ValidationResult> samples = new ArrayList<>();
+
+		private Resource severity;
+
+		private Resource shape;
+
+
+		private Group(ValidationResult result) {
+			this.component = result.getSourceConstraintComponent();
+			this.path = result.getPath();
+			this.resultType = result.getResultType();
+			this.severity = result.getSeverity();
+			this.shape = result.getSourceShape();
+		}
+
+
+		// Reservoir sampling: each result of the group ends up in the samples with the same probability
+		private void add(ValidationResult result, int sampleSize, Random random) {
+			count++;
+			if(samples.size() < sampleSize) {
+				samples.add(result);
+			}
+			else if(sampleSize > 0) {
+				long index = (long)(random.nextDouble() * count);
+				if(index < sampleSize) {
+					samples.set((int)index, result);
+				}
+			}
+		}
+
+
+		public Resource getComponent() {
+			return component;
+		}
+
+
+		public long getCount() {
+			return count;
+		}
+
+
+		public RDFNode getPath() {
+			return path;
+		}
+
+
+		public Resource getResultType() {
+			return resultType;
+		}
+
+
+		public List<ValidationResult> getSamples() {
+			return Collections.unmodifiableList(samples);
+		}
+
+
+		public Resource getSeverity() {
+			return severity;
+		}
+
+
+		public Resource getShape() {
+			return shape;
+		}
+
+
+		@Override
+		public boolean equals(Object obj) {
+			if(obj instanceof Group) {
+				Group other = (Group) obj;
+				return component.equals(other.component) && Objects.equals(path, other.path) &&
+						resultType.equals(other.resultType) && Objects.equals(severity, other.severity) && shape.equals(other.shape);
+			}
+			else {
+				return false;
+			}
+		}
+
+
+		@Override
+		public int hashCode() {
+			return shape.hashCode() + 31 * component.hashCode() + Objects.hashCode(path);
+		}
+
+
+		@Override
+		public String toString() {
+			return count + " results of " + shape + " for " + component + (path != null ? " at " + path : "");
+		}
+	}
+}
@@ -35,6 +35,45 @@ public class ValidationUtil {
 	 * @return an instance of sh:ValidationReport in a results Model
 	 */
 	public static Resource validateModel(Model dataModel, Model shapesModel, boolean validateShapes) {
+		ValidationEngine engine = createEngine(dataModel, shapesModel, validateShapes);
+		try {
+			engine.applyEntailments();
+			return engine.validateAll();
+		}
+		catch(InterruptedException ex) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * Validates a given data Model like {@link #validateModel(Model, Model, boolean)}, but only
+	 * produces a summary with the number of results per shape, component, severity and path,
+	 * and a few sample results of each.
+	 * The messages of the samples are only produced when they are accessed.
+	 * @param dataModel  the data Model
+	 * @param shapesModel  the shapes Model
+	 * @param validateShapes  true to also validate any shapes in the data Model (false is faster)
+	 * @param sampleSize  the maximum number of sample results per group
+	 * @return the ValidationSummary
+	 */
+	public static ValidationSummary summarizeModel(Model dataModel, Model shapesModel, boolean validateShapes, int sampleSize) {
+		ValidationSummary summary = new ValidationSummary(sampleSize);
+		ValidationEngine engine = createEngine(dataModel, shapesModel, validateShapes);
+		engine.setDeferMessages(true);
+		engine.setResultSink(summary);
+		try {
+			engine.applyEntailments();
+			engine.validateAll();
+			return summary;
+		}
+		catch(InterruptedException ex) {
+			return null;
+		}
+	}
+
+
+	private static ValidationEngine createEngine(Model dataModel, Model shapesModel, boolean validateShapes) {
 		
 		// Ensure that the SHACL, DASH and TOSH graphs are present in the shapes Model
 		if(!shapesModel.contains(TOSH.hasShape, RDF.type, (RDFNode)null)) { // Heuristic
@@ -59,13 +98,6 @@ public class ValidationUtil {
 		if(!validateShapes) {
 			shapesGraph.setShapeFilter(new ExcludeMetaShapesFilter());
 		}
-		ValidationEngine engine = ValidationEngineFactory.get().create(dataset, shapesGraphURI, shapesGraph, null);
-		try {
-			engine.applyEntailments();
-			return engine.validateAll();
-		}
-		catch(InterruptedException ex) {
-			return null;
-		}
+		return ValidationEngineFactory.get().create(dataset, shapesGraphURI, shapesGraph, null);
 	}
 }
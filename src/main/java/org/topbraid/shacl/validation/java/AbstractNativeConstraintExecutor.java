@@ -0,0 +1,149 @@
+package org.topbraid.shacl.validation.java;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.sparql.expr.ExprEvalException;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.validation.ConstraintExecutor;
+import org.topbraid.shacl.validation.ValidationEngine;
+import org.topbraid.shacl.validation.ValidationResult;
+import org.topbraid.shacl.vocabulary.SH;
+import org.topbraid.spin.statistics.SPINStatistics;
+import org.topbraid.spin.statistics.SPINStatisticsManager;
+import org.topbraid.spin.util.JenaUtil;
+
+/**
+ * Base class of ConstraintExecutors that implement SHACL Core constraint components
+ * directly against the Jena Graph API instead of going through the SPARQL validators
+ * from the DASH namespace.
+ *
+ * The produced validation results (including the messages) are the same as those
+ * produced by the SPARQLComponentExecutor for the same constraint.
+ */
+public abstract class AbstractNativeConstraintExecutor implements ConstraintExecutor {
+
+	@Override
+	public void executeConstraint(Constraint constraint, ValidationEngine engine, List<RDFNode> focusNodes) {
+		long startTime = System.currentTimeMillis();
+		executeConstraint(constraint, engine, focusNodes, engine.getDataset().getDefaultModel());
+		if(SPINStatisticsManager.get().isRecording()) {
+			long endTime = System.currentTimeMillis();
+			long duration = endTime - startTime;
+			String label = getLabel(constraint);
+			SPINStatistics stats = new SPINStatistics(label, constraint.toString(), duration, startTime, constraint.getComponent().asNode());
+			SPINStatisticsManager.get().add(Collections.singletonList(stats));
+		}
+	}
+
+
+	protected abstract void executeConstraint(Constraint constraint, ValidationEngine engine, List<RDFNode> focusNodes, Model dataModel);
+
+
+	/**
+	 * Compares two nodes the same way as the SPARQL operators <, <=, > and >= do.
+	 * @param a  the left node
+	 * @param b  the right node
+	 * @return the comparison result or null if the nodes cannot be compared
+	 */
+	protected static Integer compare(Node a, Node b) {
+		try {
+			return NodeValue.compare(NodeValue.makeNode(a), NodeValue.makeNode(b));
+		}
+		catch(ExprEvalException ex) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * Creates a new sh:ValidationResult in the same way as a SPARQL-based executor would.
+	 * @param engine  the ValidationEngine
+	 * @param constraint  the Constraint that was violated
+	 * @param focusNode  the focus node
+	 * @param value  the value node or null
+	 */
+	protected void createValidationResult(ValidationEngine engine, Constraint constraint, RDFNode focusNode, RDFNode value) {
+		List<RDFNode> messages;
+		if(constraint.getShapeResource().hasProperty(SH.message)) {
+			messages = new LinkedList<>();
+			for(Statement s : constraint.getShapeResource().listProperties(SH.message).toList()) {
+				messages.add(s.getObject());
+			}
+		}
+		else {
+			Resource validator = constraint.getComponent().getValidator(SH.SPARQLExecutable, constraint.getContext());
+			List<Literal> templates = getMessageTemplates(validator);
+			if(templates.isEmpty()) {
+				templates = getMessageTemplates(constraint.getComponent());
+			}
+			messages = engine.createResultMessages(templates, () -> createMessageBindings(engine, constraint, focusNode, value));
+		}
+		Resource path = null;
+		if(constraint.getShapeResource().isPropertyShape()) {
+			path = JenaUtil.getResourceProperty(constraint.getShapeResource(), SH.path);
+		}
+		engine.addResult(new ValidationResult(SH.ValidationResult, constraint, focusNode, path, value, messages, null, null));
+	}
+
+
+	private static List<Literal> getMessageTemplates(Resource messageHolder) {
+		List<Literal> templates = new LinkedList<>();
+		if(messageHolder != null) {
+			for(Statement s : messageHolder.listProperties(SH.message).toList()) {
+				if(s.getObject().isLiteral()) {
+					templates.add(s.getLiteral());
+				}
+			}
+		}
+		return templates;
+	}
+
+
+	private QuerySolutionMap createMessageBindings(ValidationEngine engine, Constraint constraint, RDFNode focusNode, RDFNode value) {
+		QuerySolutionMap bindings = new QuerySolutionMap();
+		constraint.addBindings(bindings);
+		bindings.add(SH.currentShapeVar.getVarName(), constraint.getShapeResource());
+		bindings.add(SH.shapesGraphVar.getVarName(), ResourceFactory.createResource(engine.getShapesGraphURI().toString()));
+		Resource path = constraint.getShapeResource().getPath();
+		if(path != null && !path.isAnon()) {
+			bindings.add(SH.PATHVar.getName(), path);
+		}
+		bindings.add(SH.thisVar.getVarName(), focusNode);
+		if(value != null) {
+			bindings.add(SH.valueVar.getVarName(), value);
+		}
+		return bindings;
+	}
+
+
+	protected String getLabel(Constraint constraint) {
+		return constraint.getComponent().getLocalName() + " (native constraint executor)";
+	}
+
+
+	/**
+	 * Gets the distinct value nodes of a given focus node, using the path of the
+	 * constraint's shape for property shapes or the focus node itself for node shapes.
+	 * The value nodes are shared with the other constraints of the same shape,
+	 * see {@link ValidationEngine#getValueNodes(Constraint, RDFNode)}.
+	 * @param engine  the ValidationEngine
+	 * @param constraint  the Constraint
+	 * @param focusNode  the focus node
+	 * @return the value nodes
+	 */
+	protected Collection<RDFNode> getValueNodes(ValidationEngine engine, Constraint constraint, RDFNode focusNode) {
+		return engine.getValueNodes(constraint, focusNode);
+	}
+}
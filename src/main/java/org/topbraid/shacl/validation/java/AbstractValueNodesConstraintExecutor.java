@@ -0,0 +1,43 @@
+package org.topbraid.shacl.validation.java;
+
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.validation.ValidationEngine;
+
+/**
+ * Base class for native executors of components that test each value node individually,
+ * i.e. those that are backed by a sh:SPARQLAskValidator.
+ * Produces one result for each value node that does not conform.
+ */
+public abstract class AbstractValueNodesConstraintExecutor extends AbstractNativeConstraintExecutor {
+
+	@Override
+	protected void executeConstraint(Constraint constraint, ValidationEngine engine, List<RDFNode> focusNodes, Model dataModel) {
+		for(RDFNode focusNode : focusNodes) {
+			if(engine.isStopped(constraint)) {
+				break;
+			}
+			for(RDFNode valueNode : getValueNodes(engine, constraint, focusNode)) {
+				if(!conforms(valueNode.asNode(), dataModel)) {
+					createValidationResult(engine, constraint, focusNode, valueNode);
+					if(engine.isStopped(constraint)) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Checks whether a given value node conforms to the constraint.
+	 * @param valueNode  the value node to test
+	 * @param dataModel  the data Model
+	 * @return true if valueNode conforms
+	 */
+	protected abstract boolean conforms(Node valueNode, Model dataModel);
+}
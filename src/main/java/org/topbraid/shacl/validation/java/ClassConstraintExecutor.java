@@ -0,0 +1,26 @@
+package org.topbraid.shacl.validation.java;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.util.ClassHierarchy;
+
+/**
+ * Native implementation of sh:class, walking rdf:type/rdfs:subClassOf* in the data graph
+ * using the ClassHierarchy of the current validation run.
+ */
+public class ClassConstraintExecutor extends AbstractValueNodesConstraintExecutor {
+	
+	private Node classNode;
+	
+
+	public ClassConstraintExecutor(Constraint constraint) {
+		this.classNode = constraint.getParameterValue().asNode();
+	}
+
+
+	@Override
+	protected boolean conforms(Node valueNode, Model dataModel) {
+		return ClassHierarchy.get(dataModel.getGraph()).isInstanceOf(valueNode, classNode);
+	}
+}
@@ -0,0 +1,44 @@
+package org.topbraid.shacl.validation.java;
+
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.validation.ValidationEngine;
+import org.topbraid.shacl.vocabulary.SH;
+
+/**
+ * Native implementation of sh:minCount and sh:maxCount, counting the distinct value nodes
+ * of each focus node.
+ */
+public class CountConstraintExecutor extends AbstractNativeConstraintExecutor {
+	
+	private Node count;
+	
+	private boolean max;
+	
+
+	public CountConstraintExecutor(Constraint constraint) {
+		this.count = constraint.getParameterValue().asNode();
+		this.max = SH.MaxCountConstraintComponent.equals(constraint.getComponent());
+	}
+
+
+	@Override
+	protected void executeConstraint(Constraint constraint, ValidationEngine engine, List<RDFNode> focusNodes, Model dataModel) {
+		for(RDFNode focusNode : focusNodes) {
+			if(engine.isStopped(constraint)) {
+				break;
+			}
+			int size = getValueNodes(engine, constraint, focusNode).size();
+			Integer c = compare(NodeValue.makeInteger(size).asNode(), count);
+			if(c != null && c == (max ? Expr.CMP_GREATER : Expr.CMP_LESS)) {
+				createValidationResult(engine, constraint, focusNode, null);
+			}
+		}
+	}
+}
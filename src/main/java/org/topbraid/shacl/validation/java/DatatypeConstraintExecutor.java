@@ -0,0 +1,41 @@
+package org.topbraid.shacl.validation.java;
+
+import org.apache.jena.datatypes.RDFDatatype;
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.topbraid.shacl.engine.Constraint;
+
+/**
+ * Native implementation of sh:datatype, following tosh:hasDatatype: the value must be
+ * a literal with the given datatype and, if the datatype is known, a valid lexical form.
+ */
+public class DatatypeConstraintExecutor extends AbstractValueNodesConstraintExecutor {
+	
+	private String datatypeURI;
+	
+	private RDFDatatype datatype;
+	
+
+	public DatatypeConstraintExecutor(Constraint constraint) {
+		Node node = constraint.getParameterValue().asNode();
+		if(node.isURI()) {
+			this.datatypeURI = node.getURI();
+			this.datatype = TypeMapper.getInstance().getTypeByName(datatypeURI);
+		}
+	}
+
+
+	@Override
+	protected boolean conforms(Node valueNode, Model dataModel) {
+		if(datatypeURI == null || !valueNode.isLiteral() || !datatypeURI.equals(valueNode.getLiteralDatatypeURI())) {
+			return false;
+		}
+		else if(datatype == null) {
+			return true;
+		}
+		else {
+			return datatype.isValid(valueNode.getLiteralLexicalForm());
+		}
+	}
+}
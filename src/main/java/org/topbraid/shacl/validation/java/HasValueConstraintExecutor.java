@@ -0,0 +1,66 @@
+package org.topbraid.shacl.validation.java;
+
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.sparql.expr.ExprEvalException;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.validation.ValidationEngine;
+
+/**
+ * Native implementation of sh:hasValue.
+ * For property shapes one result is produced per focus node that does not have the value.
+ * For node shapes the focus node must be equal to the value, as with the SPARQL = operator.
+ */
+public class HasValueConstraintExecutor extends AbstractNativeConstraintExecutor {
+	
+	private Node hasValue;
+	
+
+	public HasValueConstraintExecutor(Constraint constraint) {
+		this.hasValue = constraint.getParameterValue().asNode();
+	}
+
+
+	@Override
+	protected void executeConstraint(Constraint constraint, ValidationEngine engine, List<RDFNode> focusNodes, Model dataModel) {
+		boolean propertyShape = constraint.getShapeResource().isPropertyShape();
+		for(RDFNode focusNode : focusNodes) {
+			if(engine.isStopped(constraint)) {
+				break;
+			}
+			if(propertyShape) {
+				if(!hasValue(engine, constraint, focusNode)) {
+					createValidationResult(engine, constraint, focusNode, null);
+				}
+			}
+			else if(!isEqual(focusNode.asNode())) {
+				createValidationResult(engine, constraint, focusNode, focusNode);
+			}
+		}
+	}
+	
+	
+	private boolean hasValue(ValidationEngine engine, Constraint constraint, RDFNode focusNode) {
+		for(RDFNode valueNode : getValueNodes(engine, constraint, focusNode)) {
+			Node node = valueNode.asNode();
+			if(node.equals(hasValue) || (node.isLiteral() && node.sameValueAs(hasValue))) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	private boolean isEqual(Node node) {
+		try {
+			return NodeValue.sameAs(NodeValue.makeNode(node), NodeValue.makeNode(hasValue));
+		}
+		catch(ExprEvalException ex) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package org.topbraid.shacl.validation.java;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.topbraid.shacl.engine.Constraint;
+
+/**
+ * Native implementation of sh:in.
+ * Literals are matched by value, like the triple pattern in dash:isIn does.
+ */
+public class InConstraintExecutor extends AbstractValueNodesConstraintExecutor {
+	
+	private List<Node> literals = new LinkedList<>();
+	
+	private Set<Node> members = new HashSet<>();
+	
+
+	public InConstraintExecutor(Constraint constraint) {
+		for(RDFNode member : NativeUtil.getListMembers(constraint.getParameterValue())) {
+			Node node = member.asNode();
+			members.add(node);
+			if(node.isLiteral()) {
+				literals.add(node);
+			}
+		}
+	}
+
+
+	@Override
+	protected boolean conforms(Node valueNode, Model dataModel) {
+		if(members.contains(valueNode)) {
+			return true;
+		}
+		else if(valueNode.isLiteral()) {
+			for(Node literal : literals) {
+				if(literal.sameValueAs(valueNode)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,43 @@
+package org.topbraid.shacl.validation.java;
+
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.sparql.expr.ExprEvalException;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.expr.nodevalue.NodeFunctions;
+import org.topbraid.shacl.engine.Constraint;
+
+/**
+ * Native implementation of sh:languageIn, using the SPARQL langMatches function.
+ */
+public class LanguageInConstraintExecutor extends AbstractValueNodesConstraintExecutor {
+	
+	private List<RDFNode> languages;
+	
+
+	public LanguageInConstraintExecutor(Constraint constraint) {
+		this.languages = NativeUtil.getListMembers(constraint.getParameterValue());
+	}
+
+
+	@Override
+	protected boolean conforms(Node valueNode, Model dataModel) {
+		if(valueNode.isLiteral()) {
+			NodeValue lang = NodeValue.makeString(valueNode.getLiteralLanguage());
+			for(RDFNode language : languages) {
+				try {
+					if(NodeFunctions.langMatches(lang, NodeValue.makeNode(language.asNode())).getBoolean()) {
+						return true;
+					}
+				}
+				catch(ExprEvalException ex) {
+					// Same as a FILTER error in SPARQL: no match
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,46 @@
+package org.topbraid.shacl.validation.java;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Helper methods shared by the native constraint executors.
+ */
+class NativeUtil {
+
+	/**
+	 * Collects the members of an rdf:List, following the same triples as the
+	 * SPARQL path (rdf:rest*)/rdf:first.
+	 * @param list  the head of the list
+	 * @return the members of the list
+	 */
+	static List<RDFNode> getListMembers(RDFNode list) {
+		List<RDFNode> results = new LinkedList<>();
+		if(list instanceof Resource) {
+			Set<Resource> visited = new HashSet<>();
+			List<Resource> queue = new LinkedList<>();
+			queue.add((Resource)list);
+			while(!queue.isEmpty()) {
+				Resource cell = queue.remove(0);
+				if(visited.add(cell)) {
+					for(Statement s : cell.listProperties(RDF.first).toList()) {
+						results.add(s.getObject());
+					}
+					for(Statement s : cell.listProperties(RDF.rest).toList()) {
+						if(s.getObject().isResource()) {
+							queue.add(s.getResource());
+						}
+					}
+				}
+			}
+		}
+		return results;
+	}
+}
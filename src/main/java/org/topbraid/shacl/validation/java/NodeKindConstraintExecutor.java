@@ -0,0 +1,41 @@
+package org.topbraid.shacl.validation.java;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.vocabulary.SH;
+
+/**
+ * Native implementation of sh:nodeKind.
+ */
+public class NodeKindConstraintExecutor extends AbstractValueNodesConstraintExecutor {
+	
+	private boolean blankNodes;
+	
+	private boolean iris;
+	
+	private boolean literals;
+	
+
+	public NodeKindConstraintExecutor(Constraint constraint) {
+		RDFNode nodeKind = constraint.getParameterValue();
+		this.blankNodes = SH.BlankNode.equals(nodeKind) || SH.BlankNodeOrIRI.equals(nodeKind) || SH.BlankNodeOrLiteral.equals(nodeKind);
+		this.iris = SH.IRI.equals(nodeKind) || SH.BlankNodeOrIRI.equals(nodeKind) || SH.IRIOrLiteral.equals(nodeKind);
+		this.literals = SH.Literal.equals(nodeKind) || SH.BlankNodeOrLiteral.equals(nodeKind) || SH.IRIOrLiteral.equals(nodeKind);
+	}
+
+
+	@Override
+	protected boolean conforms(Node valueNode, Model dataModel) {
+		if(valueNode.isURI()) {
+			return iris;
+		}
+		else if(valueNode.isLiteral()) {
+			return literals;
+		}
+		else {
+			return blankNodes;
+		}
+	}
+}
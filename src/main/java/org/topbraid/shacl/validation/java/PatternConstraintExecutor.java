@@ -0,0 +1,36 @@
+package org.topbraid.shacl.validation.java;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.expr.RegexJava;
+import org.apache.jena.sparql.expr.nodevalue.NodeFunctions;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.vocabulary.SH;
+import org.topbraid.spin.util.JenaUtil;
+
+/**
+ * Native implementation of sh:pattern (with optional sh:flags).
+ * The regular expression is compiled only once per constraint.
+ */
+public class PatternConstraintExecutor extends AbstractValueNodesConstraintExecutor {
+	
+	private RegexJava regex;
+	
+
+	public PatternConstraintExecutor(Constraint constraint) {
+		String pattern = JenaUtil.getStringProperty(constraint.getShapeResource(), SH.pattern);
+		String flags = JenaUtil.getStringProperty(constraint.getShapeResource(), SH.flags);
+		try {
+			this.regex = new RegexJava(pattern, flags);
+		}
+		catch(RuntimeException ex) {
+			// Invalid pattern: like the SPARQL validator, no value conforms
+		}
+	}
+
+
+	@Override
+	protected boolean conforms(Node valueNode, Model dataModel) {
+		return regex != null && !valueNode.isBlank() && regex.match(NodeFunctions.str(valueNode));
+	}
+}
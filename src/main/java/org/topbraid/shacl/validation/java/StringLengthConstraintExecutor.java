@@ -0,0 +1,45 @@
+package org.topbraid.shacl.validation.java;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.expr.nodevalue.NodeFunctions;
+import org.apache.jena.sparql.expr.nodevalue.XSDFuncOp;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.vocabulary.SH;
+
+/**
+ * Native implementation of sh:minLength and sh:maxLength.
+ */
+public class StringLengthConstraintExecutor extends AbstractValueNodesConstraintExecutor {
+	
+	private Node length;
+	
+	private boolean max;
+	
+
+	public StringLengthConstraintExecutor(Constraint constraint) {
+		this.length = constraint.getParameterValue().asNode();
+		this.max = SH.MaxLengthConstraintComponent.equals(constraint.getComponent());
+	}
+
+
+	@Override
+	protected boolean conforms(Node valueNode, Model dataModel) {
+		if(valueNode.isBlank()) {
+			return false;
+		}
+		Node strlen = XSDFuncOp.strlen(NodeValue.makeString(NodeFunctions.str(valueNode))).asNode();
+		Integer c = compare(strlen, length);
+		if(c == null) {
+			return false;
+		}
+		else if(max) {
+			return c == Expr.CMP_LESS || c == Expr.CMP_EQUAL;
+		}
+		else {
+			return c == Expr.CMP_GREATER || c == Expr.CMP_EQUAL;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package org.topbraid.shacl.validation.java;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.expr.Expr;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.vocabulary.SH;
+
+/**
+ * Native implementation of sh:minExclusive, sh:minInclusive, sh:maxExclusive and sh:maxInclusive,
+ * using the same comparison as the SPARQL operators.
+ * Values that cannot be compared with the bound are reported as violations.
+ */
+public class ValueRangeConstraintExecutor extends AbstractValueNodesConstraintExecutor {
+	
+	private Node bound;
+	
+	private boolean inclusive;
+	
+	private boolean max;
+	
+
+	public ValueRangeConstraintExecutor(Constraint constraint) {
+		this.bound = constraint.getParameterValue().asNode();
+		this.inclusive = SH.MinInclusiveConstraintComponent.equals(constraint.getComponent()) || SH.MaxInclusiveConstraintComponent.equals(constraint.getComponent());
+		this.max = SH.MaxExclusiveConstraintComponent.equals(constraint.getComponent()) || SH.MaxInclusiveConstraintComponent.equals(constraint.getComponent());
+	}
+
+
+	@Override
+	protected boolean conforms(Node valueNode, Model dataModel) {
+		Integer c = compare(valueNode, bound);
+		if(c == null) {
+			return false;
+		}
+		else if(c == Expr.CMP_EQUAL) {
+			return inclusive;
+		}
+		else if(max) {
+			return c == Expr.CMP_LESS;
+		}
+		else {
+			return c == Expr.CMP_GREATER;
+		}
+	}
+}
@@ -2,6 +2,7 @@ package org.topbraid.shacl.validation.js;
 
 import java.net.URI;
 import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -9,11 +10,12 @@ import org.apache.jena.graph.Node;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
 import org.apache.jena.rdf.model.Statement;
-import org.topbraid.shacl.arq.SHACLPaths;
 import org.topbraid.shacl.engine.Constraint;
 import org.topbraid.shacl.js.JSGraph;
 import org.topbraid.shacl.js.JSScriptEngine;
@@ -25,6 +27,7 @@ import org.topbraid.shacl.model.SHJSExecutable;
 import org.topbraid.shacl.util.FailureLog;
 import org.topbraid.shacl.validation.ConstraintExecutor;
 import org.topbraid.shacl.validation.ValidationEngine;
+import org.topbraid.shacl.validation.ValidationResult;
 import org.topbraid.shacl.vocabulary.DASH;
 import org.topbraid.shacl.vocabulary.SH;
 import org.topbraid.spin.statistics.SPINStatistics;
@@ -64,12 +67,18 @@ public abstract class AbstractJSExecutor implements ConstraintExecutor {
 			
 			long startTime = System.currentTimeMillis();
 			for(RDFNode theFocusNode : focusNodes) {
+				if(validationEngine.isStopped(constraint)) {
+					break;
+				}
 				Object resultObj;
 				bindings.add(SH.thisVar.getVarName(), theFocusNode);
 				
 				List<RDFNode> valueNodes = getValueNodes(validationEngine, constraint, bindings, theFocusNode);
 				
 				for(RDFNode valueNode : valueNodes) {
+					if(validationEngine.isStopped(constraint)) {
+						break;
+					}
 					bindings.add("value", valueNode);
 					resultObj = jsEngine.invokeFunction(functionName, bindings);
 					handleJSResultObject(resultObj, validationEngine, constraint, theFocusNode, valueNode, executable, bindings);
@@ -85,11 +94,9 @@ public abstract class AbstractJSExecutor implements ConstraintExecutor {
 		}
 		catch(Exception ex) {
 			ex.printStackTrace();
-			Resource result = validationEngine.createResult(DASH.FailureResult, constraint, null);
-			result.addProperty(SH.resultMessage, "Could not execute JavaScript constraint");
-			if(SH.JSConstraintComponent.equals(constraint.getComponent())) {
-				result.addProperty(SH.sourceConstraint, constraint.getParameterValue());
-			}
+			List<RDFNode> messages = Collections.singletonList(ResourceFactory.createTypedLiteral("Could not execute JavaScript constraint"));
+			RDFNode sourceConstraint = SH.JSConstraintComponent.equals(constraint.getComponent()) ? constraint.getParameterValue() : null;
+			validationEngine.addResult(new ValidationResult(DASH.FailureResult, constraint, null, null, null, messages, sourceConstraint, null));
 			FailureLog.get().logFailure("Could not execute JavaScript function \"" + functionName + "\": " + ex);
 		}
 		finally {
@@ -110,45 +117,52 @@ public abstract class AbstractJSExecutor implements ConstraintExecutor {
 
 	
 	@SuppressWarnings("rawtypes")
-	private void addDefaultMessages(ValidationEngine engine, Resource messageHolder, Resource fallback, Resource result, 
+	private List<RDFNode> createDefaultMessages(ValidationEngine engine, Resource messageHolder, Resource fallback,
 				QuerySolution bindings, Map resultObject) {
-		boolean found = false;
+		List<Literal> templates = new LinkedList<>();
 		for(Statement s : messageHolder.listProperties(SH.message).toList()) {
 			if(s.getObject().isLiteral()) {
-				QuerySolutionMap map = new QuerySolutionMap();
-				map.addAll(bindings);
-				if(resultObject != null) {
-					for(Object keyObject : resultObject.keySet()) {
-						String key = (String) keyObject;
-						Object value = map.get(key);
-						if(value != null) {
-							Node valueNode = JSFactory.getNode(value);
-							if(valueNode != null) {
-								map.add(key, result.getModel().asRDFNode(valueNode));
-							}
-						}
+				templates.add(s.getLiteral());
+			}
+		}
+		if(templates.isEmpty() && fallback != null) {
+			return createDefaultMessages(engine, fallback, null, bindings, resultObject);
+		}
+		else if(templates.isEmpty()) {
+			return new LinkedList<>();
+		}
+		// Copied right away because the bindings are reused for the next value nodes
+		QuerySolutionMap map = new QuerySolutionMap();
+		map.addAll(bindings);
+		if(resultObject != null) {
+			for(Object keyObject : resultObject.keySet()) {
+				String key = (String) keyObject;
+				Object value = map.get(key);
+				if(value != null) {
+					Node valueNode = JSFactory.getNode(value);
+					if(valueNode != null) {
+						map.add(key, getModel(engine).asRDFNode(valueNode));
 					}
 				}
-				engine.addResultMessage(result, s.getLiteral(), map);
-				found = true;
 			}
 		}
-		if(!found && fallback != null) {
-			addDefaultMessages(engine, fallback, null, result, bindings, resultObject);
-		}
+		return engine.createResultMessages(templates, () -> map);
 	}
 
 
-	private Resource createValidationResult(ValidationEngine engine, Constraint constraint, RDFNode focusNode) {
-		Resource result = engine.createResult(SH.ValidationResult, constraint, focusNode);
-		if(SH.JSConstraintComponent.equals(constraint.getComponent())) {
-			result.addProperty(SH.sourceConstraint, constraint.getParameterValue());
-		}
-		Resource path = JenaUtil.getResourceProperty(constraint.getShapeResource(), SH.path);
-		if(path != null) {
-			result.addProperty(SH.resultPath, SHACLPaths.clonePath(path, result.getModel()));
+	// The Model to wrap the nodes produced by the scripts, even for engines without a report
+	private static Model getModel(ValidationEngine engine) {
+		Resource report = engine.getReport();
+		return report != null ? report.getModel() : engine.getDataset().getDefaultModel();
+	}
+	
+	
+	private void createValidationResult(ValidationEngine engine, Constraint constraint, RDFNode focusNode, RDFNode path, RDFNode value, List<RDFNode> messages) {
+		RDFNode sourceConstraint = SH.JSConstraintComponent.equals(constraint.getComponent()) ? constraint.getParameterValue() : null;
+		if(path == null) {
+			path = JenaUtil.getResourceProperty(constraint.getShapeResource(), SH.path);
 		}
-		return result;
+		engine.addResult(new ValidationResult(SH.ValidationResult, constraint, focusNode, path, value, messages, sourceConstraint, null));
 	}
 	
 	
@@ -164,20 +178,15 @@ public abstract class AbstractJSExecutor implements ConstraintExecutor {
 		}
 		else if(resultObj instanceof Boolean) {
 			if(!(Boolean)resultObj) {
-				Resource result = createValidationResult(engine, constraint, focusNode);
-				if(valueNode != null) {
-					result.addProperty(SH.value, valueNode);
-				}
-				addDefaultMessages(engine, messageHolder, constraint.getComponent(), result, bindings, null);
+				List<RDFNode> messages = createDefaultMessages(engine, messageHolder, constraint.getComponent(), bindings, null);
+				createValidationResult(engine, constraint, focusNode, null, valueNode, messages);
 			}
 		}
 		else if(resultObj instanceof String) {
-			Resource result = createValidationResult(engine, constraint, focusNode);
-			result.addProperty(SH.resultMessage, (String)resultObj);
-			if(valueNode != null) {
-				result.addProperty(SH.value, valueNode);
-			}
-			addDefaultMessages(engine, messageHolder, constraint.getComponent(), result, bindings, null);
+			List<RDFNode> messages = new LinkedList<>();
+			messages.add(ResourceFactory.createTypedLiteral((String)resultObj));
+			messages.addAll(createDefaultMessages(engine, messageHolder, constraint.getComponent(), bindings, null));
+			createValidationResult(engine, constraint, focusNode, null, valueNode, messages);
 		}
 	}
 	
@@ -185,33 +194,36 @@ public abstract class AbstractJSExecutor implements ConstraintExecutor {
 	@SuppressWarnings("rawtypes")
 	private void createValidationResultFromJSObject(ValidationEngine engine, Constraint constraint, RDFNode focusNode,
 			Resource messageHolder, QuerySolution bindings, Object ro) {
-		Resource result = createValidationResult(engine, constraint, focusNode);
+		List<RDFNode> messages = new LinkedList<>();
+		RDFNode value = null;
+		RDFNode path = null;
 		if(ro instanceof Map) {
-			Object value = ((Map)ro).get("value");
-			if(value instanceof JSTerm) {
-				Node resultValueNode = JSFactory.getNode(value);
+			Object valueObject = ((Map)ro).get("value");
+			if(valueObject instanceof JSTerm) {
+				Node resultValueNode = JSFactory.getNode(valueObject);
 				if(resultValueNode != null) {
-					result.addProperty(SH.value, result.getModel().asRDFNode(resultValueNode));
+					value = getModel(engine).asRDFNode(resultValueNode);
 				}
 			}
 			Object message = ((Map)ro).get("message");
 			if(message instanceof String) {
-				result.addProperty(SH.resultMessage, (String)message);
+				messages.add(ResourceFactory.createTypedLiteral((String)message));
 			}
-			Object path = ((Map)ro).get("path");
-			if(path != null) {
-				Node pathNode = JSFactory.getNode(path);
+			Object pathObject = ((Map)ro).get("path");
+			if(pathObject != null) {
+				Node pathNode = JSFactory.getNode(pathObject);
 				if(pathNode != null && pathNode.isURI()) {
-					result.addProperty(SH.resultPath, result.getModel().asRDFNode(pathNode));
+					path = ResourceFactory.createResource(pathNode.getURI());
 				}
 			}
 		}
 		else if(ro instanceof String) {
-			result.addProperty(SH.resultMessage, (String)ro);
+			messages.add(ResourceFactory.createTypedLiteral((String)ro));
 		}
-		if(!result.hasProperty(SH.resultMessage)) {
-			addDefaultMessages(engine, messageHolder, constraint.getComponent(), result, bindings, ro instanceof Map ? (Map)ro : null);
+		if(messages.isEmpty()) {
+			messages = createDefaultMessages(engine, messageHolder, constraint.getComponent(), bindings, ro instanceof Map ? (Map)ro : null);
 		}
+		createValidationResult(engine, constraint, focusNode, path, value, messages);
 	}
 	
 	
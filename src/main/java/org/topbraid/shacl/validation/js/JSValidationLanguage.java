@@ -25,4 +25,10 @@ public class JSValidationLanguage implements ValidationLanguage {
 	public ConstraintExecutor createExecutor(Constraint constraint, ValidationEngine validationEngine) {
 		return new JSComponentExecutor();
 	}
+
+
+	@Override
+	public boolean isEngineIndependent() {
+		return true;
+	}
 }
@@ -10,9 +10,12 @@ import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.sparql.expr.ExprNotComparableException;
 import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.vocabulary.RDF;
 import org.topbraid.shacl.engine.ShapesGraph;
 import org.topbraid.shacl.js.model.JSTerm;
+import org.topbraid.shacl.validation.ConformanceCache;
 import org.topbraid.shacl.validation.ValidationEngineFactory;
+import org.topbraid.shacl.vocabulary.DASH;
 import org.topbraid.shacl.vocabulary.SH;
 
 public class SHACLObject {
@@ -39,11 +42,16 @@ public class SHACLObject {
 	
 	
 	public boolean nodeConformsToShape(JSTerm node, JSTerm shape) {
-		Model shapesModel = dataset.getNamedModel(shapesGraphURI.toString());
-		ShapesGraph shapesGraph = new ShapesGraph(shapesModel);
-		List<RDFNode> focusNodes = Collections.singletonList(dataset.getDefaultModel().asRDFNode(node.getNode()));
-		Resource report = ValidationEngineFactory.get().create(dataset, shapesGraphURI, shapesGraph, null).
-				validateNodesAgainstShape(focusNodes, shape.getNode());
-		return !report.hasProperty(SH.result);
+		return ConformanceCache.nodeConformsToShape(node.getNode(), shape.getNode(), shapesGraphURI, dataset.getDefaultModel().getGraph(), () -> {
+			Model shapesModel = dataset.getNamedModel(shapesGraphURI.toString());
+			ShapesGraph shapesGraph = new ShapesGraph(shapesModel);
+			List<RDFNode> focusNodes = Collections.singletonList(dataset.getDefaultModel().asRDFNode(node.getNode()));
+			Resource report = ValidationEngineFactory.get().create(dataset, shapesGraphURI, shapesGraph, null).
+					validateNodesAgainstShape(focusNodes, shape.getNode());
+			if(report.getModel().contains(null, RDF.type, DASH.FailureResult)) {
+				ConformanceCache.markUncacheable();
+			}
+			return !report.hasProperty(SH.result);
+		});
 	}
 }
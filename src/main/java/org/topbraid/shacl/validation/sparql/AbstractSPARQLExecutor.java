@@ -3,19 +3,37 @@ package org.topbraid.shacl.validation.sparql;
 import java.net.URI;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
 
 import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryCancelledException;
 import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryParseException;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.QuerySolutionMap;
 import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
 import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.path.Path;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementBind;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementVisitorBase;
+import org.apache.jena.sparql.syntax.ElementWalker;
 import org.apache.jena.vocabulary.RDF;
 import org.topbraid.shacl.arq.SHACLPaths;
 import org.topbraid.shacl.arq.functions.HasShapeFunction;
@@ -25,6 +43,7 @@ import org.topbraid.shacl.util.SHACLUtil;
 import org.topbraid.shacl.validation.ConstraintExecutor;
 import org.topbraid.shacl.validation.SHACLException;
 import org.topbraid.shacl.validation.ValidationEngine;
+import org.topbraid.shacl.validation.ValidationResult;
 import org.topbraid.shacl.vocabulary.DASH;
 import org.topbraid.shacl.vocabulary.SH;
 import org.topbraid.spin.arq.ARQFactory;
@@ -33,21 +52,45 @@ import org.topbraid.spin.statistics.SPINStatisticsManager;
 import org.topbraid.spin.system.SPINLabels;
 import org.topbraid.spin.util.JenaDatatypes;
 import org.topbraid.spin.util.JenaUtil;
+import org.topbraid.spin.util.NestedQueries;
 
 public abstract class AbstractSPARQLExecutor implements ConstraintExecutor {
 	
+	// Maximum number of focus nodes that are validated by a single query using a VALUES block for $this.
+	// Set to 1 to always execute one query per focus node.
+	public static int batchSize = 500;
+	
 	// Flag to generate sh:details for all violations.
 	public static boolean createDetails = false;
 	
-	private Query query;
+	private static final int capacity = 10000;
+	
+	@SuppressWarnings("serial")
+	private static class PreparedQueriesCache extends LinkedHashMap<PreparedQueryKey,Query> {
+
+		PreparedQueriesCache() {
+			super(capacity + 1, 1.1f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Entry<PreparedQueryKey, Query> eldest) {
+			return size() > capacity;
+		}
+	};
+	
+	// Queries with $PATH substituted, for each validator query and complex path
+	private static Map<PreparedQueryKey,Query> preparedQueries = Collections.synchronizedMap(new PreparedQueriesCache());
+	
+	private final Query query;
 	
-	private String queryString;
+	private final String queryString;
 	
 	
 	protected AbstractSPARQLExecutor(Constraint constraint) {
 		this.queryString = getSPARQL(constraint);
+		Query query;
 		try {
-			this.query = ARQFactory.get().createQuery(queryString);
+			query = ARQFactory.get().createQuery(queryString);
 		}
 		catch(QueryParseException ex) {
 			throw new SHACLException("Invalid SPARQL constraint (" + ex.getLocalizedMessage() + "):\n" + queryString);
@@ -56,6 +99,37 @@ public abstract class AbstractSPARQLExecutor implements ConstraintExecutor {
 		if(!query.isSelectType()) {
 			throw new IllegalArgumentException("SHACL constraints must be SELECT queries");
 		}
+		
+		// Complex paths are inserted into the query once, so that the executor has no mutable state
+		// and can be shared between threads
+		Resource path = constraint.getShapeResource().getPath();
+		if(path != null && path.isAnon()) {
+			query = getQueryWithPath(query, queryString, constraint);
+		}
+		synchronized(query) {
+			query.setResultVars(); // Otherwise done lazily by each QueryExecution
+		}
+		this.query = query;
+	}
+	
+	
+	private static Query getQueryWithPath(Query query, String queryString, Constraint constraint) {
+		Path jenaPath = constraint.getShape().getJenaPath();
+		PreparedQueryKey key = new PreparedQueryKey(queryString, jenaPath);
+		Query result = preparedQueries.get(key);
+		if(result == null) {
+			if(jenaPath != null) {
+				result = SPARQLSubstitutions.substitutePaths(query, jenaPath);
+			}
+			if(result == null) {
+				String pathString = SHACLPaths.getPathString(JenaUtil.getResourceProperty(constraint.getShapeResource(), SH.path));
+				result = SPARQLSubstitutions.substitutePaths(query, pathString, constraint.getShapeResource().getModel());
+			}
+			else if(jenaPath != null) {
+				preparedQueries.put(key, result);
+			}
+		}
+		return result;
 	}
 
 	
@@ -68,14 +142,8 @@ public abstract class AbstractSPARQLExecutor implements ConstraintExecutor {
 		bindings.add(SH.shapesGraphVar.getVarName(), ResourceFactory.createResource(engine.getShapesGraphURI().toString()));
 		
 		Resource path = constraint.getShapeResource().getPath();
-		if(path != null) {
-			if(path.isAnon()) {
-				String pathString = SHACLPaths.getPathString(JenaUtil.getResourceProperty(constraint.getShapeResource(), SH.path));
-				query = SPARQLSubstitutions.substitutePaths(query, pathString, constraint.getShapeResource().getModel());
-			}
-			else {
-				bindings.add(SH.PATHVar.getName(), path);
-			}
+		if(path != null && !path.isAnon()) {
+			bindings.add(SH.PATHVar.getName(), path);
 		}
 		
 		URI oldShapesGraphURI = HasShapeFunction.getShapesGraph();
@@ -87,15 +155,41 @@ public abstract class AbstractSPARQLExecutor implements ConstraintExecutor {
 		
 		try {
 			long startTime = System.currentTimeMillis();
-			for(RDFNode focusNode : focusNodes) {
-				bindings.add(SH.thisVar.getVarName(), focusNode); // Overwrite any previous binding
-				QueryExecution qexec = SPARQLSubstitutions.createQueryExecution(query, engine.getDataset(), bindings);
-				executeSelectQuery(engine, constraint, nestedResults, focusNode, qexec, bindings);
-			}			
+			if(focusNodes.size() > 1 && canBatch(query)) {
+				for(int start = 0; start < focusNodes.size() && !engine.isStopped(constraint); start += batchSize) {
+					List<RDFNode> batch = focusNodes.subList(start, Math.min(focusNodes.size(), start + batchSize));
+					executeBatch(engine, constraint, nestedResults, batch, bindings);
+				}
+			}
+			else {
+				for(RDFNode focusNode : focusNodes) {
+					if(engine.isStopped(constraint)) {
+						break;
+					}
+					bindings.add(SH.thisVar.getVarName(), focusNode); // Overwrite any previous binding
+					QueryExecution qexec = SPARQLSubstitutions.createQueryExecution(query, engine.getDataset(), bindings);
+					if(!engine.beginQuery(qexec, constraint)) {
+						qexec.close();
+						break;
+					}
+					try {
+						executeSelectQuery(engine, constraint, nestedResults, focusNode, qexec, bindings);
+					}
+					catch(QueryCancelledException ex) {
+						if(!engine.isStopped(constraint)) {
+							throw ex;
+						}
+					}
+					finally {
+						engine.endQuery(qexec);
+					}
+				}
+			}
 			if(SPINStatisticsManager.get().isRecording()) {
 				long endTime = System.currentTimeMillis();
 				long duration = endTime - startTime;
 				String label = getLabel(constraint);
+				String queryString = this.queryString;
 				Iterator<String> varNames = bindings.varNames();
 				if(varNames.hasNext()) {
 					queryString += "\nBindings:";
@@ -115,6 +209,133 @@ public abstract class AbstractSPARQLExecutor implements ConstraintExecutor {
 	}
 
 	
+	/**
+	 * Checks whether a given query can be executed for multiple focus nodes at once,
+	 * by joining its WHERE clause with a VALUES block for $this.
+	 * This is only done for queries that do not use $this in nested blocks
+	 * and that do not use features where such a join would produce different results.
+	 * @param query  the query to check
+	 * @return true if the query can be executed in batches
+	 */
+	private static boolean canBatch(Query query) {
+		if(batchSize < 2 || createDetails || query.hasAggregators() || query.hasGroupBy() || query.hasHaving() || 
+				query.hasLimit() || query.hasOffset() || query.hasValues()) {
+			return false;
+		}
+		if(NestedQueries.hasNestedBlocksUsingThis(query.getQueryPattern())) {
+			return false;
+		}
+		final boolean[] assignsThis = { false };
+		ElementWalker.walk(query.getQueryPattern(), new ElementVisitorBase() {
+			@Override
+			public void visit(ElementBind el) {
+				if(SH.thisVar.getVarName().equals(el.getVar().getVarName())) {
+					assignsThis[0] = true;
+				}
+			}
+			@Override
+			public void visit(ElementData el) {
+				assignsThis[0] = true;
+			}
+		});
+		return !assignsThis[0];
+	}
+	
+	
+	private static Query createBatchQuery(Query query, Iterable<RDFNode> focusNodes) {
+		Var thisVar = Var.alloc(SH.thisVar.getVarName());
+		ElementData data = new ElementData();
+		data.add(thisVar);
+		for(RDFNode focusNode : focusNodes) {
+			data.add(BindingFactory.binding(thisVar, focusNode.asNode()));
+		}
+		ElementGroup group = new ElementGroup();
+		group.addElement(data);
+		Element pattern = query.getQueryPattern();
+		if(pattern instanceof ElementGroup) {
+			for(Element element : ((ElementGroup)pattern).getElements()) {
+				group.addElement(element);
+			}
+		}
+		else if(pattern != null) {
+			group.addElement(pattern);
+		}
+		Query batchQuery = query.cloneQuery();
+		batchQuery.setQueryPattern(group);
+		return batchQuery;
+	}
+	
+	
+	/**
+	 * Executes the query for a batch of focus nodes and then produces the results for
+	 * each focus node in the same order as if the query had been executed individually.
+	 */
+	private void executeBatch(ValidationEngine engine, Constraint constraint, Model nestedResults,
+			List<RDFNode> focusNodes, QuerySolutionMap bindings) {
+		
+		Set<RDFNode> distinctFocusNodes = new LinkedHashSet<>(focusNodes);
+		Query batchQuery = createBatchQuery(query, distinctFocusNodes);
+		QuerySolutionMap batchBindings = new QuerySolutionMap();
+		Iterator<String> varNames = bindings.varNames();
+		while(varNames.hasNext()) {
+			String varName = varNames.next();
+			if(!SH.thisVar.getVarName().equals(varName)) {
+				batchBindings.add(varName, bindings.get(varName));
+			}
+		}
+		
+		Map<RDFNode,List<QuerySolution>> map = new LinkedHashMap<>();
+		QueryExecution qexec = SPARQLSubstitutions.createQueryExecution(batchQuery, engine.getDataset(), batchBindings);
+		if(!engine.beginQuery(qexec, constraint)) {
+			qexec.close();
+			return;
+		}
+		try {
+			ResultSet rs = qexec.execSelect();
+			engine.startQuery(qexec, constraint);
+			if(!rs.getResultVars().contains("this")) {
+				throw new IllegalArgumentException("SELECT constraints must return $this");
+			}
+			while(rs.hasNext()) {
+				QuerySolution sol = rs.next();
+				RDFNode thisValue = sol.get(SH.thisVar.getVarName());
+				if(thisValue != null) {
+					List<QuerySolution> list = map.get(thisValue);
+					if(list == null) {
+						list = new LinkedList<>();
+						map.put(thisValue, list);
+					}
+					list.add(sol);
+				}
+			}
+		}
+		catch(QueryCancelledException ex) {
+			if(!engine.isStopped(constraint)) {
+				throw ex;
+			}
+			return;
+		}
+		finally {
+			engine.endQuery(qexec);
+			qexec.close();
+		}
+		
+		Resource messageHolder = getSPARQLExecutable(constraint);
+		for(RDFNode focusNode : focusNodes) {
+			if(engine.isStopped(constraint)) {
+				break;
+			}
+			List<QuerySolution> sols = map.get(focusNode);
+			if(sols != null) {
+				bindings.add(SH.thisVar.getVarName(), focusNode);
+				for(QuerySolution sol : sols) {
+					addResult(engine, constraint, nestedResults, focusNode, messageHolder, bindings, sol);
+				}
+			}
+		}
+	}
+	
+	
 	protected abstract void addBindings(Constraint constraint, QuerySolutionMap bindings);
 	
 	
@@ -136,6 +357,7 @@ public abstract class AbstractSPARQLExecutor implements ConstraintExecutor {
 			RDFNode focusNode, QueryExecution qexec, QuerySolution bindings) {
 		
 		ResultSet rs = qexec.execSelect();
+		engine.startQuery(qexec, constraint);
 		
 		if(!rs.getResultVars().contains("this")) {
 			qexec.close();
@@ -145,97 +367,113 @@ public abstract class AbstractSPARQLExecutor implements ConstraintExecutor {
 		Resource messageHolder = getSPARQLExecutable(constraint);
 		try {
 			if(rs.hasNext()) {
-				while(rs.hasNext()) {
-					QuerySolution sol = rs.next();
-					RDFNode thisValue = sol.get(SH.thisVar.getVarName());
-					if(thisValue != null) {
-						Resource resultType = SH.ValidationResult;
-						RDFNode selectMessage = sol.get(SH.message.getLocalName());
-						if(JenaDatatypes.TRUE.equals(sol.get(SH.failureVar.getName()))) {
-							resultType = DASH.FailureResult;
-							String message = getLabel(constraint);
-							message += " has produced ?" + SH.failureVar.getName();
-							if(focusNode != null) {
-								message += " for focus node ";
-								if(focusNode.isLiteral()) {
-									message += focusNode;
-								}
-								else {
-									message += SPINLabels.get().getLabel((Resource)focusNode);
-								}
-							}
-							FailureLog.get().logFailure(message);
-							selectMessage = ResourceFactory.createTypedLiteral("Validation Failure: Could not validate shape");
-						}
-						
-						Resource result = engine.createResult(resultType, constraint, thisValue);
-						if(SH.SPARQLConstraintComponent.equals(constraint.getComponent())) {
-							result.addProperty(SH.sourceConstraint, constraint.getParameterValue());
-						}
-						
-						if(selectMessage != null) {
-							result.addProperty(SH.resultMessage, selectMessage);
-						}
-						else if(constraint.getShapeResource().hasProperty(SH.message)) {
-							for(Statement s : constraint.getShapeResource().listProperties(SH.message).toList()) {
-								result.addProperty(SH.resultMessage, s.getObject());
-							}
-						}
-						else {
-							addDefaultMessages(engine, messageHolder, constraint.getComponent(), result, bindings, sol);
-						}
-						
-						RDFNode pathValue = sol.get(SH.pathVar.getVarName());
-						if(pathValue != null && pathValue.isURIResource()) {
-							result.addProperty(SH.resultPath, pathValue);
-						}
-						else if(constraint.getShapeResource().isPropertyShape()) {
-							Resource basePath = JenaUtil.getResourceProperty(constraint.getShapeResource(), SH.path);
-							result.addProperty(SH.resultPath, SHACLPaths.clonePath(basePath, result.getModel()));
-						}
-						
-						RDFNode selectValue = sol.get(SH.valueVar.getVarName());
-						if(selectValue != null) {
-							result.addProperty(SH.value, selectValue);
-						}
-						else if(SH.NodeShape.equals(constraint.getContext())) {
-							result.addProperty(SH.value, focusNode);
-						}
-						
-						if(createDetails) {
-							addDetails(result, nestedResults);
-						}
-					}
+				while(rs.hasNext() && !engine.isStopped(constraint)) {
+					addResult(engine, constraint, nestedResults, focusNode, messageHolder, bindings, rs.next());
 				}
 			}
 			else if(createDetails) {
-				Resource success = engine.createResult(DASH.SuccessResult, constraint, focusNode);
-				if(SH.SPARQLConstraintComponent.equals(constraint.getComponent())) {
-					success.addProperty(SH.sourceConstraint, constraint.getParameterValue());
-				}
-				addDetails(success, nestedResults);
+				RDFNode sourceConstraint = SH.SPARQLConstraintComponent.equals(constraint.getComponent()) ? constraint.getParameterValue() : null;
+				engine.addResult(new ValidationResult(DASH.SuccessResult, constraint, focusNode, null, null, 
+						Collections.emptyList(), sourceConstraint, copyDetails(nestedResults)));
 			}
 		}
 		finally {
 			qexec.close();
 		}
 	}
+	
+	
+	private void addResult(ValidationEngine engine, Constraint constraint, Model nestedResults,
+			RDFNode focusNode, Resource messageHolder, QuerySolution bindings, QuerySolution sol) {
+		RDFNode thisValue = sol.get(SH.thisVar.getVarName());
+		if(thisValue != null) {
+			Resource resultType = SH.ValidationResult;
+			RDFNode selectMessage = sol.get(SH.message.getLocalName());
+			if(JenaDatatypes.TRUE.equals(sol.get(SH.failureVar.getName()))) {
+				resultType = DASH.FailureResult;
+				String message = getLabel(constraint);
+				message += " has produced ?" + SH.failureVar.getName();
+				if(focusNode != null) {
+					message += " for focus node ";
+					if(focusNode.isLiteral()) {
+						message += focusNode;
+					}
+					else {
+						message += SPINLabels.get().getLabel((Resource)focusNode);
+					}
+				}
+				FailureLog.get().logFailure(message);
+				selectMessage = ResourceFactory.createTypedLiteral("Validation Failure: Could not validate shape");
+			}
+			
+			RDFNode sourceConstraint = null;
+			if(SH.SPARQLConstraintComponent.equals(constraint.getComponent())) {
+				sourceConstraint = constraint.getParameterValue();
+			}
+			
+			List<RDFNode> messages;
+			if(selectMessage != null) {
+				messages = new LinkedList<>();
+				messages.add(selectMessage);
+			}
+			else if(constraint.getShapeResource().hasProperty(SH.message)) {
+				messages = new LinkedList<>();
+				for(Statement s : constraint.getShapeResource().listProperties(SH.message).toList()) {
+					messages.add(s.getObject());
+				}
+			}
+			else {
+				List<Literal> templates = new LinkedList<>();
+				addDefaultMessages(messageHolder, constraint.getComponent(), templates);
+				// The bindings may be reused for other focus nodes, but sol always binds $this
+				messages = engine.createResultMessages(templates, () -> {
+					QuerySolutionMap map = new QuerySolutionMap();
+					map.addAll(bindings);
+					map.addAll(sol);
+					return map;
+				});
+			}
+			
+			RDFNode path = null;
+			RDFNode pathValue = sol.get(SH.pathVar.getVarName());
+			if(pathValue != null && pathValue.isURIResource()) {
+				path = pathValue;
+			}
+			else if(constraint.getShapeResource().isPropertyShape()) {
+				path = JenaUtil.getResourceProperty(constraint.getShapeResource(), SH.path);
+			}
+			
+			RDFNode value = sol.get(SH.valueVar.getVarName());
+			if(value == null && SH.NodeShape.equals(constraint.getContext())) {
+				value = focusNode;
+			}
+			
+			Model details = createDetails ? copyDetails(nestedResults) : null;
+			engine.addResult(new ValidationResult(resultType, constraint, thisValue, path, value, messages, sourceConstraint, details));
+		}
+	}
+	
+	
+	private static Model copyDetails(Model nestedResults) {
+		if(nestedResults.isEmpty()) {
+			return null;
+		}
+		else {
+			return JenaUtil.createMemoryModel().add(nestedResults);
+		}
+	}
 
 	
-	private void addDefaultMessages(ValidationEngine engine, Resource messageHolder, Resource fallback, Resource result, 
-				QuerySolution bindings, QuerySolution solution) {
+	private static void addDefaultMessages(Resource messageHolder, Resource fallback, List<Literal> templates) {
 		boolean found = false;
 		for(Statement s : messageHolder.listProperties(SH.message).toList()) {
 			if(s.getObject().isLiteral()) {
-				QuerySolutionMap map = new QuerySolutionMap();
-				map.addAll(bindings);
-				map.addAll(solution);
-				engine.addResultMessage(result, s.getLiteral(), map);
+				templates.add(s.getLiteral());
 				found = true;
 			}
 		}
 		if(!found && fallback != null) {
-			addDefaultMessages(engine, fallback, null, result, bindings, solution);
+			addDefaultMessages(fallback, null, templates);
 		}
 	}
 
@@ -252,4 +490,36 @@ public abstract class AbstractSPARQLExecutor implements ConstraintExecutor {
 			}
 		}
 	}
+	
+	
+	private static class PreparedQueryKey {
+		
+		private Path path;
+		
+		private String queryString;
+		
+		
+		PreparedQueryKey(String queryString, Path path) {
+			this.path = path;
+			this.queryString = queryString;
+		}
+
+
+		@Override
+		public boolean equals(Object obj) {
+			if(obj instanceof PreparedQueryKey) {
+				PreparedQueryKey other = (PreparedQueryKey) obj;
+				return queryString.equals(other.queryString) && Objects.equals(path, other.path);
+			}
+			else {
+				return false;
+			}
+		}
+
+
+		@Override
+		public int hashCode() {
+			return queryString.hashCode() + Objects.hashCode(path);
+		}
+	}
 }
@@ -0,0 +1,125 @@
+package org.topbraid.shacl.validation.sparql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Function;
+
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.topbraid.spin.system.SPINLabels;
+
+/**
+ * A parsed sh:message template such as "Value {$value} is not a {?type}",
+ * consisting of text segments alternating with variable names.
+ *
+ * Templates are parsed once and then shared via {@link #get(String)}, so that
+ * producing a message only needs to look up the variables.
+ */
+public class MessageTemplate {
+
+	private static final int capacity = 10000;
+
+	@SuppressWarnings("serial")
+	private static class TemplatesLRU extends LinkedHashMap<String,MessageTemplate> {
+
+		TemplatesLRU() {
+			super(capacity + 1, 1.1f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Entry<String,MessageTemplate> eldest) {
+			return size() > capacity;
+		}
+	};
+
+	private static Map<String,MessageTemplate> templates = Collections.synchronizedMap(new TemplatesLRU());
+
+
+	/**
+	 * Gets the (shared) MessageTemplate for a given template string.
+	 * @param template  the template, e.g. the lexical form of a sh:message
+	 * @return the MessageTemplate
+	 */
+	public static MessageTemplate get(String template) {
+		return templates.computeIfAbsent(template, t -> new MessageTemplate(t));
+	}
+
+
+	// The text segments, one more than varNames
+	private String[] texts;
+
+	private String[] varNames;
+
+
+	public MessageTemplate(String template) {
+		List<String> texts = new ArrayList<>();
+		List<String> varNames = new ArrayList<>();
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < template.length(); i++) {
+			if(i < template.length() - 3 && template.charAt(i) == '{' && (template.charAt(i + 1) == '?' || template.charAt(i + 1) == '$')) {
+				int varEnd = i + 2;
+				while(varEnd < template.length()) {
+					if(template.charAt(varEnd) == '}') {
+						texts.add(text.toString());
+						text.setLength(0);
+						varNames.add(template.substring(i + 2, varEnd));
+						break;
+					}
+					else {
+						varEnd++;
+					}
+				}
+				// An unclosed variable swallows the rest of the template
+				i = varEnd;
+			}
+			else {
+				text.append(template.charAt(i));
+			}
+		}
+		texts.add(text.toString());
+		this.texts = texts.toArray(new String[texts.size()]);
+		this.varNames = varNames.toArray(new String[varNames.size()]);
+	}
+
+
+	public String[] getVarNames() {
+		return varNames.clone();
+	}
+
+
+	/**
+	 * Produces the message for given variable bindings.
+	 * Unbound variables are replaced with the empty string.
+	 * @param bindings  the variable bindings
+	 * @param labelFunction  produces the display strings of the variable values, or null to use SPINLabels
+	 * @return the message
+	 */
+	public String render(QuerySolution bindings, Function<RDFNode,String> labelFunction) {
+		if(varNames.length == 0) {
+			return texts[0];
+		}
+		StringBuilder buffer = new StringBuilder(texts[0]);
+		for(int i = 0; i < varNames.length; i++) {
+			RDFNode varValue = bindings.get(varNames[i]);
+			if(varValue != null) {
+				if(labelFunction != null) {
+					buffer.append(labelFunction.apply(varValue));
+				}
+				else if(varValue instanceof Resource) {
+					buffer.append(SPINLabels.get().getLabel((Resource)varValue));
+				}
+				else if(varValue instanceof Literal) {
+					buffer.append(varValue.asNode().getLiteralLexicalForm());
+				}
+			}
+			buffer.append(texts[i + 1]);
+		}
+		return buffer.toString();
+	}
+}
@@ -21,14 +21,39 @@ import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
 import org.apache.jena.shared.PrefixMapping;
 import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.sparql.algebra.walker.Walker;
+import org.apache.jena.sparql.core.TriplePath;
 import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.core.VarExprList;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprAggregator;
+import org.apache.jena.sparql.expr.ExprFunctionOp;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.expr.ExprVar;
+import org.apache.jena.sparql.expr.ExprVisitor;
+import org.apache.jena.sparql.expr.ExprVisitorBase;
+import org.apache.jena.sparql.path.Path;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementAssign;
+import org.apache.jena.sparql.syntax.ElementBind;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementNamedGraph;
+import org.apache.jena.sparql.syntax.ElementPathBlock;
+import org.apache.jena.sparql.syntax.ElementService;
+import org.apache.jena.sparql.syntax.ElementSubQuery;
+import org.apache.jena.sparql.syntax.ElementTriplesBlock;
+import org.apache.jena.sparql.syntax.ElementVisitorBase;
+import org.apache.jena.sparql.syntax.ElementWalker;
+import org.apache.jena.sparql.syntax.syntaxtransform.ElementTransformCopyBase;
+import org.apache.jena.sparql.syntax.syntaxtransform.ExprTransformApplyElementTransform;
+import org.apache.jena.sparql.syntax.syntaxtransform.QueryTransformOps;
 import org.apache.jena.vocabulary.OWL;
 import org.apache.jena.vocabulary.RDFS;
 import org.topbraid.shacl.validation.SHACLException;
 import org.topbraid.shacl.vocabulary.SH;
 import org.topbraid.shacl.vocabulary.TOSH;
 import org.topbraid.spin.arq.ARQFactory;
-import org.topbraid.spin.system.SPINLabels;
 import org.topbraid.spin.util.JenaUtil;
 
 /**
@@ -82,51 +107,229 @@ public class SPARQLSubstitutions {
 	}
 	
 	
+	/**
+	 * Replaces all occurrences of $PATH with a given path string and parses the result.
+	 * This operates on the query string and is only used where the syntax tree based
+	 * {@link #substitutePaths(Query, Path)} cannot be applied.
+	 * @param query  the Query
+	 * @param pathString  the SPARQL path string
+	 * @param model  the Model to get the prefixes from
+	 * @return the new Query
+	 */
 	public static Query substitutePaths(Query query, String pathString, Model model) {
-		// TODO: This is a bad algorithm - should be operating on syntax tree, not string
 		String str = query.toString().replaceAll(" \\?" + SH.PATHVar.getVarName() + " ", pathString);
 		return ARQFactory.get().createQuery(model, str);
 	}
+	
+	
+	/**
+	 * Replaces all triple patterns that use $PATH as predicate with a path pattern, operating
+	 * on the syntax tree of the query (including nested sub-queries and EXISTS blocks).
+	 * @param query  the Query to transform (remains unchanged)
+	 * @param path  the Path to insert
+	 * @return the new Query, or null if $PATH is also used in other positions
+	 */
+	public static Query substitutePaths(Query query, Path path) {
+		Query result = QueryTransformOps.transform(query, new PathTransform(path), new ExprTransformApplyElementTransform(new PathTransform(path)));
+		if(mentionsPathVar(result)) {
+			return null;
+		}
+		return result;
+	}
+	
+	
+	private static boolean mentionsPathVar(Query query) {
+		PathVarFinder finder = new PathVarFinder();
+		finder.visitQuery(query);
+		return finder.found;
+	}
+	
+	
+	private static class PathTransform extends ElementTransformCopyBase {
+		
+		private Path path;
+		
+		
+		PathTransform(Path path) {
+			this.path = path;
+		}
+		
+
+		@Override
+		public Element transform(ElementPathBlock el) {
+			Var pathVar = Var.alloc(SH.PATHVar.getVarName());
+			ElementPathBlock result = new ElementPathBlock();
+			boolean changed = false;
+			for(TriplePath tp : el.getPattern().getList()) {
+				if(pathVar.equals(tp.getPredicate())) {
+					result.addTriplePath(new TriplePath(tp.getSubject(), path, tp.getObject()));
+					changed = true;
+				}
+				else {
+					result.addTriplePath(tp);
+				}
+			}
+			return changed ? result : el;
+		}
+
 
+		@Override
+		public Element transform(ElementSubQuery el, Query query) {
+			Query newQuery = QueryTransformOps.transform(query, this, new ExprTransformApplyElementTransform(this));
+			return new ElementSubQuery(newQuery);
+		}
+	}
 	
-	public static Literal withSubstitutions(Literal template, QuerySolution bindings, Function<RDFNode,String> labelFunction) {
-		StringBuffer buffer = new StringBuffer();
-		String labelTemplate = template.getLexicalForm();
-		for(int i = 0; i < labelTemplate.length(); i++) {
-			if(i < labelTemplate.length() - 3 && labelTemplate.charAt(i) == '{' && (labelTemplate.charAt(i + 1) == '?' || labelTemplate.charAt(i + 1) == '$')) {
-				int varEnd = i + 2;
-				while(varEnd < labelTemplate.length()) {
-					if(labelTemplate.charAt(varEnd) == '}') {
-						String varName = labelTemplate.substring(i + 2, varEnd);
-						RDFNode varValue = bindings.get(varName);
-						if(varValue != null) {
-							if(labelFunction != null) {
-								buffer.append(labelFunction.apply(varValue));
-							}
-							else if(varValue instanceof Resource) {
-								buffer.append(SPINLabels.get().getLabel((Resource)varValue));
-							}
-							else if(varValue instanceof Literal) {
-								buffer.append(varValue.asNode().getLiteralLexicalForm());
-							}
-						}
-						break;
-					}
-					else {
-						varEnd++;
-					}
+	
+	/**
+	 * Looks for remaining uses of $PATH as a variable anywhere in a query, including its
+	 * projection and solution modifiers, EXISTS blocks and nested sub-queries.
+	 */
+	private static class PathVarFinder extends ElementVisitorBase {
+		
+		private final Var pathVar = Var.alloc(SH.PATHVar.getVarName());
+		
+		private boolean found;
+		
+		private final ExprVisitor exprVisitor = new ExprVisitorBase() {
+
+			@Override
+			public void visit(ExprVar nv) {
+				visitNode(nv.asVar());
+			}
+
+			@Override
+			public void visit(ExprFunctionOp funcOp) {
+				if(funcOp.getElement() != null) {
+					ElementWalker.walk(funcOp.getElement(), PathVarFinder.this);
+				}
+			}
+
+			@Override
+			public void visit(ExprAggregator eAgg) {
+				ExprList exprs = eAgg.getAggregator().getExprList();
+				if(exprs != null) {
+					exprs.forEach(expr -> visitExpr(expr));
 				}
-				i = varEnd;
 			}
-			else {
-				buffer.append(labelTemplate.charAt(i));
+		};
+		
+		
+		void visitQuery(Query query) {
+			if(query.getQueryPattern() != null) {
+				ElementWalker.walk(query.getQueryPattern(), this);
+			}
+			visitVarExprs(query.getProject());
+			if(query.hasGroupBy()) {
+				visitVarExprs(query.getGroupBy());
+			}
+			if(query.hasHaving()) {
+				query.getHavingExprs().forEach(expr -> visitExpr(expr));
+			}
+			if(query.hasOrderBy()) {
+				query.getOrderBy().forEach(condition -> visitExpr(condition.getExpression()));
+			}
+			if(query.hasValues()) {
+				query.getValuesVariables().forEach(var -> visitNode(var));
+			}
+		}
+		
+		
+		private void visitExpr(Expr expr) {
+			Walker.walk(expr, exprVisitor);
+		}
+		
+		
+		private void visitNode(Node node) {
+			if(pathVar.equals(node)) {
+				found = true;
+			}
+		}
+		
+		
+		private void visitVarExprs(VarExprList varExprs) {
+			for(Var var : varExprs.getVars()) {
+				visitNode(var);
+				Expr expr = varExprs.getExpr(var);
+				if(expr != null) {
+					visitExpr(expr);
+				}
+			}
+		}
+
+
+		@Override
+		public void visit(ElementTriplesBlock el) {
+			el.getPattern().forEach(triple -> {
+				visitNode(triple.getSubject());
+				visitNode(triple.getPredicate());
+				visitNode(triple.getObject());
+			});
+		}
+
+
+		@Override
+		public void visit(ElementPathBlock el) {
+			for(TriplePath tp : el.getPattern().getList()) {
+				visitNode(tp.getSubject());
+				visitNode(tp.getPredicate());
+				visitNode(tp.getObject());
 			}
 		}
+
+
+		@Override
+		public void visit(ElementFilter el) {
+			visitExpr(el.getExpr());
+		}
+
+
+		@Override
+		public void visit(ElementAssign el) {
+			visitNode(el.getVar());
+			visitExpr(el.getExpr());
+		}
+
+
+		@Override
+		public void visit(ElementBind el) {
+			visitNode(el.getVar());
+			visitExpr(el.getExpr());
+		}
+
+
+		@Override
+		public void visit(ElementData el) {
+			el.getVars().forEach(var -> visitNode(var));
+		}
+
+
+		@Override
+		public void visit(ElementNamedGraph el) {
+			visitNode(el.getGraphNameNode());
+		}
+
+
+		@Override
+		public void visit(ElementService el) {
+			visitNode(el.getServiceNode());
+		}
+
+
+		@Override
+		public void visit(ElementSubQuery el) {
+			visitQuery(el.getQuery());
+		}
+	}
+
+	
+	public static Literal withSubstitutions(Literal template, QuerySolution bindings, Function<RDFNode,String> labelFunction) {
+		String message = MessageTemplate.get(template.getLexicalForm()).render(bindings, labelFunction);
 		if(template.getLanguage().isEmpty()) {
-			return ResourceFactory.createTypedLiteral(buffer.toString());
+			return ResourceFactory.createTypedLiteral(message);
 		}
 		else {
-			return ResourceFactory.createLangLiteral(buffer.toString(), template.getLanguage());
+			return ResourceFactory.createLangLiteral(message, template.getLanguage());
 		}
 	}
 	
@@ -25,4 +25,10 @@ public class SPARQLValidationLanguage implements ValidationLanguage {
 	public ConstraintExecutor createExecutor(Constraint constraint, ValidationEngine engine) {
 		return new SPARQLComponentExecutor(constraint);
 	}
+
+
+	@Override
+	public boolean isEngineIndependent() {
+		return true;
+	}
 }
@@ -23,6 +23,8 @@ public class SH {
 
     public final static Resource AbstractResult = ResourceFactory.createResource(NS + "AbstractResult");
 
+    public final static Resource AndConstraintComponent = ResourceFactory.createResource(NS + "AndConstraintComponent");
+
     public final static Resource BlankNode = ResourceFactory.createResource(NS + "BlankNode");
 
     public final static Resource BlankNodeOrIRI = ResourceFactory.createResource(NS + "BlankNodeOrIRI");
@@ -31,31 +33,67 @@ public class SH {
 
     public final static Resource ClassConstraintComponent = ResourceFactory.createResource(NS + "ClassConstraintComponent");
     
+    public final static Resource ClosedConstraintComponent = ResourceFactory.createResource(NS + "ClosedConstraintComponent");
+
     public final static Resource Constraint = ResourceFactory.createResource(NS + "Constraint");
 
     public final static Resource ConstraintComponent = ResourceFactory.createResource(NS + "ConstraintComponent");
 
     public final static Resource DatatypeConstraintComponent = ResourceFactory.createResource(NS + "DatatypeConstraintComponent");
 
+    public final static Resource DisjointConstraintComponent = ResourceFactory.createResource(NS + "DisjointConstraintComponent");
+
+    public final static Resource EqualsConstraintComponent = ResourceFactory.createResource(NS + "EqualsConstraintComponent");
+
+    public final static Resource HasValueConstraintComponent = ResourceFactory.createResource(NS + "HasValueConstraintComponent");
+
+    public final static Resource InConstraintComponent = ResourceFactory.createResource(NS + "InConstraintComponent");
+
     public final static Resource Info = ResourceFactory.createResource(NS + "Info");
 
     public final static Resource IRI = ResourceFactory.createResource(NS + "IRI");
 
     public final static Resource IRIOrLiteral = ResourceFactory.createResource(NS + "IRIOrLiteral");
 
+    public final static Resource LanguageInConstraintComponent = ResourceFactory.createResource(NS + "LanguageInConstraintComponent");
+
+    public final static Resource LessThanConstraintComponent = ResourceFactory.createResource(NS + "LessThanConstraintComponent");
+
+    public final static Resource LessThanOrEqualsConstraintComponent = ResourceFactory.createResource(NS + "LessThanOrEqualsConstraintComponent");
+
     public final static Resource Literal = ResourceFactory.createResource(NS + "Literal");
 
     public final static Resource MaxCountConstraintComponent = ResourceFactory.createResource(NS + "MaxCountConstraintComponent");
 
+    public final static Resource MaxExclusiveConstraintComponent = ResourceFactory.createResource(NS + "MaxExclusiveConstraintComponent");
+
+    public final static Resource MaxInclusiveConstraintComponent = ResourceFactory.createResource(NS + "MaxInclusiveConstraintComponent");
+
+    public final static Resource MaxLengthConstraintComponent = ResourceFactory.createResource(NS + "MaxLengthConstraintComponent");
+
     public final static Resource MinCountConstraintComponent = ResourceFactory.createResource(NS + "MinCountConstraintComponent");
 
+    public final static Resource MinExclusiveConstraintComponent = ResourceFactory.createResource(NS + "MinExclusiveConstraintComponent");
+
+    public final static Resource MinInclusiveConstraintComponent = ResourceFactory.createResource(NS + "MinInclusiveConstraintComponent");
+
+    public final static Resource MinLengthConstraintComponent = ResourceFactory.createResource(NS + "MinLengthConstraintComponent");
+
+    public final static Resource NodeConstraintComponent = ResourceFactory.createResource(NS + "NodeConstraintComponent");
+
     public final static Resource NodeShape = ResourceFactory.createResource(NS + "NodeShape");
 
+    public final static Resource NodeKindConstraintComponent = ResourceFactory.createResource(NS + "NodeKindConstraintComponent");
+
+    public final static Resource NotConstraintComponent = ResourceFactory.createResource(NS + "NotConstraintComponent");
+
     public final static Resource OrConstraintComponent = ResourceFactory.createResource(NS + "OrConstraintComponent");
     
     public final static Resource Parameter = ResourceFactory.createResource(NS + "Parameter");
 
     public final static Resource Parameterizable = ResourceFactory.createResource(NS + "Parameterizable");
+
+    public final static Resource PatternConstraintComponent = ResourceFactory.createResource(NS + "PatternConstraintComponent");
     
     public final static Resource PrefixDeclaration = ResourceFactory.createResource(NS + "PrefixDeclaration");
 
@@ -63,6 +101,10 @@ public class SH {
 
     public final static Resource PropertyConstraintComponent = ResourceFactory.createResource(NS + "PropertyConstraintComponent");
 
+    public final static Resource QualifiedMaxCountConstraintComponent = ResourceFactory.createResource(NS + "QualifiedMaxCountConstraintComponent");
+
+    public final static Resource QualifiedMinCountConstraintComponent = ResourceFactory.createResource(NS + "QualifiedMinCountConstraintComponent");
+
     public final static Resource ResultAnnotation = ResourceFactory.createResource(NS + "ResultAnnotation");
 
     public final static Resource Rule = ResourceFactory.createResource(NS + "Rule");
@@ -87,6 +129,8 @@ public class SH {
     
     public final static Resource SPARQLValuesDeriver = ResourceFactory.createResource(NS + "SPARQLValuesDeriver");
     
+    public final static Resource UniqueLangConstraintComponent = ResourceFactory.createResource(NS + "UniqueLangConstraintComponent");
+    
     public final static Resource ValidationReport = ResourceFactory.createResource(NS + "ValidationReport");
     
     public final static Resource ValidationResult = ResourceFactory.createResource(NS + "ValidationResult");
@@ -97,6 +141,8 @@ public class SH {
 
     public final static Resource Warning = ResourceFactory.createResource(NS + "Warning");
 
+    public final static Resource XoneConstraintComponent = ResourceFactory.createResource(NS + "XoneConstraintComponent");
+
 
     public final static Property alternativePath = ResourceFactory.createProperty(NS + "alternativePath");
     
@@ -130,6 +176,8 @@ public class SH {
 
     public final static Property equals = ResourceFactory.createProperty(NS + "equals");
 
+    public final static Property flags = ResourceFactory.createProperty(NS + "flags");
+
     public final static Property focusNode = ResourceFactory.createProperty(NS + "focusNode");
     
     public final static Property group = ResourceFactory.createProperty(NS + "group");
@@ -142,6 +190,8 @@ public class SH {
 
     public final static Property labelTemplate = ResourceFactory.createProperty(NS + "labelTemplate");
 
+    public final static Property languageIn = ResourceFactory.createProperty(NS + "languageIn");
+
     public final static Property lessThan = ResourceFactory.createProperty(NS + "lessThan");
 
     public final static Property lessThanOrEquals = ResourceFactory.createProperty(NS + "lessThanOrEquals");
@@ -198,6 +248,8 @@ public class SH {
 
     public final static Property propertyValidator = ResourceFactory.createProperty(NS + "propertyValidator");
 
+    public final static Property qualifiedValueShape = ResourceFactory.createProperty(NS + "qualifiedValueShape");
+
     public final static Property result = ResourceFactory.createProperty(NS + "result");
 
     public final static Property resultMessage = ResourceFactory.createProperty(NS + "resultMessage");
@@ -236,6 +288,8 @@ public class SH {
 
     public final static Property value = ResourceFactory.createProperty(NS + "value");
 
+    public final static Property xone = ResourceFactory.createProperty(NS + "xone");
+
     public final static Property zeroOrMorePath = ResourceFactory.createProperty(NS + "zeroOrMorePath");
 
     public final static Property zeroOrOnePath = ResourceFactory.createProperty(NS + "zeroOrOnePath");
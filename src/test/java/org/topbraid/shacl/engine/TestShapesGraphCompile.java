@@ -0,0 +1,215 @@
+package org.topbraid.shacl.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.engine.filters.ExcludeMetaShapesFilter;
+import org.topbraid.shacl.validation.AbstractSpecialConstraintExecutorFactory;
+import org.topbraid.shacl.validation.ConstraintExecutor;
+import org.topbraid.shacl.validation.ConstraintExecutors;
+import org.topbraid.shacl.validation.SHACLException;
+import org.topbraid.shacl.validation.ValidationEngine;
+import org.topbraid.shacl.validation.ValidationResult;
+import org.topbraid.shacl.validation.ValidationTestUtil;
+import org.topbraid.shacl.vocabulary.SH;
+
+/**
+ * Checks that a compiled ShapesGraph produces the same reports as an uncompiled one,
+ * also when it is shared by engines on different threads, and that it cannot be modified.
+ */
+public class TestShapesGraphCompile {
+
+	private final static String SHAPES =
+			"ex:PersonShape a sh:NodeShape ;\n" +
+			"	sh:targetClass ex:Person ;\n" +
+			"	sh:property [ sh:path ex:age ; sh:datatype xsd:integer ; sh:maxCount 1 ; sh:minInclusive 0 ] ;\n" +
+			"	sh:property [ sh:path ex:name ; sh:minCount 1 ; sh:pattern \"^[A-Z]\" ] ;\n" +
+			"	sh:sparql [ sh:select \"SELECT $this WHERE { $this <http://example.org/ns#knows> $this }\" ] .\n";
+
+	// Validated by the executor of EngineDependentFactory
+	private final static Resource ENGINE_COMPONENT = ResourceFactory.createResource(ValidationTestUtil.NS + "EngineConstraintComponent");
+
+	// Its executor cannot be created because of a bug
+	private final static Resource BROKEN_COMPONENT = ResourceFactory.createResource(ValidationTestUtil.NS + "BrokenConstraintComponent");
+
+	static {
+		ConstraintExecutors.get().addSpecialExecutor(ENGINE_COMPONENT, new EngineDependentFactory());
+		ConstraintExecutors.get().addSpecialExecutor(BROKEN_COMPONENT, new AbstractSpecialConstraintExecutorFactory() {
+			
+			@Override
+			public ConstraintExecutor create(Constraint constraint) {
+				throw new NullPointerException();
+			}
+
+			@Override
+			public boolean isEngineIndependent() {
+				return true;
+			}
+		});
+	}
+
+
+	@Test
+	public void testSameReports() throws Exception {
+		Model dataModel = createData(50);
+		Model shapesModel = ValidationTestUtil.readTurtle(SHAPES);
+		List<String> expected = validate(dataModel, shapesModel, new ShapesGraph(ValidationTestUtil.withSystemGraph(shapesModel)));
+		Assert.assertEquals(105, expected.size());
+
+		ShapesGraph shapesGraph = compile(shapesModel);
+		Assert.assertTrue(shapesGraph.isCompiled());
+		for(Shape shape : shapesGraph.getReachableShapes(shapesGraph.getRootShapes())) {
+			for(Constraint constraint : shape.getConstraints()) {
+				Assert.assertNotNull(constraint.toString(), shapesGraph.getExecutor(constraint));
+			}
+		}
+		Assert.assertEquals(expected, validate(dataModel, shapesModel, shapesGraph));
+	}
+
+
+	@Test
+	public void testSharedAcrossThreads() throws Exception {
+		Model dataModel = createData(200);
+		Model shapesModel = ValidationTestUtil.readTurtle(SHAPES);
+		List<String> expected = validate(dataModel, shapesModel, new ShapesGraph(ValidationTestUtil.withSystemGraph(shapesModel)));
+
+		ShapesGraph shapesGraph = compile(shapesModel);
+		ExecutorService executorService = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<List<String>>> futures = new ArrayList<>();
+			for(int i = 0; i < 16; i++) {
+				futures.add(executorService.submit(() -> validate(dataModel, shapesModel, shapesGraph)));
+			}
+			for(Future<List<String>> future : futures) {
+				Assert.assertEquals(expected, future.get());
+			}
+		}
+		finally {
+			executorService.shutdownNow();
+		}
+	}
+
+
+	@Test
+	public void testNoChangesAfterCompile() {
+		ShapesGraph shapesGraph = new ShapesGraph(ValidationTestUtil.withSystemGraph(ValidationTestUtil.readTurtle(SHAPES)));
+		shapesGraph.setConstraintFilter(constraint -> true);
+		shapesGraph.setShapeFilter(shape -> true);
+		shapesGraph.compile();
+		try {
+			shapesGraph.setConstraintFilter(constraint -> true);
+			Assert.fail("Expected IllegalStateException");
+		}
+		catch(IllegalStateException ex) {
+		}
+		try {
+			shapesGraph.setShapeFilter(shape -> true);
+			Assert.fail("Expected IllegalStateException");
+		}
+		catch(IllegalStateException ex) {
+		}
+	}
+
+
+	@Test
+	public void testEngineDependentExecutor() throws Exception {
+		Model shapesModel = ValidationTestUtil.readTurtle(
+				"ex:EngineConstraintComponent a sh:ConstraintComponent ; sh:parameter [ sh:path ex:engine ] ;\n" +
+				"	sh:validator [ a sh:SPARQLAskValidator ; sh:ask \"ASK { }\" ] .\n" +
+				"ex:PersonShape a sh:NodeShape ; sh:targetClass ex:Person ; ex:engine true .\n");
+		ShapesGraph shapesGraph = compile(shapesModel);
+		Constraint constraint = getConstraint(shapesGraph, ENGINE_COMPONENT);
+		Assert.assertNull(shapesGraph.getExecutor(constraint));
+		
+		Model dataModel = createData(3);
+		Assert.assertEquals(3, validate(dataModel, shapesModel, shapesGraph).size());
+		Assert.assertNotNull(shapesGraph.getExecutor(constraint, null));
+	}
+
+
+	@Test
+	public void testInvalidSPARQL() throws Exception {
+		Model shapesModel = ValidationTestUtil.readTurtle(
+				"ex:PersonShape a sh:NodeShape ; sh:targetClass ex:Person ; sh:sparql [ sh:select \"SELECT $this WHERE {\" ] .\n");
+		ShapesGraph shapesGraph = compile(shapesModel);
+		Assert.assertNull(shapesGraph.getExecutor(getConstraint(shapesGraph, SH.SPARQLConstraintComponent)));
+		try {
+			validate(createData(1), shapesModel, shapesGraph);
+			Assert.fail("Expected SHACLException");
+		}
+		catch(SHACLException ex) {
+		}
+	}
+
+
+	@Test(expected = NullPointerException.class)
+	public void testBugsAreNotHidden() {
+		Model shapesModel = ValidationTestUtil.readTurtle(
+				"ex:BrokenConstraintComponent a sh:ConstraintComponent ; sh:parameter [ sh:path ex:broken ] .\n" +
+				"ex:PersonShape a sh:NodeShape ; sh:targetClass ex:Person ; ex:broken true .\n");
+		compile(shapesModel);
+	}
+	
+	
+	private static ShapesGraph compile(Model shapesModel) {
+		ShapesGraph shapesGraph = new ShapesGraph(ValidationTestUtil.withSystemGraph(shapesModel));
+		shapesGraph.setShapeFilter(new ExcludeMetaShapesFilter());
+		return shapesGraph.compile();
+	}
+	
+	
+	private static Model createData(int count) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < count; i++) {
+			sb.append("ex:p" + i + " a ex:Person ; ex:age " + (i % 3 - 1) + ", 30 ; ex:name \"" + (i % 2 == 0 ? "Alice" : "bob") + "\" ; ex:knows ex:p" + (i % 4 == 0 ? i : 0) + " .\n");
+		}
+		return ValidationTestUtil.readTurtle(sb.toString());
+	}
+	
+	
+	private static Constraint getConstraint(ShapesGraph shapesGraph, Resource component) {
+		Shape shape = shapesGraph.getShape(ResourceFactory.createResource(ValidationTestUtil.NS + "PersonShape").asNode());
+		for(Constraint constraint : shape.getConstraints()) {
+			if(component.equals(constraint.getComponent())) {
+				return constraint;
+			}
+		}
+		throw new IllegalArgumentException("No constraint of " + component);
+	}
+	
+	
+	private static List<String> validate(Model dataModel, Model shapesModel, ShapesGraph shapesGraph) throws InterruptedException {
+		ValidationEngine engine = ValidationTestUtil.createEngine(dataModel, shapesGraph, shapesModel);
+		List<String> results = ValidationTestUtil.getResults(engine.validateAll());
+		results.sort(null);
+		return results;
+	}
+	
+	
+	// Only takes over from the SPARQL validator for a given engine, like factories that look at the data
+	private static class EngineDependentFactory extends AbstractSpecialConstraintExecutorFactory {
+
+		@Override
+		public boolean canExecute(Constraint constraint, ValidationEngine engine) {
+			return engine != null && engine.getDataset() != null;
+		}
+
+		@Override
+		public ConstraintExecutor create(Constraint constraint) {
+			return (c, engine, focusNodes) -> {
+				for(RDFNode focusNode : focusNodes) {
+					engine.addResult(new ValidationResult(SH.ValidationResult, c, focusNode, null, null, new ArrayList<>(), null, null));
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package org.topbraid.shacl.engine;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.util.SHACLUtil;
+import org.topbraid.shacl.validation.ValidationEngine;
+import org.topbraid.shacl.validation.ValidationTestUtil;
+
+/**
+ * Checks that the TargetIndex finds the same shapes for each node as the targets of the shapes.
+ */
+public class TestTargetIndex {
+
+	private final static String SHAPES =
+			"ex:ClassShape a sh:NodeShape ; sh:targetClass ex:Animal .\n" +
+			"ex:Dog a rdfs:Class, sh:NodeShape ; rdfs:subClassOf ex:Animal .\n" +
+			"ex:NodeShape a sh:NodeShape ; sh:targetNode ex:a, \"1\" .\n" +
+			"ex:SubjectsShape a sh:NodeShape ; sh:targetSubjectsOf ex:owner .\n" +
+			"ex:ObjectsShape a sh:NodeShape ; sh:targetObjectsOf ex:owner, ex:child .\n";
+
+	private final static String DATA =
+			"ex:Puppy rdfs:subClassOf ex:Dog .\n" +
+			"ex:a a ex:Puppy ; ex:owner ex:b ; ex:name \"1\" .\n" +
+			"ex:b a ex:Dog ; ex:child ex:c .\n" +
+			"ex:c a ex:Animal, ex:Other ; ex:owner ex:b .\n" +
+			"ex:d ex:child \"1\" ; ex:name \"2\" .\n";
+
+
+	@Test
+	public void testShapesForNode() {
+		Model shapesModel = ValidationTestUtil.readTurtle(SHAPES);
+		Model instancesModel = ValidationTestUtil.readTurtle(DATA);
+		Model dataModel = ValidationTestUtil.readTurtle(DATA);
+		dataModel.add(shapesModel);
+		ValidationEngine engine = ValidationTestUtil.createEngine(dataModel, shapesModel);
+		Dataset dataset = engine.getDataset();
+		Map<RDFNode,Set<Resource>> expected = new HashMap<>();
+		Set<Resource> allShapes = shapesModel.listSubjects().toSet();
+		for(Resource shape : allShapes) {
+			for(RDFNode node : SHACLUtil.getTargetNodes(shape, dataset)) {
+				expected.computeIfAbsent(node, n -> new HashSet<>()).add(shape);
+			}
+		}
+		Assert.assertEquals(4, expected.size());
+
+		TargetIndex index = new TargetIndex(ValidationTestUtil.withSystemGraph(shapesModel));
+		Set<RDFNode> nodes = new HashSet<>();
+		for(Statement s : instancesModel.listStatements().toList()) {
+			nodes.add(s.getSubject());
+			nodes.add(s.getObject());
+		}
+		for(RDFNode node : nodes) {
+			RDFNode focusNode = dataset.getDefaultModel().asRDFNode(node.asNode());
+			// Ignores the shapes of the system graph
+			Set<Resource> actual = new HashSet<>(index.getShapesForNode(focusNode, dataset));
+			actual.retainAll(allShapes);
+			Set<Resource> shapes = expected.containsKey(node) ? expected.get(node) : new HashSet<>();
+			Assert.assertEquals(node.toString(), shapes, actual);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package org.topbraid.shacl.rules;
+
+import java.net.URI;
+import java.util.UUID;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.compose.MultiUnion;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.arq.SHACLFunctions;
+import org.topbraid.shacl.engine.ShapesGraph;
+import org.topbraid.shacl.validation.ValidationTestUtil;
+import org.topbraid.spin.arq.ARQFactory;
+import org.topbraid.spin.util.JenaUtil;
+
+/**
+ * Checks that executing CONSTRUCT rules for chunks of focus nodes at once infers the same
+ * triples as executing them once per focus node, and that queries for which this would
+ * make a difference are not executed in bulk.
+ */
+public class TestBulkConstruct {
+	
+	private final static String PREFIX = "PREFIX ex: <" + ValidationTestUtil.NS + ">\n";
+
+	// Queries that are executed in bulk
+	private final static String[] SUPPORTED = {
+		"CONSTRUCT { $this ex:knows ?y } WHERE { $this ex:friend/ex:friend ?y . FILTER ($this != ?y) }",
+		"CONSTRUCT { $this ex:label ?label } WHERE { $this a ex:Person . OPTIONAL { $this ex:name ?name . FILTER (isLiteral(?name)) } BIND (COALESCE(?name, \"unnamed\") AS ?label) }",
+		"CONSTRUCT { $this a ex:Lonely } WHERE { $this a ex:Person . FILTER NOT EXISTS { $this ex:friend ?f } }"
+	};
+
+	// Queries with nested scopes that see $this unbound in a VALUES block
+	private final static String[] REJECTED = {
+		"CONSTRUCT { $this ex:related ?y } WHERE { { $this ex:friend ?y } UNION { ?y ex:friend $this } }",
+		"CONSTRUCT { $this ex:friends ?f } WHERE { $this ex:friend ?f . { SELECT ?f WHERE { ?x ex:friend ?f } } }",
+		"CONSTRUCT { $this ex:self ?x } WHERE { BIND (ex:p0 AS ?this) ?this ex:friend ?x }",
+		"CONSTRUCT { $this ex:other ?x } WHERE { VALUES ?this { ex:p1 } $this ex:friend ?x }",
+		"CONSTRUCT { $this ex:tag ?tag } WHERE { $this ex:name ?name . VALUES ?tag { \"a\" \"b\" } }",
+		"CONSTRUCT { $this ex:first ?x } WHERE { $this ex:friend ?x } LIMIT 1",
+		"CONSTRUCT { $this ex:notFriend ?x } WHERE { ?x a ex:Person MINUS { $this ex:friend ?x } }",
+		"CONSTRUCT { $this ex:maybe ?x } WHERE { ?x a ex:Person OPTIONAL { { $this ex:friend ?x } UNION { ?x ex:friend $this } } }"
+	};
+	
+	private final static int NODES = 30;
+	
+
+	@Test
+	public void testIsSupported() {
+		for(String query : SUPPORTED) {
+			Assert.assertTrue(query, BulkConstruct.isSupported(ARQFactory.get().createQuery(PREFIX + query)));
+		}
+		for(String query : REJECTED) {
+			Assert.assertFalse(query, BulkConstruct.isSupported(ARQFactory.get().createQuery(PREFIX + query)));
+		}
+	}
+	
+
+	@Test
+	public void testSameInferences() throws Exception {
+		StringBuilder shapes = new StringBuilder("ex:PersonShape a sh:NodeShape ;\n	sh:targetClass ex:Person ;\n");
+		for(String[] queries : new String[][] { SUPPORTED, REJECTED }) {
+			for(String query : queries) {
+				shapes.append("	sh:rule [ a sh:SPARQLRule ; sh:construct \"\"\"" + PREFIX + query + "\"\"\" ] ;\n");
+			}
+		}
+		shapes.append("	.\n");
+		Model shapesModel = ValidationTestUtil.readTurtle(shapes.toString());
+		Model dataModel = createData();
+		Model single = execute(dataModel, shapesModel, false);
+		Model bulk = execute(dataModel, shapesModel, true);
+		Assert.assertTrue(bulk.isIsomorphicWith(single));
+		
+		// The rules have inferred something, except for those that bind $this themselves
+		for(String predicate : new String[] { "knows", "label", "related", "friends", "first", "notFriend", "maybe" }) {
+			Assert.assertTrue(predicate, single.contains(null, single.getProperty(ValidationTestUtil.NS + predicate)));
+		}
+		Assert.assertTrue(single.contains(null, RDF.type, single.getResource(ValidationTestUtil.NS + "Lonely")));
+	}
+	
+	
+	private static Model createData() {
+		Model dataModel = JenaUtil.createMemoryModel();
+		Property friend = dataModel.createProperty(ValidationTestUtil.NS + "friend");
+		Property name = dataModel.createProperty(ValidationTestUtil.NS + "name");
+		Resource person = dataModel.createResource(ValidationTestUtil.NS + "Person");
+		for(int i = 0; i < NODES; i++) {
+			Resource node = dataModel.createResource(ValidationTestUtil.NS + "p" + i);
+			node.addProperty(RDF.type, person);
+			if(i % 3 > 0) {
+				node.addProperty(friend, dataModel.createResource(ValidationTestUtil.NS + "p" + (i * 7 % NODES)));
+			}
+			if(i % 2 == 0) {
+				node.addProperty(name, "Person " + i);
+			}
+		}
+		return dataModel;
+	}
+	
+	
+	// Uses chunks that do not divide the number of target nodes
+	private static Model execute(Model dataModel, Model shapesModel, boolean bulkMode) throws InterruptedException {
+		Model inferences = JenaUtil.createDefaultModel();
+		Model unionModel = ModelFactory.createModelForGraph(new MultiUnion(new Graph[] {
+			dataModel.getGraph(),
+			inferences.getGraph()
+		}));
+		shapesModel = ValidationTestUtil.withSystemGraph(shapesModel);
+		SHACLFunctions.registerFunctions(shapesModel);
+		URI shapesGraphURI = URI.create("urn:x-shacl-shapes-graph:" + UUID.randomUUID());
+		Dataset dataset = ARQFactory.get().getDataset(unionModel);
+		dataset.addNamedModel(shapesGraphURI.toString(), shapesModel);
+		RuleEngine engine = new RuleEngine(dataset, shapesGraphURI, new ShapesGraph(shapesModel), inferences);
+		engine.setChunkSize(7);
+		engine.setBulkMode(bulkMode);
+		engine.executeAll();
+		return inferences;
+	}
+}
@@ -0,0 +1,86 @@
+package org.topbraid.shacl.rules;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.engine.ShapesGraph;
+import org.topbraid.shacl.validation.ValidationEngine;
+import org.topbraid.shacl.validation.ValidationEngineFactory;
+import org.topbraid.shacl.validation.ValidationResultSink;
+import org.topbraid.shacl.validation.ValidationTestUtil;
+
+/**
+ * Checks that the sh:condition verdicts of the rules are cached per focus node,
+ * that they are computed again once the inferences of a lower sh:order have been
+ * added, and that their validation does not create a report.
+ */
+public class TestRuleConditions {
+
+	private final static String SHAPES =
+			"ex:AdultShape a sh:NodeShape ;\n" +
+			"	sh:property [ sh:path ex:age ; sh:minCount 1 ] .\n" +
+			"ex:BeforeShape a sh:NodeShape ;\n" +
+			"	sh:targetClass ex:Person ;\n" +
+			"	sh:rule [ a sh:TripleRule ; sh:condition ex:AdultShape ; sh:subject sh:this ; sh:predicate ex:before1 ; sh:object true ] ;\n" +
+			"	sh:rule [ a sh:TripleRule ; sh:condition ex:AdultShape ; sh:subject sh:this ; sh:predicate ex:before2 ; sh:object true ] .\n" +
+			"ex:AgeShape a sh:NodeShape ;\n" +
+			"	sh:order 1 ;\n" +
+			"	sh:targetSubjectsOf ex:born ;\n" +
+			"	sh:rule [ a sh:TripleRule ; sh:subject sh:this ; sh:predicate ex:age ; sh:object 18 ] .\n" +
+			"ex:AfterShape a sh:NodeShape ;\n" +
+			"	sh:order 2 ;\n" +
+			"	sh:targetClass ex:Person ;\n" +
+			"	sh:rule [ a sh:TripleRule ; sh:condition ex:AdultShape ; sh:subject sh:this ; sh:predicate ex:after ; sh:object true ] .\n";
+
+
+	@Test
+	public void testConditionVerdicts() {
+		Model shapesModel = ValidationTestUtil.readTurtle(SHAPES);
+		Model dataModel = ValidationTestUtil.readTurtle(
+				"ex:a a ex:Person ; ex:born 2000 .\n" +
+				"ex:b a ex:Person .\n");
+		AtomicInteger conformanceChecks = new AtomicInteger();
+		AtomicInteger reports = new AtomicInteger();
+		ValidationEngineFactory oldFactory = ValidationEngineFactory.get();
+		ValidationEngineFactory.set(new ValidationEngineFactory() {
+
+			@Override
+			public ValidationEngine create(Dataset dataset, URI shapesGraphURI, ShapesGraph shapesGraph, Resource report) {
+				reports.incrementAndGet();
+				return super.create(dataset, shapesGraphURI, shapesGraph, report);
+			}
+
+
+			@Override
+			public ValidationEngine createWithSink(Dataset dataset, URI shapesGraphURI, ShapesGraph shapesGraph, ValidationResultSink resultSink) {
+				conformanceChecks.incrementAndGet();
+				ValidationEngine engine = super.createWithSink(dataset, shapesGraphURI, shapesGraph, resultSink);
+				Assert.assertNull(engine.getReport());
+				return engine;
+			}
+		});
+		try {
+			Model inferences = RuleUtil.executeRules(dataModel, shapesModel, null, null);
+			Resource a = dataModel.getResource(ValidationTestUtil.NS + "a");
+			Resource b = dataModel.getResource(ValidationTestUtil.NS + "b");
+
+			// Nobody has an age before ex:AgeShape, but ex:a has one afterwards
+			Assert.assertFalse(inferences.contains(a, inferences.createProperty(ValidationTestUtil.NS + "before1")));
+			Assert.assertFalse(inferences.contains(a, inferences.createProperty(ValidationTestUtil.NS + "before2")));
+			Assert.assertTrue(inferences.contains(a, inferences.createProperty(ValidationTestUtil.NS + "after")));
+			Assert.assertFalse(inferences.contains(b, inferences.createProperty(ValidationTestUtil.NS + "after")));
+
+			// Once per person for both rules of ex:BeforeShape, and again for ex:AfterShape
+			Assert.assertEquals(4, conformanceChecks.get());
+			Assert.assertEquals(0, reports.get());
+		}
+		finally {
+			ValidationEngineFactory.set(oldFactory);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package org.topbraid.shacl.rules;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.compose.MultiUnion;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.validation.ValidationTestUtil;
+import org.topbraid.spin.util.JenaUtil;
+
+/**
+ * Checks that the fixpoint iteration of the rules infers the same triples as
+ * repeated executions of all rules until nothing changes.
+ */
+public class TestRuleFixpoint {
+
+	private final static String SHAPES =
+			"ex:PersonShape a sh:NodeShape ;\n" +
+			"	sh:targetClass ex:Person ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:construct \"CONSTRUCT { ?p a <http://example.org/ns#Person> } WHERE { $this <http://example.org/ns#parent> ?p }\" ] ;\n" +
+			"	sh:rule [ a sh:TripleRule ; sh:subject sh:this ; sh:predicate ex:anc ; sh:object [ sh:path ex:parent ] ] .\n" +
+			"ex:AncestorShape a sh:NodeShape ;\n" +
+			"	sh:order 1 ;\n" +
+			"	sh:targetSubjectsOf ex:anc ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:construct \"CONSTRUCT { $this <http://example.org/ns#anc> ?z } WHERE { $this <http://example.org/ns#anc> ?y . ?y <http://example.org/ns#parent> ?z }\" ] .\n" +
+			"ex:ThingShape a sh:NodeShape ;\n" +
+			"	sh:order -1 ;\n" +
+			"	sh:targetClass ex:Thing ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:construct \"CONSTRUCT { $this <http://example.org/ns#label> ?x } WHERE { $this <http://example.org/ns#anc> ?x . FILTER (isIRI(?x)) }\" ] .\n" +
+			"ex:DescendantShape a sh:NodeShape ;\n" +
+			"	sh:targetObjectsOf ex:parent ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:construct \"CONSTRUCT { $this <http://example.org/ns#desc> ?x } WHERE { ?x <http://example.org/ns#anc> $this }\" ] .\n" +
+			"ex:FamilyShape a sh:NodeShape ;\n" +
+			"	sh:targetNode ex:family ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:construct \"CONSTRUCT { $this <http://example.org/ns#member> ?x } WHERE { ?x <http://example.org/ns#anc> ?y }\" ] .\n";
+
+	// The number of ex:parent links in the chain
+	private final static int LENGTH = 15;
+
+
+	@Test
+	public void testTransitiveChain() {
+		Model shapesModel = ValidationTestUtil.readTurtle(SHAPES);
+		Model dataModel = ValidationTestUtil.readTurtle("ex:Person rdfs:subClassOf ex:Thing .\n");
+		Property parent = dataModel.createProperty(ValidationTestUtil.NS + "parent");
+		dataModel.add(getPerson(dataModel, 0), RDF.type, dataModel.createResource(ValidationTestUtil.NS + "Person"));
+		for(int i = 0; i < LENGTH; i++) {
+			dataModel.add(getPerson(dataModel, i), parent, getPerson(dataModel, i + 1));
+		}
+
+		Model naive = JenaUtil.createDefaultModel();
+		Model unionModel = ModelFactory.createModelForGraph(new MultiUnion(new Graph[] {
+			dataModel.getGraph(),
+			naive.getGraph()
+		}));
+		int rounds = 0;
+		long size = -1;
+		while(size != naive.size()) {
+			size = naive.size();
+			RuleUtil.executeRules(unionModel, shapesModel, naive, null);
+			rounds++;
+		}
+		Assert.assertTrue(rounds > 2);
+
+		Model fixpoint = RuleUtil.executeRules(dataModel, shapesModel, null, null, Integer.MAX_VALUE);
+		Assert.assertTrue(fixpoint.isIsomorphicWith(naive));
+
+		// One type and ex:member per person except the first or last, and one ex:anc, ex:label
+		// and ex:desc per pair of ancestors
+		Assert.assertEquals(2 * LENGTH + 3 * LENGTH * (LENGTH + 1) / 2, fixpoint.size());
+	}
+
+
+	private static Resource getPerson(Model model, int index) {
+		return model.createResource(ValidationTestUtil.NS + "p" + index);
+	}
+}
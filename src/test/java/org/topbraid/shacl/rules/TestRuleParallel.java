@@ -0,0 +1,143 @@
+package org.topbraid.shacl.rules;
+
+import java.net.URI;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.compose.MultiUnion;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.arq.SHACLFunctions;
+import org.topbraid.shacl.engine.ShapesGraph;
+import org.topbraid.shacl.validation.ValidationTestUtil;
+import org.topbraid.spin.arq.ARQFactory;
+import org.topbraid.spin.util.JenaUtil;
+
+/**
+ * Checks that executing the rules in parallel tiers infers the same triples as a sequential
+ * execution, and that rules only see the inferences of rules with a lower sh:order.
+ */
+public class TestRuleParallel {
+
+	private final static String SHAPES =
+			"ex:PersonShape a sh:NodeShape ;\n" +
+			"	sh:targetClass ex:Person ;\n" +
+			"	sh:rule [ a sh:TripleRule ; sh:subject sh:this ; sh:predicate ex:step1 ; sh:object [ sh:path ex:parent ] ] ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:order 1 ; sh:construct \"CONSTRUCT { $this <http://example.org/ns#step2> ?x } WHERE { $this <http://example.org/ns#step1> ?x }\" ] ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:construct \"CONSTRUCT { $this <http://example.org/ns#sameTier> ?x } WHERE { $this <http://example.org/ns#step1> ?x }\" ] .\n" +
+			"ex:StepShape a sh:NodeShape ;\n" +
+			"	sh:order 2 ;\n" +
+			"	sh:targetSubjectsOf ex:step2 ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:construct \"CONSTRUCT { $this <http://example.org/ns#step3> ?z } WHERE { $this <http://example.org/ns#step2> ?y . ?y <http://example.org/ns#parent> ?z }\" ] ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:condition ex:ConditionShape ; sh:construct \"CONSTRUCT { $this a <http://example.org/ns#Grandchild> } WHERE { }\" ] .\n" +
+			"ex:ConditionShape a sh:NodeShape ;\n" +
+			"	sh:property [ sh:path ( ex:step2 ex:parent ) ; sh:minCount 1 ] .\n" +
+			"ex:AncestorShape a sh:NodeShape ;\n" +
+			"	sh:targetObjectsOf ex:parent ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:construct \"CONSTRUCT { ?p <http://example.org/ns#anc> $this } WHERE { ?p <http://example.org/ns#parent> $this }\" ] ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:order 3 ; sh:construct \"CONSTRUCT { $this <http://example.org/ns#ancCount> ?c } WHERE { { SELECT (COUNT(?p) AS ?c) WHERE { ?p <http://example.org/ns#anc> $this } } }\" ] .\n";
+
+	private final static int NODES = 200;
+
+
+	@Test
+	public void testOrderBarriers() throws Exception {
+		Model dataModel = createData(new Random(0));
+		Model inferences;
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			inferences = execute(dataModel, 1, executor);
+		}
+		finally {
+			executor.shutdown();
+		}
+		Property parent = dataModel.getProperty(ValidationTestUtil.NS + "parent");
+		Property step1 = dataModel.getProperty(ValidationTestUtil.NS + "step1");
+		Property step2 = dataModel.getProperty(ValidationTestUtil.NS + "step2");
+		Property sameTier = dataModel.getProperty(ValidationTestUtil.NS + "sameTier");
+		Property step3 = dataModel.getProperty(ValidationTestUtil.NS + "step3");
+		
+		// A rule with a higher sh:order in the same shape sees the inferences of the lower order
+		Resource person = dataModel.getResource(ValidationTestUtil.NS + "Person");
+		long parents = dataModel.listStatements(null, parent, (Resource)null).filterKeep(s -> s.getSubject().hasProperty(RDF.type, person)).toList().size();
+		Assert.assertTrue(parents > 0);
+		Assert.assertEquals(parents, inferences.listStatements(null, step1, (Resource)null).toList().size());
+		Assert.assertEquals(parents, inferences.listStatements(null, step2, (Resource)null).toList().size());
+		
+		// A rule with the same sh:order does not
+		Assert.assertFalse(inferences.contains(null, sameTier));
+		
+		// A shape with a higher sh:order sees the inferences in its targets, queries and conditions
+		Assert.assertTrue(inferences.contains(null, step3));
+		Assert.assertTrue(inferences.contains(null, RDF.type, inferences.getResource(ValidationTestUtil.NS + "Grandchild")));
+		Assert.assertEquals(inferences.listSubjectsWithProperty(step3).toSet(), 
+				inferences.listSubjectsWithProperty(RDF.type, inferences.getResource(ValidationTestUtil.NS + "Grandchild")).toSet());
+	}
+
+
+	@Test
+	public void testSameAsSequential() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for(long seed = 0; seed < 5; seed++) {
+				for(int maxIterations : new int[] { 1, Integer.MAX_VALUE }) {
+					Model dataModel = createData(new Random(seed));
+					Model sequential = execute(dataModel, maxIterations, null);
+					Model parallel = execute(dataModel, maxIterations, executor);
+					Assert.assertTrue(sequential.size() > NODES);
+					Assert.assertTrue("Seed " + seed + ", iterations " + maxIterations, sequential.isIsomorphicWith(parallel));
+				}
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+
+	private static Model createData(Random random) {
+		Model dataModel = JenaUtil.createMemoryModel();
+		Property parent = dataModel.createProperty(ValidationTestUtil.NS + "parent");
+		Resource person = dataModel.createResource(ValidationTestUtil.NS + "Person");
+		for(int i = 0; i < NODES; i++) {
+			Resource node = dataModel.createResource(ValidationTestUtil.NS + "p" + i);
+			if(random.nextInt(3) > 0) {
+				node.addProperty(RDF.type, person);
+			}
+			if(i > 0 && random.nextInt(4) > 0) {
+				node.addProperty(parent, dataModel.createResource(ValidationTestUtil.NS + "p" + random.nextInt(i)));
+			}
+		}
+		return dataModel;
+	}
+
+
+	// Uses small chunks so that each tier has many concurrent tasks
+	private static Model execute(Model dataModel, int maxIterations, ExecutorService executor) throws InterruptedException {
+		Model inferences = JenaUtil.createDefaultModel();
+		Model unionModel = ModelFactory.createModelForGraph(new MultiUnion(new Graph[] {
+			dataModel.getGraph(),
+			inferences.getGraph()
+		}));
+		Model shapesModel = ValidationTestUtil.withSystemGraph(ValidationTestUtil.readTurtle(SHAPES));
+		SHACLFunctions.registerFunctions(shapesModel);
+		URI shapesGraphURI = URI.create("urn:x-shacl-shapes-graph:" + UUID.randomUUID());
+		Dataset dataset = ARQFactory.get().getDataset(unionModel);
+		dataset.addNamedModel(shapesGraphURI.toString(), shapesModel);
+		RuleEngine engine = new RuleEngine(dataset, shapesGraphURI, new ShapesGraph(shapesModel), inferences);
+		engine.setChunkSize(3);
+		engine.setMaxIterations(maxIterations);
+		engine.setExecutorService(executor);
+		engine.executeAll();
+		return inferences;
+	}
+}
@@ -0,0 +1,135 @@
+package org.topbraid.shacl.rules;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.compose.MultiUnion;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.validation.ValidationTestUtil;
+import org.topbraid.spin.util.JenaUtil;
+
+/**
+ * Checks that incrementally updated inferences are the same as the inferences of all rules
+ * after each of a series of random changes to the data.
+ */
+public class TestRuleUpdate {
+
+	private final static String SHAPES =
+			"ex:PersonShape a sh:NodeShape ;\n" +
+			"	sh:targetClass ex:Person ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:construct \"CONSTRUCT { ?p a <http://example.org/ns#Person> } WHERE { $this <http://example.org/ns#parent> ?p }\" ] ;\n" +
+			"	sh:rule [ a sh:TripleRule ; sh:subject sh:this ; sh:predicate ex:anc ; sh:object [ sh:path ex:parent ] ] .\n" +
+			"ex:AncestorShape a sh:NodeShape ;\n" +
+			"	sh:order 1 ;\n" +
+			"	sh:targetSubjectsOf ex:anc ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:construct \"CONSTRUCT { $this <http://example.org/ns#anc> ?z } WHERE { $this <http://example.org/ns#anc> ?y . ?y <http://example.org/ns#parent> ?z }\" ] .\n" +
+			"ex:ThingShape a sh:NodeShape ;\n" +
+			"	sh:order -1 ;\n" +
+			"	sh:targetClass ex:Thing ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:construct \"CONSTRUCT { $this <http://example.org/ns#label> ?x } WHERE { $this <http://example.org/ns#anc> ?x . FILTER (isIRI(?x)) }\" ] .\n" +
+			"ex:ConditionShape a sh:NodeShape ;\n" +
+			"	sh:property [ sh:path ex:label ; sh:minCount 2 ] .\n" +
+			"ex:DeepShape a sh:NodeShape ;\n" +
+			"	sh:targetClass ex:Person ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:condition ex:ConditionShape ; sh:construct \"CONSTRUCT { $this <http://example.org/ns#deep> true } WHERE { }\" ] .\n" +
+			"ex:FriendShape a sh:NodeShape ;\n" +
+			"	sh:targetSubjectsOf ex:friend ;\n" +
+			"	sh:rule [ a sh:SPARQLRule ; sh:construct \"CONSTRUCT { ?f <http://example.org/ns#knows> ?g } WHERE { $this <http://example.org/ns#friend> ?f . ?f <http://example.org/ns#parent> ?g }\" ] .\n";
+
+	private final static Node DEEP = NodeFactory.createURI(ValidationTestUtil.NS + "deep");
+
+	private final static Node FRIEND = NodeFactory.createURI(ValidationTestUtil.NS + "friend");
+
+	private final static Node KNOWS = NodeFactory.createURI(ValidationTestUtil.NS + "knows");
+
+	private final static Node PARENT = NodeFactory.createURI(ValidationTestUtil.NS + "parent");
+
+	private final static Node PERSON = NodeFactory.createURI(ValidationTestUtil.NS + "Person");
+
+	private final static int NODES = 16;
+
+	private final static int STEPS = 30;
+
+
+	@Test
+	public void testRandomUpdates() {
+		Model shapesModel = ValidationTestUtil.readTurtle(SHAPES);
+		Model dataModel = ValidationTestUtil.readTurtle("ex:Person rdfs:subClassOf ex:Thing .\n");
+		Graph dataGraph = dataModel.getGraph();
+		Random random = new Random(42);
+		List<Triple> candidates = new ArrayList<>();
+		for(int i = 0; i < NODES; i++) {
+			Node node = getNode(i);
+			candidates.add(Triple.create(node, PARENT, getNode(random.nextInt(NODES))));
+			candidates.add(Triple.create(node, FRIEND, getNode(random.nextInt(NODES))));
+			if(i % 4 == 0) {
+				candidates.add(Triple.create(node, RDF.type.asNode(), PERSON));
+			}
+		}
+		for(Triple triple : candidates) {
+			if(random.nextInt(3) > 0) {
+				dataGraph.add(triple);
+			}
+		}
+
+		Model inferencesModel = JenaUtil.createDefaultModel();
+		Model unionModel = ModelFactory.createModelForGraph(new MultiUnion(new Graph[] {
+			dataGraph,
+			inferencesModel.getGraph()
+		}));
+		RuleUtil.executeRules(unionModel, shapesModel, inferencesModel, null, Integer.MAX_VALUE);
+
+		Set<Node> inferredPredicates = new HashSet<>();
+		for(int step = 0; step < STEPS; step++) {
+			List<Triple> added = new ArrayList<>();
+			List<Triple> removed = new ArrayList<>();
+			for(int i = 1 + random.nextInt(3); i > 0; i--) {
+				Triple triple = candidates.get(random.nextInt(candidates.size()));
+				if(added.contains(triple) || removed.contains(triple)) {
+					continue;
+				}
+				if(dataGraph.contains(triple)) {
+					dataGraph.delete(triple);
+					removed.add(triple);
+				}
+				else {
+					dataGraph.add(triple);
+					added.add(triple);
+				}
+			}
+			RuleUtil.updateRules(unionModel, shapesModel, inferencesModel, added, removed, null);
+
+			Model expected = RuleUtil.executeRules(dataModel, shapesModel, null, null, Integer.MAX_VALUE);
+			Set<Triple> actualTriples = getTriples(inferencesModel);
+			Assert.assertEquals("Step " + step + ": added " + added + ", removed " + removed, getTriples(expected), actualTriples);
+			for(Triple triple : actualTriples) {
+				inferredPredicates.add(triple.getPredicate());
+			}
+		}
+
+		// Makes sure that the rule with a condition and the non-local rule have been exercised
+		Assert.assertTrue(inferredPredicates.contains(DEEP));
+		Assert.assertTrue(inferredPredicates.contains(KNOWS));
+	}
+
+
+	private static Node getNode(int index) {
+		return NodeFactory.createURI(ValidationTestUtil.NS + "p" + index);
+	}
+
+
+	private static Set<Triple> getTriples(Model model) {
+		return model.getGraph().find(Node.ANY, Node.ANY, Node.ANY).toSet();
+	}
+}
@@ -0,0 +1,98 @@
+package org.topbraid.shacl.util;
+
+import java.lang.ref.WeakReference;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.compose.MultiUnion;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.spin.util.JenaUtil;
+
+/**
+ * Checks that the shared ClassHierarchy of a graph is reused until rdfs:subClassOf triples change.
+ */
+public class TestClassHierarchy {
+
+	private final static Node A = NodeFactory.createURI("http://example.org/ns#A");
+
+	private final static Node B = NodeFactory.createURI("http://example.org/ns#B");
+
+	private final static Node X = NodeFactory.createURI("http://example.org/ns#x");
+
+
+	@Test
+	public void testInvalidation() {
+		Graph graph = JenaUtil.createMemoryModel().getGraph();
+		graph.add(Triple.create(X, RDF.type.asNode(), A));
+		ClassHierarchy hierarchy = ClassHierarchy.get(graph);
+		Assert.assertFalse(hierarchy.isInstanceOf(X, B));
+
+		graph.add(Triple.create(NodeFactory.createURI("http://example.org/ns#other"), RDF.type.asNode(), B));
+		Assert.assertSame(hierarchy, ClassHierarchy.get(graph));
+
+		graph.add(Triple.create(A, RDFS.subClassOf.asNode(), B));
+		Assert.assertNotSame(hierarchy, ClassHierarchy.get(graph));
+		Assert.assertTrue(ClassHierarchy.get(graph).isInstanceOf(X, B));
+	}
+
+
+	@Test
+	public void testInvalidationOfUnion() {
+		Graph classes = JenaUtil.createMemoryModel().getGraph();
+		Graph instances = JenaUtil.createMemoryModel().getGraph();
+		instances.add(Triple.create(X, RDF.type.asNode(), A));
+		Graph union = new MultiUnion(new Graph[] { instances, classes });
+		Assert.assertFalse(ClassHierarchy.get(union).isInstanceOf(X, B));
+
+		// Changes to the subgraph itself do not go through the event manager of the union
+		classes.add(Triple.create(A, RDFS.subClassOf.asNode(), B));
+		Assert.assertTrue(ClassHierarchy.get(union).isInstanceOf(X, B));
+
+		classes.delete(Triple.create(A, RDFS.subClassOf.asNode(), B));
+		Assert.assertFalse(ClassHierarchy.get(union).isInstanceOf(X, B));
+	}
+
+
+	@Test
+	public void testChangedSubGraphsOfUnion() {
+		Graph classes = JenaUtil.createMemoryModel().getGraph();
+		classes.add(Triple.create(A, RDFS.subClassOf.asNode(), B));
+		Graph instances = JenaUtil.createMemoryModel().getGraph();
+		instances.add(Triple.create(X, RDF.type.asNode(), A));
+		MultiUnion union = new MultiUnion(new Graph[] { instances });
+		Assert.assertFalse(ClassHierarchy.get(union).isInstanceOf(X, B));
+
+		// Adding a subgraph does not fire any events
+		union.addGraph(classes);
+		Assert.assertTrue(ClassHierarchy.get(union).isInstanceOf(X, B));
+
+		// The new subgraph is listened to as well
+		classes.delete(Triple.create(A, RDFS.subClassOf.asNode(), B));
+		Assert.assertFalse(ClassHierarchy.get(union).isInstanceOf(X, B));
+		classes.add(Triple.create(A, RDFS.subClassOf.asNode(), B));
+		Assert.assertTrue(ClassHierarchy.get(union).isInstanceOf(X, B));
+
+		union.removeGraph(classes);
+		Assert.assertFalse(ClassHierarchy.get(union).isInstanceOf(X, B));
+	}
+
+
+	@Test
+	public void testGraphsAreNotKeptAlive() throws Exception {
+		Graph graph = JenaUtil.createMemoryModel().getGraph();
+		graph.add(Triple.create(X, RDF.type.asNode(), A));
+		Assert.assertTrue(ClassHierarchy.get(graph).isInstanceOf(X, A));
+		WeakReference<Graph> ref = new WeakReference<>(graph);
+		graph = null;
+		for(int i = 0; i < 50 && ref.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		Assert.assertNull(ref.get());
+	}
+}
@@ -0,0 +1,89 @@
+package org.topbraid.shacl.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.WrappedGraph;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.validation.ValidationEngine;
+import org.topbraid.shacl.validation.ValidationTestUtil;
+import org.topbraid.spin.arq.ARQFactory;
+
+/**
+ * Checks that the target nodes of a shape are enumerated lazily and without duplicates.
+ */
+public class TestTargetNodes {
+	
+	private final static String SHAPES =
+			"ex:SubClass rdfs:subClassOf ex:SuperClass .\n" +
+			"ex:Shape a sh:NodeShape ;\n" +
+			"	sh:targetClass ex:SuperClass ;\n" +
+			"	sh:targetNode ex:a ;\n" +
+			"	sh:targetSubjectsOf ex:p ;\n" +
+			"	sh:in ( ex:b ) .\n";
+	
+	private final static String DATA =
+			"ex:SubClass rdfs:subClassOf ex:SuperClass .\n" +
+			"ex:a a ex:SubClass, ex:SuperClass ; ex:p 1, 2 .\n" +
+			"ex:b a ex:SubClass ; ex:p 1 .\n";
+	
+
+	@Test
+	public void testDistinct() throws Exception {
+		Model shapesModel = ValidationTestUtil.readTurtle(SHAPES);
+		Dataset dataset = ARQFactory.get().getDataset(ValidationTestUtil.readTurtle(DATA));
+		List<Node> nodes = SHACLUtil.listTargetNodes(shapesModel.getResource(ValidationTestUtil.NS + "Shape"), dataset).toList();
+		Assert.assertEquals(2, nodes.size());
+		Assert.assertTrue(nodes.contains(NodeFactory.createURI(ValidationTestUtil.NS + "a")));
+		Assert.assertTrue(nodes.contains(NodeFactory.createURI(ValidationTestUtil.NS + "b")));
+	}
+	
+
+	@Test
+	public void testDistinctAcrossChunks() throws Exception {
+		ValidationEngine engine = ValidationTestUtil.createEngine(ValidationTestUtil.readTurtle(DATA), ValidationTestUtil.readTurtle(SHAPES));
+		engine.setChunkSize(1);
+		Assert.assertEquals(1, ValidationTestUtil.getResults(engine.validateAll()).size());
+	}
+	
+
+	@Test
+	public void testLazy() throws Exception {
+		Model shapesModel = ValidationTestUtil.readTurtle(SHAPES);
+		Node p = NodeFactory.createURI(ValidationTestUtil.NS + "p");
+		List<Node> queried = new ArrayList<>();
+		Graph graph = new WrappedGraph(ValidationTestUtil.readTurtle(DATA).getGraph()) {
+			@Override
+			public ExtendedIterator<Triple> find(Node s, Node pr, Node o) {
+				queried.add(pr);
+				return super.find(s, pr, o);
+			}
+		};
+		Dataset dataset = ARQFactory.get().getDataset(ModelFactory.createModelForGraph(graph));
+		Resource shape = shapesModel.getResource(ValidationTestUtil.NS + "Shape");
+		ExtendedIterator<Node> it = SHACLUtil.listTargetNodes(shape, dataset);
+		try {
+			queried.clear();
+			Assert.assertTrue(it.hasNext());
+			it.next();
+			Assert.assertFalse(queried.contains(p));
+			while(it.hasNext()) {
+				it.next();
+			}
+			Assert.assertTrue(queried.contains(p));
+		}
+		finally {
+			it.close();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package org.topbraid.shacl.validation;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.validation.sparql.AbstractSPARQLExecutor;
+
+/**
+ * Checks that SPARQL constraints produce the same results when their queries are executed
+ * for batches of focus nodes using VALUES blocks as when they are executed once per focus node.
+ */
+public class TestBatchedSPARQL {
+	
+	// Only the queries without nested blocks, aggregations or sub-queries are executed in batches
+	private final static String SHAPES =
+			"ex:PersonShape a sh:NodeShape ;\n" +
+			"	sh:targetClass ex:Person ;\n" +
+			"	sh:sparql [\n" +
+			"		sh:message \"{$this} has no name\" ;\n" +
+			"		sh:select \"\"\"SELECT $this WHERE { FILTER NOT EXISTS { $this <http://example.org/ns#name> ?name } }\"\"\" ;\n" +
+			"	] ;\n" +
+			"	sh:sparql [\n" +
+			"		sh:message \"{$this} knows {?value} who is too young\" ;\n" +
+			"		sh:select \"\"\"SELECT $this ?value WHERE { $this <http://example.org/ns#knows> ?value . ?value <http://example.org/ns#age> ?age . FILTER (?age < 18) }\"\"\" ;\n" +
+			"	] ;\n" +
+			"	sh:sparql [\n" +
+			"		sh:message \"{$this} knows {?value} who may be too young\" ;\n" +
+			"		sh:select \"\"\"SELECT $this ?value WHERE { $this <http://example.org/ns#knows> ?value . OPTIONAL { ?value <http://example.org/ns#age> ?age } FILTER (!bound(?age) || ?age < 18) }\"\"\" ;\n" +
+			"	] ;\n" +
+			"	sh:sparql [\n" +
+			"		sh:message \"{$this} knows {?count} people\" ;\n" +
+			"		sh:select \"\"\"SELECT $this (COUNT(?other) AS ?count) WHERE { $this <http://example.org/ns#knows> ?other } GROUP BY $this HAVING (COUNT(?other) > 1)\"\"\" ;\n" +
+			"	] ;\n" +
+			"	sh:sparql [\n" +
+			"		sh:message \"{$this} is known by {?value}\" ;\n" +
+			"		sh:select \"\"\"SELECT $this ?value WHERE { { SELECT $this ?value WHERE { ?value <http://example.org/ns#knows> $this } LIMIT 1 } }\"\"\" ;\n" +
+			"	] ;\n" +
+			"	sh:property [\n" +
+			"		sh:path ex:knows ;\n" +
+			"		sh:sparql [\n" +
+			"			sh:message \"{?value} is not a Person\" ;\n" +
+			"			sh:select \"\"\"SELECT $this ?value WHERE { $this $PATH ?value . FILTER NOT EXISTS { ?value a <http://example.org/ns#Person> } }\"\"\" ;\n" +
+			"		] ;\n" +
+			"		sh:sparql [\n" +
+			"			sh:message \"{?value} is a thing\" ;\n" +
+			"			sh:select \"\"\"SELECT $this ?value WHERE { $this $PATH ?value . FILTER (strstarts(str(?value), \\\"http://example.org/ns#thing\\\")) }\"\"\" ;\n" +
+			"		] ;\n" +
+			"	] .\n";
+	
+	
+	@Test
+	public void testSameResultsAsPerNode() throws Exception {
+		Model model = createData();
+		List<RDFNode> focusNodes = model.listSubjectsWithProperty(RDF.type, model.getResource(ValidationTestUtil.NS + "Person")).mapWith(r -> (RDFNode)r).toList();
+		Assert.assertTrue(focusNodes.size() > 50);
+		
+		// Duplicate focus nodes must produce their results once per occurrence
+		List<RDFNode> withDuplicates = new ArrayList<>();
+		for(int i = 0; i < focusNodes.size(); i++) {
+			withDuplicates.add(focusNodes.get(i));
+			if(i % 3 == 0) {
+				withDuplicates.add(focusNodes.get(i));
+			}
+		}
+		
+		List<String> perNode = validate(model, withDuplicates, 1);
+		Assert.assertFalse(perNode.isEmpty());
+		Assert.assertEquals(perNode, validate(model, withDuplicates, 16));
+		Assert.assertEquals(perNode, validate(model, withDuplicates, 500));
+		
+		Assert.assertEquals(ValidationTestUtil.getResults(validateAll(model, 1)), ValidationTestUtil.getResults(validateAll(model, 16)));
+	}
+	
+	
+	@Test
+	public void testSameReportsForTestFiles() throws Exception {
+		for(File file : ValidationTestUtil.listTestFiles()) {
+			Model model = ValidationTestUtil.readFile(file);
+			Resource perNode = validateAll(model, model, 1);
+			Resource batched = validateAll(model, model, 500);
+			Assert.assertTrue("Different reports for " + file, perNode.getModel().getGraph().isIsomorphicWith(batched.getModel().getGraph()));
+		}
+	}
+	
+	
+	private static Model createData() {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 100; i++) {
+			sb.append("ex:p" + i + " a ex:Person");
+			if(i % 3 != 0) {
+				sb.append(" ; ex:name \"P" + i + "\"");
+			}
+			if(i % 4 == 0) {
+				sb.append(" ; ex:age " + (i % 40));
+			}
+			sb.append(" ; ex:knows ex:p" + ((i * 7) % 100));
+			if(i % 5 == 0) {
+				sb.append(" ; ex:knows ex:p" + ((i + 1) % 100) + ", ex:thing" + i);
+			}
+			sb.append(" .\n");
+		}
+		return ValidationTestUtil.readTurtle(SHAPES + sb);
+	}
+	
+	
+	private static List<String> validate(Model model, List<RDFNode> focusNodes, int batchSize) {
+		int oldBatchSize = AbstractSPARQLExecutor.batchSize;
+		AbstractSPARQLExecutor.batchSize = batchSize;
+		try {
+			ValidationEngine engine = ValidationTestUtil.createEngine(model, model);
+			Resource shape = model.getResource(ValidationTestUtil.NS + "PersonShape");
+			return ValidationTestUtil.getResults(engine.validateNodesAgainstShape(focusNodes, shape.asNode()));
+		}
+		finally {
+			AbstractSPARQLExecutor.batchSize = oldBatchSize;
+		}
+	}
+	
+	
+	private static Resource validateAll(Model model, int batchSize) throws InterruptedException {
+		return validateAll(model, model, batchSize);
+	}
+	
+	
+	private static Resource validateAll(Model dataModel, Model shapesModel, int batchSize) throws InterruptedException {
+		int oldBatchSize = AbstractSPARQLExecutor.batchSize;
+		AbstractSPARQLExecutor.batchSize = batchSize;
+		try {
+			return ValidationTestUtil.createEngine(dataModel, shapesModel).validateAll();
+		}
+		finally {
+			AbstractSPARQLExecutor.batchSize = oldBatchSize;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package org.topbraid.shacl.validation;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.core.DatasetImpl;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.arq.SHACLFunctions;
+import org.topbraid.shacl.engine.ShapesGraph;
+import org.topbraid.shacl.engine.filters.ExcludeMetaShapesFilter;
+import org.topbraid.shacl.vocabulary.SH;
+import org.topbraid.spin.arq.ARQFactory;
+import org.topbraid.spin.util.JenaUtil;
+
+/**
+ * Checks that the ConformanceCache remembers verdicts per data graph and does not remember
+ * verdicts that depend on a cut-off recursion.
+ */
+public class TestConformanceCache {
+
+	private final static Node FOCUS_NODE = NodeFactory.createURI(ValidationTestUtil.NS + "a");
+
+	private final static Node SHAPE = NodeFactory.createURI(ValidationTestUtil.NS + "Shape");
+
+	private final static Node OTHER_SHAPE = NodeFactory.createURI(ValidationTestUtil.NS + "OtherShape");
+
+	private final static URI SHAPES_GRAPH_URI = URI.create("urn:x-shacl-shapes-graph:test");
+
+
+	@Test
+	public void testMemo() {
+		Graph graph = JenaUtil.createMemoryModel().getGraph();
+		Graph otherGraph = JenaUtil.createMemoryModel().getGraph();
+		AtomicInteger count = new AtomicInteger();
+		boolean nested = ConformanceCache.begin();
+		try {
+			Assert.assertTrue(ConformanceCache.nodeConformsToShape(FOCUS_NODE, SHAPE, SHAPES_GRAPH_URI, graph, () -> count.incrementAndGet() > 0));
+			Assert.assertTrue(ConformanceCache.nodeConformsToShape(FOCUS_NODE, SHAPE, SHAPES_GRAPH_URI, graph, () -> count.incrementAndGet() < 0));
+			Assert.assertEquals(1, count.get());
+			
+			// A different data graph has its own verdict
+			Assert.assertFalse(ConformanceCache.nodeConformsToShape(FOCUS_NODE, SHAPE, SHAPES_GRAPH_URI, otherGraph, () -> count.incrementAndGet() < 0));
+			Assert.assertEquals(2, count.get());
+		}
+		finally {
+			ConformanceCache.end(nested);
+		}
+		
+		// Without an active cache, nothing is remembered
+		ConformanceCache.nodeConformsToShape(FOCUS_NODE, SHAPE, SHAPES_GRAPH_URI, graph, () -> count.incrementAndGet() > 0);
+		ConformanceCache.nodeConformsToShape(FOCUS_NODE, SHAPE, SHAPES_GRAPH_URI, graph, () -> count.incrementAndGet() > 0);
+		Assert.assertEquals(4, count.get());
+	}
+
+
+	@Test
+	public void testUncacheable() {
+		Graph graph = JenaUtil.createMemoryModel().getGraph();
+		AtomicInteger count = new AtomicInteger();
+		boolean nested = ConformanceCache.begin();
+		try {
+			// The inner check cuts off a recursion, which also makes the outer check uncacheable
+			for(int i = 0; i < 2; i++) {
+				ConformanceCache.nodeConformsToShape(FOCUS_NODE, SHAPE, SHAPES_GRAPH_URI, graph, () -> {
+					count.incrementAndGet();
+					return ConformanceCache.nodeConformsToShape(FOCUS_NODE, OTHER_SHAPE, SHAPES_GRAPH_URI, graph, () -> {
+						count.incrementAndGet();
+						ConformanceCache.markUncacheable();
+						return true;
+					});
+				});
+			}
+			Assert.assertEquals(4, count.get());
+			
+			// A check that follows on the same thread is cached again
+			ConformanceCache.nodeConformsToShape(OTHER_SHAPE, SHAPE, SHAPES_GRAPH_URI, graph, () -> count.incrementAndGet() > 0);
+			ConformanceCache.nodeConformsToShape(OTHER_SHAPE, SHAPE, SHAPES_GRAPH_URI, graph, () -> count.incrementAndGet() > 0);
+			Assert.assertEquals(5, count.get());
+		}
+		finally {
+			ConformanceCache.end(nested);
+		}
+	}
+
+
+	@Test
+	public void testDifferentDatasetsInOneRun() throws Exception {
+		Model shapesModel = ValidationTestUtil.readTurtle(
+				"ex:Shape a sh:NodeShape ; sh:targetNode ex:a ; sh:node ex:NestedShape .\n" +
+				"ex:NestedShape a sh:NodeShape ; sh:property [ sh:path ex:p ; sh:minCount 1 ] .\n");
+		Model conforming = ValidationTestUtil.readTurtle("ex:a ex:p 1 .\n");
+		Model violating = ValidationTestUtil.readTurtle("ex:a ex:q 1 .\n");
+		boolean nested = ConformanceCache.begin();
+		try {
+			Assert.assertTrue(createEngine(conforming, shapesModel).validateAll().hasLiteral(SH.conforms, true));
+			ValidationEngine engine = createEngine(violating, shapesModel);
+			engine.validateAll();
+			Assert.assertFalse(engine.conforms());
+			Assert.assertEquals(1, ValidationTestUtil.getResults(engine.getReport()).size());
+		}
+		finally {
+			ConformanceCache.end(nested);
+		}
+	}
+
+
+	@Test
+	public void testStableDataGraph() {
+		// tosh:hasShape wraps the DatasetGraph of each query, which must lead to the same key
+		Dataset dataset = ARQFactory.get().getDataset(JenaUtil.createMemoryModel());
+		Graph graph = DatasetImpl.wrap(dataset.asDatasetGraph()).getDefaultModel().getGraph();
+		Assert.assertSame(graph, DatasetImpl.wrap(dataset.asDatasetGraph()).getDefaultModel().getGraph());
+	}
+	
+	
+	// Uses the same shapes graph URI for all engines, so that only the data graph differs
+	private static ValidationEngine createEngine(Model dataModel, Model shapesModel) {
+		shapesModel = ValidationTestUtil.withSystemGraph(shapesModel);
+		SHACLFunctions.registerFunctions(shapesModel);
+		Dataset dataset = ARQFactory.get().getDataset(dataModel);
+		dataset.addNamedModel(SHAPES_GRAPH_URI.toString(), shapesModel);
+		ShapesGraph shapesGraph = new ShapesGraph(shapesModel);
+		shapesGraph.setShapeFilter(new ExcludeMetaShapesFilter());
+		return ValidationEngineFactory.get().create(dataset, SHAPES_GRAPH_URI, shapesGraph, null);
+	}
+}
@@ -0,0 +1,51 @@
+package org.topbraid.shacl.validation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.rdf.model.Model;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.engine.Shape;
+import org.topbraid.shacl.engine.ShapesGraph;
+import org.topbraid.shacl.vocabulary.SH;
+
+/**
+ * Checks that the constraints are ordered by cost class and declaration order,
+ * and only by their timings on request.
+ */
+public class TestConstraintCosts {
+
+	private final static String SHAPES =
+			"ex:PersonShape a sh:NodeShape ;\n" +
+			"	sh:sparql [ sh:select \"SELECT $this WHERE { }\" ] ;\n" +
+			"	sh:sparql [ sh:select \"SELECT $this WHERE { FILTER (false) }\" ] ;\n" +
+			"	sh:nodeKind sh:IRI .\n";
+
+
+	@Test
+	public void testOrder() {
+		Model model = ValidationTestUtil.readTurtle(SHAPES);
+		ShapesGraph shapesGraph = new ShapesGraph(ValidationTestUtil.withSystemGraph(model));
+		Shape shape = shapesGraph.getShape(model.getResource(ValidationTestUtil.NS + "PersonShape").asNode());
+		List<Constraint> declared = new ArrayList<>();
+		for(Constraint constraint : shape.getConstraints()) {
+			if(SH.SPARQLConstraintComponent.equals(constraint.getComponent())) {
+				declared.add(constraint);
+			}
+		}
+		Assert.assertEquals(2, declared.size());
+		declared.get(0).recordExecution(1000000, 1);
+		declared.get(1).recordExecution(1000, 1);
+
+		List<Constraint> stable = ConstraintCosts.get().getOrderedConstraints(shape, false);
+		Assert.assertEquals(SH.NodeKindConstraintComponent, stable.get(0).getComponent());
+		Assert.assertEquals(declared, stable.subList(1, 3));
+
+		List<Constraint> measured = ConstraintCosts.get().getOrderedConstraints(shape, true);
+		Assert.assertEquals(SH.NodeKindConstraintComponent, measured.get(0).getComponent());
+		Assert.assertSame(declared.get(1), measured.get(1));
+		Assert.assertSame(declared.get(0), measured.get(2));
+	}
+}
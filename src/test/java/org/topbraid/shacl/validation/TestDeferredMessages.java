@@ -0,0 +1,75 @@
+package org.topbraid.shacl.validation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that deferred messages are only produced when the messages of a result are accessed.
+ */
+public class TestDeferredMessages {
+
+	private final static String SHAPES =
+			"ex:PersonShape a sh:NodeShape ;\n" +
+			"	sh:targetClass ex:Person ;\n" +
+			"	sh:property [ sh:path ex:age ; sh:minInclusive 18 ; sh:message \"{$this} is too young ({?value})\" ] ;\n" +
+			"	sh:sparql [\n" +
+			"		sh:message \"{$this} has no name\" ;\n" +
+			"		sh:select \"\"\"SELECT $this WHERE { FILTER NOT EXISTS { $this <http://example.org/ns#name> ?name } }\"\"\" ] .\n";
+
+	private final static String DATA =
+			"ex:a a ex:Person ; ex:age 12 .\n" +
+			"ex:b a ex:Person ; ex:age 16 ; ex:name \"B\" .\n" +
+			"ex:c a ex:Person ; ex:age 30 .\n";
+
+
+	@Test
+	public void testDeferred() throws Exception {
+		AtomicInteger count = new AtomicInteger();
+		CompactResultStore store = new CompactResultStore();
+		ValidationEngine engine = createEngine(true, node -> {
+			count.incrementAndGet();
+			return node.toString();
+		});
+		engine.setResultSink(store);
+		engine.validateAll();
+		Assert.assertEquals(4, store.size());
+		Assert.assertEquals(0, count.get());
+
+		List<String> messages = new ArrayList<>();
+		for(int i = 0; i < store.size(); i++) {
+			messages.add(store.getMessages(i).get(0).toString());
+		}
+		Assert.assertTrue(count.get() > 0);
+		Assert.assertEquals(getMessages(), messages);
+	}
+
+
+	private List<String> getMessages() throws Exception {
+		List<String> messages = new ArrayList<>();
+		ValidationEngine engine = createEngine(false, node -> node.toString());
+		engine.setResultSink(result -> {
+			for(RDFNode message : result.getMessages()) {
+				messages.add(message.toString());
+			}
+		});
+		engine.validateAll();
+		return messages;
+	}
+
+
+	private static ValidationEngine createEngine(boolean defer, Function<RDFNode,String> labelFunction) {
+		Model shapesModel = ValidationTestUtil.readTurtle(SHAPES);
+		Model dataModel = ValidationTestUtil.readTurtle(DATA);
+		ValidationEngine engine = ValidationTestUtil.createEngine(dataModel, shapesModel);
+		engine.setDeferMessages(defer);
+		engine.setLabelFunction(labelFunction);
+		return engine;
+	}
+}
@@ -0,0 +1,79 @@
+package org.topbraid.shacl.validation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.engine.ShapesGraph;
+import org.topbraid.shacl.vocabulary.SH;
+
+/**
+ * Checks that the deprecated createResult and addResultMessage still work for
+ * ConstraintExecutors that have been written against the old API.
+ */
+@SuppressWarnings("deprecation")
+public class TestDeprecatedResultMethods {
+
+	private final static String SHAPES =
+			"ex:PersonShape a sh:NodeShape ;\n" +
+			"	sh:nodeKind sh:IRI .\n";
+
+
+	@Test
+	public void testReportSink() {
+		Model model = ValidationTestUtil.readTurtle(SHAPES);
+		ValidationEngine engine = ValidationTestUtil.createEngine(model, model);
+		Constraint constraint = getConstraint(engine);
+		RDFNode focusNode = model.getResource(ValidationTestUtil.NS + "a");
+		
+		Resource result = engine.createResult(SH.ValidationResult, constraint, focusNode);
+		result.addProperty(SH.value, focusNode);
+		QuerySolutionMap bindings = new QuerySolutionMap();
+		bindings.add("value", focusNode);
+		engine.addResultMessage(result, ResourceFactory.createStringLiteral("Bad value {?value}"), bindings);
+		
+		Assert.assertFalse(engine.conforms());
+		Assert.assertEquals(engine.getReport().getModel(), result.getModel());
+		Assert.assertTrue(engine.getReport().hasProperty(SH.result, result));
+		Assert.assertTrue(result.hasProperty(SH.focusNode, focusNode));
+		Assert.assertTrue(result.hasProperty(SH.sourceConstraintComponent, SH.NodeKindConstraintComponent));
+		Assert.assertTrue(result.hasProperty(SH.value, focusNode));
+		Assert.assertEquals("Bad value ex:a", result.getProperty(SH.resultMessage).getString());
+	}
+
+
+	@Test
+	public void testOtherSink() {
+		Model model = ValidationTestUtil.readTurtle(SHAPES);
+		ValidationEngine engine = ValidationTestUtil.createEngine(model, model);
+		List<ValidationResult> results = new ArrayList<>();
+		engine.setResultSink(results::add);
+		engine.setMaxResults(1);
+		Constraint constraint = getConstraint(engine);
+		RDFNode focusNode = model.getResource(ValidationTestUtil.NS + "a");
+		
+		Resource result = engine.createResult(SH.ValidationResult, constraint, focusNode);
+		engine.createResult(SH.ValidationResult, constraint, focusNode);
+		
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals(focusNode, results.get(0).getFocusNode());
+		Assert.assertSame(constraint, results.get(0).getConstraint());
+		Assert.assertTrue(result.hasProperty(RDF.type, SH.ValidationResult));
+		Assert.assertFalse(engine.getReport().hasProperty(SH.result));
+		Assert.assertFalse(engine.conforms());
+	}
+	
+	
+	private static Constraint getConstraint(ValidationEngine engine) {
+		ShapesGraph shapesGraph = engine.getShapesGraph();
+		return shapesGraph.getShape(ResourceFactory.createResource(ValidationTestUtil.NS + "PersonShape").asNode()).getConstraints().iterator().next();
+	}
+}
@@ -0,0 +1,55 @@
+package org.topbraid.shacl.validation;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.engine.Shape;
+import org.topbraid.shacl.engine.ShapesGraph;
+import org.topbraid.shacl.vocabulary.SH;
+
+/**
+ * Checks that ConstraintExecutors are shared through the ShapesGraph and that
+ * edits to the shapes take effect once a new ShapesGraph is used.
+ */
+public class TestExecutorCache {
+	
+	private final static String SHAPES =
+			"ex:PersonShape a sh:NodeShape ;\n" +
+			"	sh:targetClass ex:Person ;\n" +
+			"	sh:sparql ex:NameConstraint .\n" +
+			"ex:NameConstraint\n" +
+			"	sh:message \"Missing name\" ;\n" +
+			"	sh:select \"\"\"SELECT $this WHERE { FILTER NOT EXISTS { $this <http://example.org/ns#name> ?name } }\"\"\" .\n" +
+			"ex:a a ex:Person ; ex:name \"A\" .\n" +
+			"ex:b a ex:Person .\n";
+	
+	
+	@Test
+	public void testSharedByEngines() {
+		Model model = ValidationTestUtil.readTurtle(SHAPES);
+		Model shapesModel = ValidationTestUtil.withSystemGraph(model);
+		ShapesGraph shapesGraph = new ShapesGraph(shapesModel);
+		Shape shape = shapesGraph.getShape(model.getResource(ValidationTestUtil.NS + "PersonShape").asNode());
+		Constraint constraint = shape.getConstraints().iterator().next();
+		ValidationEngine engine1 = ValidationTestUtil.createEngine(model, shapesGraph, model);
+		ValidationEngine engine2 = ValidationTestUtil.createEngine(model, shapesGraph, model);
+		ConstraintExecutor executor = shapesGraph.getExecutor(constraint, engine1);
+		Assert.assertNotNull(executor);
+		Assert.assertSame(executor, shapesGraph.getExecutor(constraint, engine2));
+		Assert.assertNotSame(executor, new ShapesGraph(shapesModel).getExecutor(constraint, engine2));
+	}
+	
+	
+	@Test
+	public void testShapesEditedInPlace() throws Exception {
+		Model model = ValidationTestUtil.readTurtle(SHAPES);
+		Assert.assertEquals(1, ValidationTestUtil.getResults(ValidationUtil.validateModel(model, model, false)).size());
+		
+		Resource constraint = model.getResource(ValidationTestUtil.NS + "NameConstraint");
+		constraint.removeAll(SH.select);
+		constraint.addProperty(SH.select, "SELECT $this WHERE { $this a <http://example.org/ns#Person> }");
+		Assert.assertEquals(2, ValidationTestUtil.getResults(ValidationUtil.validateModel(model, model, false)).size());
+	}
+}
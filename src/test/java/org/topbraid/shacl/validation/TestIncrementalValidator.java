@@ -0,0 +1,185 @@
+package org.topbraid.shacl.validation;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.engine.ShapesGraph;
+import org.topbraid.spin.util.JenaUtil;
+
+/**
+ * Checks that the reports of the IncrementalValidator are the same as the ones of
+ * a full validation after random additions and removals of triples.
+ */
+public class TestIncrementalValidator {
+
+	private final static String SHAPES =
+			"ex:PersonShape a sh:NodeShape ;\n" +
+			"	sh:targetClass ex:Person ;\n" +
+			"	sh:property [ sh:path ex:knows ; sh:class ex:Person ] ;\n" +
+			"	sh:property [ sh:path ( ex:knows ex:name ) ; sh:minCount 1 ] ;\n" +
+			"	sh:property [ sh:path [ sh:inversePath ex:knows ] ; sh:maxCount 1 ] ;\n" +
+			"	sh:property [ sh:path ( [ sh:inversePath ex:knows ] ex:friend ) ; sh:maxCount 1 ] ;\n" +
+			"	sh:property [ sh:path ex:friend ; sh:node ex:NamedShape ] .\n" +
+			"ex:NamedShape a sh:NodeShape ;\n" +
+			"	sh:property [ sh:path ex:name ; sh:minCount 1 ; sh:datatype xsd:string ] .\n" +
+			"ex:FriendShape a sh:NodeShape ;\n" +
+			"	sh:targetObjectsOf ex:friend ;\n" +
+			"	sh:class ex:Person .\n";
+
+	private final static String CLOSURE_SHAPES = SHAPES +
+			"ex:BossShape a sh:NodeShape ;\n" +
+			"	sh:targetSubjectsOf ex:boss ;\n" +
+			"	sh:property [ sh:path [ sh:oneOrMorePath ex:boss ] ; sh:maxCount 3 ] .\n";
+
+	private final static Node[] PREDICATES = {
+		RDF.type.asNode(),
+		NodeFactory.createURI(ValidationTestUtil.NS + "knows"),
+		NodeFactory.createURI(ValidationTestUtil.NS + "friend"),
+		NodeFactory.createURI(ValidationTestUtil.NS + "name"),
+		NodeFactory.createURI(ValidationTestUtil.NS + "boss")
+	};
+
+
+	@Test
+	public void testBoundedPaths() throws Exception {
+		for(long seed = 0; seed < 5; seed++) {
+			run(SHAPES, seed);
+		}
+	}
+
+
+	@Test
+	public void testUnboundedPaths() throws Exception {
+		for(long seed = 0; seed < 5; seed++) {
+			run(CLOSURE_SHAPES, seed);
+		}
+	}
+
+
+	@Test
+	public void testUnattributedResults() throws Exception {
+		Model shapesModel = ValidationTestUtil.readTurtle(
+				"ex:PersonShape a sh:NodeShape ;\n" +
+				"	sh:targetClass ex:Person ;\n" +
+				"	sh:property [ sh:path ex:name ; sh:minCount 1 ] .\n");
+		Model dataModel = ValidationTestUtil.readTurtle(
+				"ex:a a ex:Person .\n" +
+				"ex:b a ex:Person .\n");
+		Resource b = dataModel.getResource(ValidationTestUtil.NS + "b");
+		Resource elsewhere = dataModel.getResource(ValidationTestUtil.NS + "elsewhere");
+		ValidationEngineFactory oldFactory = ValidationEngineFactory.get();
+		ValidationEngineFactory.set(new ValidationEngineFactory() {
+			
+			// Reports the results of ex:b with a focus node that was not validated
+			@Override
+			public ValidationEngine create(Dataset dataset, URI shapesGraphURI, ShapesGraph shapesGraph, Resource report) {
+				return new ValidationEngine(dataset, shapesGraphURI, shapesGraph, report) {
+					@Override
+					public void setResultSink(ValidationResultSink sink) {
+						super.setResultSink(result -> {
+							if(b.equals(result.getFocusNode())) {
+								result = new ValidationResult(result.getResultType(), result.getConstraint(), elsewhere, result.getPath(), 
+										result.getValue(), result.getMessages(), result.getSourceConstraint(), result.getDetails());
+							}
+							sink.addResult(result);
+						});
+					}
+				};
+			}
+		});
+		try {
+			ValidationEngine engine = ValidationTestUtil.createEngine(dataModel, shapesModel);
+			IncrementalValidator validator = new IncrementalValidator(engine.getDataset(), engine.getShapesGraphURI(), engine.getShapesGraph());
+			Assert.assertEquals(2, ValidationTestUtil.getResults(validator.validateAll()).size());
+			
+			// Only ex:a is affected, but the result of ex:b must survive
+			Triple triple = Triple.create(NodeFactory.createURI(ValidationTestUtil.NS + "a"), PREDICATES[3], NodeFactory.createLiteral("A"));
+			dataModel.getGraph().add(triple);
+			List<String> results = ValidationTestUtil.getResults(validator.update(Collections.singletonList(triple), Collections.emptyList()));
+			Assert.assertEquals(1, results.size());
+			Assert.assertTrue(results.get(0).contains("elsewhere"));
+			
+			// The shape is now validated per focus node, so that later updates are incremental again
+			dataModel.getGraph().delete(triple);
+			Assert.assertEquals(2, ValidationTestUtil.getResults(validator.update(Collections.emptyList(), Collections.singletonList(triple))).size());
+		}
+		finally {
+			ValidationEngineFactory.set(oldFactory);
+		}
+	}
+
+
+	private void run(String shapes, long seed) throws Exception {
+		Random random = new Random(seed);
+		Model shapesModel = ValidationTestUtil.readTurtle(shapes);
+		Model dataModel = JenaUtil.createMemoryModel();
+		Graph graph = dataModel.getGraph();
+		for(int i = 0; i < 60; i++) {
+			graph.add(createTriple(random));
+		}
+		ValidationEngine engine = ValidationTestUtil.createEngine(dataModel, shapesModel);
+		IncrementalValidator validator = new IncrementalValidator(engine.getDataset(), engine.getShapesGraphURI(), engine.getShapesGraph());
+		validator.validateAll();
+		for(int step = 0; step < 30; step++) {
+			List<Triple> added = new ArrayList<>();
+			List<Triple> removed = new ArrayList<>();
+			int edits = 1 + random.nextInt(3);
+			for(int i = 0; i < edits; i++) {
+				if(random.nextBoolean()) {
+					Triple triple = createTriple(random);
+					if(!graph.contains(triple)) {
+						graph.add(triple);
+						added.add(triple);
+					}
+				}
+				else {
+					List<Triple> triples = graph.find(Node.ANY, Node.ANY, Node.ANY).toList();
+					if(!triples.isEmpty()) {
+						Triple triple = triples.get(random.nextInt(triples.size()));
+						graph.delete(triple);
+						removed.add(triple);
+					}
+				}
+			}
+			List<String> expected = ValidationTestUtil.getResults(ValidationTestUtil.createEngine(dataModel, shapesModel).validateAll());
+			List<String> actual = ValidationTestUtil.getResults(validator.update(added, removed));
+			Assert.assertEquals("Seed " + seed + ", step " + step + ": +" + added + " -" + removed, expected, actual);
+		}
+	}
+
+
+	private static Triple createTriple(Random random) {
+		Node subject = createNode(random);
+		Node predicate = PREDICATES[random.nextInt(PREDICATES.length)];
+		Node object;
+		if(predicate.equals(RDF.type.asNode())) {
+			object = NodeFactory.createURI(ValidationTestUtil.NS + (random.nextInt(4) == 0 ? "Thing" : "Person"));
+		}
+		else if(predicate.getLocalName().equals("name")) {
+			object = random.nextInt(3) == 0 ? NodeFactory.createLiteral("1", XSDDatatype.XSDinteger) : NodeFactory.createLiteral("N");
+		}
+		else {
+			object = createNode(random);
+		}
+		return Triple.create(subject, predicate, object);
+	}
+
+
+	private static Node createNode(Random random) {
+		return NodeFactory.createURI(ValidationTestUtil.NS + "n" + random.nextInt(20));
+	}
+}
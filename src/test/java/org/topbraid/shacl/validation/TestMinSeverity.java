@@ -0,0 +1,78 @@
+package org.topbraid.shacl.validation;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.engine.filters.MinSeverityShapeFilter;
+import org.topbraid.shacl.vocabulary.SH;
+
+/**
+ * Checks that pruning the constraints below a minimum severity produces the same results
+ * as a full validation with the results of lower severity removed.
+ */
+public class TestMinSeverity {
+	
+	private final static String SHAPES =
+			"ex:WarningShape a sh:NodeShape ;\n" +
+			"	sh:targetNode ex:a ;\n" +
+			"	sh:severity sh:Warning ;\n" +
+			"	sh:nodeKind sh:Literal ;\n" +
+			"	sh:property [ sh:path ex:p ; sh:minCount 1 ; sh:severity sh:Violation ] .\n" +
+			"ex:ViolationShape a sh:NodeShape ;\n" +
+			"	sh:targetNode ex:b ;\n" +
+			"	sh:node ex:NestedShape .\n" +
+			"ex:NestedShape a sh:NodeShape ;\n" +
+			"	sh:severity sh:Info ;\n" +
+			"	sh:nodeKind sh:Literal .\n";
+	
+
+	@Test
+	public void testViolationsInWarningShapes() throws Exception {
+		Model dataModel = ValidationTestUtil.readTurtle("ex:b ex:p 1 .\n");
+		Model shapesModel = ValidationTestUtil.readTurtle(SHAPES);
+		Assert.assertEquals(3, ValidationTestUtil.getResults(ValidationTestUtil.createEngine(dataModel, shapesModel).validateAll()).size());
+		
+		ValidationEngine engine = ValidationTestUtil.createEngine(dataModel, shapesModel);
+		engine.setMinSeverity(SH.Violation);
+		Resource report = engine.validateAll();
+		List<String> results = ValidationTestUtil.getResults(report);
+		
+		// The sh:nodeKind of ex:WarningShape is pruned, but not its property shape nor the
+		// constraints of the nested shape
+		Assert.assertEquals(2, results.size());
+		for(Statement s : report.listProperties(SH.result).toList()) {
+			Assert.assertTrue(s.getResource().hasProperty(SH.resultSeverity, SH.Violation));
+		}
+		Assert.assertTrue(report.getModel().contains(null, SH.sourceConstraintComponent, SH.MinCountConstraintComponent));
+		Assert.assertTrue(report.getModel().contains(null, SH.sourceConstraintComponent, SH.NodeConstraintComponent));
+	}
+	
+
+	@Test
+	public void testSameResultsAsFiltered() throws Exception {
+		int compared = 0;
+		for(File file : ValidationTestUtil.listTestFiles()) {
+			Model model = ValidationTestUtil.readFile(file);
+			for(Resource minSeverity : new Resource[] { SH.Warning, SH.Violation }) {
+				Resource fullReport = ValidationTestUtil.createEngine(model, model).validateAll();
+				for(Statement s : fullReport.listProperties(SH.result).toList()) {
+					Resource severity = s.getResource().getPropertyResourceValue(SH.resultSeverity);
+					if(severity != null && MinSeverityShapeFilter.getScore(severity) < MinSeverityShapeFilter.getScore(minSeverity)) {
+						fullReport.getModel().remove(s);
+					}
+				}
+				ValidationEngine engine = ValidationTestUtil.createEngine(model, model);
+				engine.setMinSeverity(minSeverity);
+				Assert.assertEquals("Different results for " + file + " at " + minSeverity.getLocalName(), 
+						ValidationTestUtil.getResults(fullReport), ValidationTestUtil.getResults(engine.validateAll()));
+				compared++;
+			}
+		}
+		Assert.assertTrue(compared > 200);
+	}
+}
@@ -0,0 +1,76 @@
+package org.topbraid.shacl.validation;
+
+import java.io.File;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.engine.Shape;
+import org.topbraid.shacl.engine.ShapesGraph;
+import org.topbraid.shacl.validation.java.AbstractNativeConstraintExecutor;
+
+/**
+ * Checks that the native executors of the SHACL Core constraint components produce the
+ * same reports, including the messages, as the SPARQL-based validators.
+ */
+public class TestNativeExecutors {
+	
+	@Test
+	public void testSameReportsAsSPARQL() throws Exception {
+		int compared = 0;
+		int nativeFiles = 0;
+		for(File file : ValidationTestUtil.listTestFiles()) {
+			Model model = ValidationTestUtil.readFile(file);
+			ShapesGraph shapesGraph = new ShapesGraph(ValidationTestUtil.withSystemGraph(model));
+			ValidationEngine engine = ValidationTestUtil.createEngine(model, shapesGraph, model);
+			Resource nativeReport = engine.validateAll();
+			if(usesNativeExecutors(shapesGraph, engine)) {
+				nativeFiles++;
+			}
+			
+			Resource sparqlReport;
+			ConstraintExecutors.get().setNativePreferred(false);
+			try {
+				sparqlReport = ValidationTestUtil.createEngine(model, model).validateAll();
+			}
+			finally {
+				ConstraintExecutors.get().setNativePreferred(true);
+			}
+			
+			Assert.assertTrue("Different reports for " + file, nativeReport.getModel().getGraph().isIsomorphicWith(sparqlReport.getModel().getGraph()));
+			compared++;
+		}
+		Assert.assertTrue(compared > 100);
+		Assert.assertTrue(nativeFiles > 20);
+	}
+	
+	
+	private static boolean usesNativeExecutors(ShapesGraph shapesGraph, ValidationEngine engine) {
+		for(Shape shape : shapesGraph.getRootShapes()) {
+			for(Constraint constraint : shape.getConstraints()) {
+				if(shapesGraph.getExecutor(constraint, engine) instanceof AbstractNativeConstraintExecutor) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	
+	@Test
+	public void testSwitchOnSharedShapesGraph() {
+		Model model = ValidationTestUtil.readTurtle("ex:PersonShape a sh:NodeShape ; sh:targetNode ex:a ; sh:nodeKind sh:IRI .\n");
+		ShapesGraph shapesGraph = new ShapesGraph(ValidationTestUtil.withSystemGraph(model));
+		ValidationEngine engine = ValidationTestUtil.createEngine(model, shapesGraph, model);
+		Assert.assertTrue(usesNativeExecutors(shapesGraph, engine));
+		ConstraintExecutors.get().setNativePreferred(false);
+		try {
+			Assert.assertFalse(usesNativeExecutors(shapesGraph, engine));
+		}
+		finally {
+			ConstraintExecutors.get().setNativePreferred(true);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package org.topbraid.shacl.validation;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that the parallel mode of validateAll produces the same reports as sequential validation.
+ */
+public class TestParallelValidation {
+	
+	private static ExecutorService executorService;
+	
+	
+	@BeforeClass
+	public static void setUp() {
+		executorService = Executors.newFixedThreadPool(4);
+	}
+	
+	
+	@AfterClass
+	public static void tearDown() {
+		executorService.shutdownNow();
+	}
+	
+	
+	@Test
+	public void testSameReportsAsSequential() throws Exception {
+		int compared = 0;
+		for(File file : ValidationTestUtil.listTestFiles()) {
+			Model model = ValidationTestUtil.readFile(file);
+			Resource sequential = ValidationTestUtil.createEngine(model, model).validateAll();
+			
+			ValidationEngine engine = ValidationTestUtil.createEngine(model, model);
+			engine.setExecutorService(executorService);
+			engine.setChunkSize(2);
+			Resource parallel = engine.validateAll();
+			
+			Assert.assertTrue("Different reports for " + file, sequential.getModel().getGraph().isIsomorphicWith(parallel.getModel().getGraph()));
+			compared++;
+		}
+		Assert.assertTrue(compared > 100);
+	}
+	
+	
+	@Test
+	public void testMaxResultsPerFocusNode() throws Exception {
+		StringBuilder sb = new StringBuilder(
+				"ex:PersonShape a sh:NodeShape ;\n" +
+				"	sh:targetClass ex:Person ;\n" +
+				"	sh:property [ sh:path ex:age ; sh:minCount 1 ] ;\n" +
+				"	sh:property [ sh:path ex:name ; sh:minCount 1 ] .\n");
+		for(int i = 0; i < 30; i++) {
+			sb.append("ex:p" + i + " a ex:Person .\n");
+		}
+		Model model = ValidationTestUtil.readTurtle(sb.toString());
+		
+		ValidationEngine sequential = ValidationTestUtil.createEngine(model, model);
+		sequential.setMaxResultsPerFocusNode(1);
+		Resource sequentialReport = sequential.validateAll();
+		
+		ValidationEngine parallel = ValidationTestUtil.createEngine(model, model);
+		parallel.setMaxResultsPerFocusNode(1);
+		parallel.setExecutorService(executorService);
+		parallel.setChunkSize(4);
+		Resource parallelReport = parallel.validateAll();
+		
+		Assert.assertEquals(30, ValidationTestUtil.getResults(sequentialReport).size());
+		Assert.assertEquals(30, ValidationTestUtil.getResults(parallelReport).size());
+		Assert.assertFalse(sequential.conforms());
+		Assert.assertFalse(parallel.conforms());
+	}
+	
+	
+	@Test
+	public void testFailFastStopsSubmitting() throws Exception {
+		StringBuilder sb = new StringBuilder(
+				"ex:PersonShape a sh:NodeShape ;\n" +
+				"	sh:targetClass ex:Person ;\n" +
+				"	sh:property [ sh:path ex:age ; sh:minCount 1 ] .\n");
+		for(int i = 0; i < 2000; i++) {
+			sb.append("ex:p" + i + " a ex:Person .\n");
+		}
+		Model model = ValidationTestUtil.readTurtle(sb.toString());
+		
+		AtomicInteger submitted = new AtomicInteger();
+		ExecutorService counting = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>()) {
+			@Override
+			public void execute(Runnable command) {
+				submitted.incrementAndGet();
+				super.execute(command);
+			}
+		};
+		try {
+			ValidationEngine engine = ValidationTestUtil.createEngine(model, model);
+			engine.setFailFast(true);
+			engine.setExecutorService(counting);
+			engine.setChunkSize(1);
+			Resource report = engine.validateAll();
+			Assert.assertEquals(1, ValidationTestUtil.getResults(report).size());
+			Assert.assertFalse(engine.conforms());
+			// At most the tasks that were in flight when the first result got delivered
+			Assert.assertTrue("Submitted " + submitted.get(), submitted.get() <= 10);
+		}
+		finally {
+			counting.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package org.topbraid.shacl.validation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.validation.sparql.AbstractSPARQLExecutor;
+import org.topbraid.shacl.vocabulary.DASH;
+import org.topbraid.shacl.vocabulary.SH;
+
+/**
+ * Checks that a slow SPARQL constraint is stopped by the constraint timeout, by the
+ * timeout of the validation and by cancel(), including queries that are already running.
+ */
+public class TestStopValidation {
+
+	// Each execution of the query takes far longer than the timeouts of the tests
+	private final static String SHAPES =
+			"ex:PersonShape a sh:NodeShape ;\n" +
+			"	sh:targetClass ex:Person ;\n" +
+			"	sh:sparql [\n" +
+			"		sh:select \"\"\"SELECT $this WHERE { $this <http://example.org/ns#age> ?x . ?a <http://example.org/ns#age> ?y . ?b <http://example.org/ns#age> ?z . FILTER (?x + ?y + ?z < 0) }\"\"\" ] .\n";
+
+	// The most time that a stopped validation may take in milliseconds
+	private final static long MAX_TIME = 5000;
+
+
+	private static ValidationEngine createEngine() {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 3000; i++) {
+			sb.append("ex:p" + i + " a ex:Person ; ex:age " + (i % 200) + " .\n");
+		}
+		Model dataModel = ValidationTestUtil.readTurtle(sb.toString());
+		return ValidationTestUtil.createEngine(dataModel, ValidationTestUtil.readTurtle(SHAPES));
+	}
+
+
+	@Test(timeout = 60000)
+	public void testConstraintTimeout() throws Exception {
+		for(int batchSize : new int[] { 1, 500 }) {
+			int oldBatchSize = setBatchSize(batchSize);
+			try {
+				ValidationEngine engine = createEngine();
+				engine.setConstraintTimeout(200);
+				long startTime = System.currentTimeMillis();
+				Resource report = engine.validateAll();
+				Assert.assertTrue(System.currentTimeMillis() - startTime < MAX_TIME);
+				// One failure for each chunk of 1000 focus nodes
+				List<String> messages = getFailureMessages(report, SH.SPARQLConstraintComponent);
+				Assert.assertEquals(3, messages.size());
+				Assert.assertTrue(messages.get(0).startsWith("Constraint has exceeded"));
+			}
+			finally {
+				setBatchSize(oldBatchSize);
+			}
+		}
+	}
+
+
+	@Test(timeout = 60000)
+	public void testTimeout() throws Exception {
+		ValidationEngine engine = createEngine();
+		engine.setTimeout(1000);
+		long startTime = System.currentTimeMillis();
+		Resource report = engine.validateAll();
+		Assert.assertTrue(System.currentTimeMillis() - startTime < MAX_TIME);
+		List<String> messages = getFailureMessages(report, null);
+		Assert.assertEquals(1, messages.size());
+		Assert.assertTrue(messages.get(0).startsWith("Validation has exceeded"));
+	}
+
+
+	@Test(timeout = 60000)
+	public void testCancel() throws Exception {
+		ValidationEngine engine = createEngine();
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		try {
+			scheduler.schedule(() -> engine.cancel(), 1000, TimeUnit.MILLISECONDS);
+			long startTime = System.currentTimeMillis();
+			try {
+				engine.validateAll();
+				Assert.fail("Expected InterruptedException");
+			}
+			catch(InterruptedException ex) {
+				Assert.assertTrue(System.currentTimeMillis() - startTime < MAX_TIME);
+			}
+		}
+		finally {
+			scheduler.shutdownNow();
+		}
+	}
+
+
+	// Gets the messages of the failures, optionally only for a given constraint component
+	private static List<String> getFailureMessages(Resource report, Resource component) {
+		List<String> messages = new ArrayList<>();
+		for(Statement s : report.listProperties(SH.result).toList()) {
+			if(s.getResource().hasProperty(RDF.type, DASH.FailureResult) &&
+					(component == null || s.getResource().hasProperty(SH.sourceConstraintComponent, component))) {
+				messages.add(s.getResource().getProperty(SH.resultMessage).getString());
+			}
+		}
+		return messages;
+	}
+
+
+	private static int setBatchSize(int value) {
+		int old = AbstractSPARQLExecutor.batchSize;
+		AbstractSPARQLExecutor.batchSize = value;
+		return old;
+	}
+}
@@ -0,0 +1,95 @@
+package org.topbraid.shacl.validation;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.vocabulary.SH;
+
+/**
+ * Checks the counts, the bounded samples and the sh:conforms value of a ValidationSummary.
+ */
+public class TestValidationSummary {
+	
+	private final static String SHAPES =
+			"ex:PersonShape a sh:NodeShape ;\n" +
+			"	sh:targetClass ex:Person ;\n" +
+			"	sh:property [ sh:path ex:name ; sh:minCount 1 ; sh:message \"Missing name\" ] ;\n" +
+			"	sh:property [ sh:path ex:age ; sh:minCount 1 ; sh:severity sh:Warning ] .\n";
+	
+
+	@Test
+	public void testCountsAndSamples() throws Exception {
+		StringBuilder data = new StringBuilder();
+		for(int i = 0; i < 500; i++) {
+			data.append("ex:p" + i + " a ex:Person .\n");
+		}
+		ValidationSummary summary = ValidationUtil.summarizeModel(ValidationTestUtil.readTurtle(data.toString()), ValidationTestUtil.readTurtle(SHAPES), false, 10);
+		Assert.assertEquals(1000, summary.getTotalCount());
+		Assert.assertFalse(summary.conforms());
+		
+		List<ValidationSummary.Group> groups = summary.getGroups();
+		Assert.assertEquals(2, groups.size());
+		Set<Resource> severities = new HashSet<>();
+		for(ValidationSummary.Group group : groups) {
+			Assert.assertEquals(500, group.getCount());
+			Assert.assertEquals(10, group.getSamples().size());
+			Assert.assertEquals(SH.ValidationResult, group.getResultType());
+			Assert.assertEquals(SH.MinCountConstraintComponent, group.getComponent());
+			severities.add(group.getSeverity());
+			Set<RDFNode> focusNodes = new HashSet<>();
+			for(ValidationResult sample : group.getSamples()) {
+				focusNodes.add(sample.getFocusNode());
+			}
+			Assert.assertEquals(10, focusNodes.size());
+		}
+		Assert.assertEquals(2, severities.size());
+		
+		// The sample report holds the samples with their messages, but the sh:conforms of all results
+		Resource report = summary.createSampleReport();
+		Assert.assertEquals(20, report.listProperties(SH.result).toList().size());
+		Assert.assertTrue(report.hasLiteral(SH.conforms, false));
+		Assert.assertTrue(report.getModel().contains(null, SH.resultMessage, "Missing name"));
+	}
+	
+
+	@Test
+	public void testNoSamples() throws Exception {
+		Model dataModel = ValidationTestUtil.readTurtle("ex:a a ex:Person .\nex:b a ex:Person .\n");
+		ValidationSummary summary = ValidationUtil.summarizeModel(dataModel, ValidationTestUtil.readTurtle(SHAPES), false, 0);
+		Assert.assertEquals(4, summary.getTotalCount());
+		for(ValidationSummary.Group group : summary.getGroups()) {
+			Assert.assertEquals(2, group.getCount());
+			Assert.assertTrue(group.getSamples().isEmpty());
+		}
+	}
+	
+
+	@Test
+	public void testOnlyWarnings() throws Exception {
+		Model dataModel = ValidationTestUtil.readTurtle("ex:a a ex:Person ; ex:name \"A\" .\n");
+		Model shapesModel = ValidationTestUtil.readTurtle(SHAPES);
+		ValidationSummary summary = ValidationUtil.summarizeModel(dataModel, shapesModel, false, 5);
+		Assert.assertEquals(1, summary.getGroups().size());
+		Assert.assertEquals(SH.Warning, summary.getGroups().get(0).getSeverity());
+		
+		// Like a full report, warnings do not conform
+		Assert.assertFalse(summary.conforms());
+		Assert.assertTrue(ValidationUtil.validateModel(dataModel, shapesModel, false).hasLiteral(SH.conforms, false));
+	}
+	
+
+	@Test
+	public void testConforms() throws Exception {
+		Model dataModel = ValidationTestUtil.readTurtle("ex:a a ex:Person ; ex:name \"A\" ; ex:age 42 .\n");
+		ValidationSummary summary = ValidationUtil.summarizeModel(dataModel, ValidationTestUtil.readTurtle(SHAPES), false, 5);
+		Assert.assertTrue(summary.conforms());
+		Assert.assertEquals(0, summary.getTotalCount());
+		Assert.assertTrue(summary.createSampleReport().hasLiteral(SH.conforms, true));
+	}
+}
@@ -0,0 +1,78 @@
+package org.topbraid.shacl.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.engine.Constraint;
+import org.topbraid.shacl.engine.Shape;
+import org.topbraid.shacl.vocabulary.SH;
+
+/**
+ * Checks that the value nodes of a (focus node, path) pair are computed once per validation run.
+ */
+public class TestValueNodesCache {
+	
+	private final static String SHAPES =
+			"ex:PersonShape a sh:NodeShape ;\n" +
+			"	sh:targetClass ex:Person ;\n" +
+			"	sh:property ex:PersonShape-knows .\n" +
+			"ex:PersonShape-knows\n" +
+			"	sh:path [ sh:alternativePath ( ex:knows ex:likes ) ] ;\n" +
+			"	sh:minCount 1 ;\n" +
+			"	sh:nodeKind sh:IRI .\n";
+	
+
+	@Test
+	public void testSharedWithinRun() throws Exception {
+		Model dataModel = ValidationTestUtil.readTurtle(
+				"ex:a a ex:Person ; ex:knows ex:b ; ex:likes ex:b .\n");
+		ValidationEngine engine = ValidationTestUtil.createEngine(dataModel, ValidationTestUtil.readTurtle(SHAPES));
+		List<Constraint> constraints = getConstraints(engine);
+		Assert.assertEquals(2, constraints.size());
+		Resource a = dataModel.getResource(ValidationTestUtil.NS + "a");
+		List<RDFNode> values = engine.getValueNodes(constraints.get(0), a);
+		
+		// Distinct values, shared by the constraints of the same shape
+		Assert.assertEquals(Arrays.asList(dataModel.getResource(ValidationTestUtil.NS + "b")), values);
+		Assert.assertSame(values, engine.getValueNodes(constraints.get(1), a));
+		
+		// A new validation run sees the changes of the data
+		a.addProperty(dataModel.getProperty(ValidationTestUtil.NS + "likes"), dataModel.getResource(ValidationTestUtil.NS + "c"));
+		Assert.assertSame(values, engine.getValueNodes(constraints.get(0), a));
+		engine.validateAll();
+		Assert.assertEquals(2, engine.getValueNodes(constraints.get(0), a).size());
+	}
+	
+
+	@Test
+	public void testHubNodesNotCached() throws Exception {
+		Model dataModel = ValidationTestUtil.readTurtle("ex:a a ex:Person .\n");
+		Resource a = dataModel.getResource(ValidationTestUtil.NS + "a");
+		for(int i = 0; i < 1001; i++) {
+			dataModel.getGraph().add(Triple.create(a.asNode(), 
+					NodeFactory.createURI(ValidationTestUtil.NS + "knows"), NodeFactory.createURI(ValidationTestUtil.NS + "n" + i)));
+		}
+		ValidationEngine engine = ValidationTestUtil.createEngine(dataModel, ValidationTestUtil.readTurtle(SHAPES));
+		Constraint constraint = getConstraints(engine).get(0);
+		List<RDFNode> values = engine.getValueNodes(constraint, a);
+		Assert.assertEquals(1001, values.size());
+		Assert.assertNotSame(values, engine.getValueNodes(constraint, a));
+		Assert.assertTrue(engine.validateAll().hasLiteral(SH.conforms, true));
+	}
+	
+	
+	private static List<Constraint> getConstraints(ValidationEngine engine) {
+		Shape shape = engine.getShapesGraph().getShape(NodeFactory.createURI(ValidationTestUtil.NS + "PersonShape-knows"));
+		List<Constraint> constraints = new ArrayList<>();
+		shape.getConstraints().forEach(constraints::add);
+		return constraints;
+	}
+}
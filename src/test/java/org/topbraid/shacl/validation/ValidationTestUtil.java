@@ -0,0 +1,148 @@
+package org.topbraid.shacl.validation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import javax.script.ScriptEngineManager;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.compose.MultiUnion;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.util.FileUtils;
+import org.apache.jena.vocabulary.RDF;
+import org.topbraid.shacl.arq.SHACLFunctions;
+import org.topbraid.shacl.engine.ShapesGraph;
+import org.topbraid.shacl.engine.filters.ExcludeMetaShapesFilter;
+import org.topbraid.shacl.util.SHACLSystemModel;
+import org.topbraid.shacl.vocabulary.SH;
+import org.topbraid.shacl.vocabulary.TOSH;
+import org.topbraid.spin.arq.ARQFactory;
+import org.topbraid.spin.util.JenaUtil;
+
+/**
+ * Helpers for the tests of the ValidationEngine and its modes.
+ */
+public class ValidationTestUtil {
+	
+	public final static String PREFIXES = 
+			"@prefix sh: <http://www.w3.org/ns/shacl#> .\n" +
+			"@prefix ex: <http://example.org/ns#> .\n" +
+			"@prefix rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> .\n" +
+			"@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n" +
+			"@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n";
+	
+	public final static String NS = "http://example.org/ns#";
+
+	
+	/**
+	 * Creates a ValidationEngine like ValidationUtil does, but without validating the shapes themselves.
+	 */
+	public static ValidationEngine createEngine(Model dataModel, Model shapesModel) {
+		return createEngine(dataModel, new ShapesGraph(withSystemGraph(shapesModel)), shapesModel);
+	}
+	
+	
+	public static ValidationEngine createEngine(Model dataModel, ShapesGraph shapesGraph, Model shapesModel) {
+		shapesModel = withSystemGraph(shapesModel);
+		SHACLFunctions.registerFunctions(shapesModel);
+		URI shapesGraphURI = URI.create("urn:x-shacl-shapes-graph:" + UUID.randomUUID().toString());
+		Dataset dataset = ARQFactory.get().getDataset(dataModel);
+		dataset.addNamedModel(shapesGraphURI.toString(), shapesModel);
+		if(!shapesGraph.isCompiled()) {
+			shapesGraph.setShapeFilter(new ExcludeMetaShapesFilter());
+		}
+		return ValidationEngineFactory.get().create(dataset, shapesGraphURI, shapesGraph, null);
+	}
+	
+	
+	/**
+	 * Gets a sorted, human-readable form of the results of a report, so that reports can be compared
+	 * independent of blank node labels and of the order of the results.
+	 */
+	public static List<String> getResults(Resource report) {
+		List<String> results = new ArrayList<>();
+		for(Statement s : report.listProperties(SH.result).toList()) {
+			results.add(getResult(s.getResource()));
+		}
+		Collections.sort(results);
+		return results;
+	}
+	
+	
+	private static String getResult(Resource result) {
+		List<String> values = new ArrayList<>();
+		for(Statement s : result.listProperties().toList()) {
+			RDFNode object = s.getObject();
+			values.add(s.getPredicate().getLocalName() + "=" + (object.isAnon() ? "_" : object.toString()));
+		}
+		Collections.sort(values);
+		return values.toString();
+	}
+	
+	
+	/**
+	 * Lists the Turtle files of the DASH test cases.
+	 * The qualified value shape components only have JavaScript validators, so their test files
+	 * are skipped on Java versions without a JavaScript engine.
+	 */
+	public static List<File> listTestFiles() throws Exception {
+		List<File> files = new ArrayList<>();
+		collectTestFiles(new File("src/test/resources/sh/tests"), files, new ScriptEngineManager().getEngineByName("nashorn") != null);
+		Collections.sort(files);
+		return files;
+	}
+	
+	
+	private static void collectTestFiles(File folder, List<File> files, boolean js) throws Exception {
+		for(File f : folder.listFiles()) {
+			if(f.isDirectory()) {
+				collectTestFiles(f, files, js);
+			}
+			else if(f.getName().endsWith(".ttl") && (js || !new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8).contains("sh:qualifiedValueShape"))) {
+				files.add(f);
+			}
+		}
+	}
+	
+	
+	public static Model readFile(File file) throws Exception {
+		Model model = JenaUtil.createMemoryModel();
+		try(InputStream is = new FileInputStream(file)) {
+			model.read(is, "urn:dummy", FileUtils.langTurtle);
+		}
+		return model;
+	}
+	
+	
+	public static Model readTurtle(String turtle) {
+		Model model = JenaUtil.createMemoryModel();
+		model.read(new StringReader(PREFIXES + turtle), "urn:dummy", FileUtils.langTurtle);
+		return model;
+	}
+	
+	
+	public static Model withSystemGraph(Model shapesModel) {
+		if(shapesModel.contains(TOSH.hasShape, RDF.type, (RDFNode)null)) {
+			return shapesModel;
+		}
+		MultiUnion unionGraph = new MultiUnion(new Graph[] {
+			SHACLSystemModel.getSHACLModel().getGraph(),
+			shapesModel.getGraph()
+		});
+		return ModelFactory.createModelForGraph(unionGraph);
+	}
+}
@@ -0,0 +1,130 @@
+package org.topbraid.shacl.validation.sparql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.path.Path;
+import org.apache.jena.sparql.path.PathParser;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.shacl.validation.ValidationTestUtil;
+import org.topbraid.spin.arq.ARQFactory;
+
+/**
+ * Checks the syntax tree based substitution of $PATH in SPARQL-based constraints.
+ */
+public class TestPathSubstitution {
+	
+	private final static String DATA = 
+			"ex:a ex:p ex:b .\n" +
+			"ex:b ex:q ex:c .\n" +
+			"ex:d ex:p ex:a .\n";
+	
+
+	@Test
+	public void testSequencePath() throws Exception {
+		assertSubstituted("SELECT $this ?value WHERE { $this $PATH ?value }", "ex:p/ex:q", "http://example.org/ns#c");
+	}
+	
+
+	@Test
+	public void testInversePath() throws Exception {
+		assertSubstituted("SELECT $this ?value WHERE { $this $PATH ?value }", "^ex:p", "http://example.org/ns#a", "http://example.org/ns#d");
+	}
+	
+
+	@Test
+	public void testSubQuery() throws Exception {
+		assertSubstituted("SELECT $this ?value WHERE { { SELECT $this ?value WHERE { $this $PATH ?value } } }", "ex:p/ex:q", "http://example.org/ns#c");
+	}
+	
+
+	@Test
+	public void testExists() throws Exception {
+		assertSubstituted("SELECT $this ?value WHERE { $this ex:p ?value . FILTER EXISTS { ?value $PATH ?other } }", "ex:q", "http://example.org/ns#b");
+	}
+	
+
+	@Test
+	public void testPathVarAsStringIgnored() throws Exception {
+		assertSubstituted("SELECT $this ?value WHERE { $this $PATH ?value . FILTER (STR(?value) != \"?PATH\") }", "^ex:p", "http://example.org/ns#a", "http://example.org/ns#d");
+	}
+	
+
+	@Test
+	public void testPathVarInSubQueryProjection() throws Exception {
+		assertNotSubstituted("SELECT $this WHERE { { SELECT $this ?PATH WHERE { $this ?PATH ?value } } }");
+	}
+	
+
+	@Test
+	public void testPathVarInSubQueryObject() throws Exception {
+		assertNotSubstituted("SELECT $this WHERE { { SELECT $this WHERE { $this ex:p ?PATH } } }");
+	}
+	
+
+	@Test
+	public void testPathVarInFilter() throws Exception {
+		assertNotSubstituted("SELECT $this ?value WHERE { $this $PATH ?value . FILTER (?PATH != ex:p) }");
+	}
+	
+
+	@Test
+	public void testPathVarInExists() throws Exception {
+		assertNotSubstituted("SELECT $this ?value WHERE { $this $PATH ?value . FILTER NOT EXISTS { ?PATH ex:p ?value } }");
+	}
+	
+
+	@Test
+	public void testPathVarInBind() throws Exception {
+		assertNotSubstituted("SELECT $this ?value WHERE { $this $PATH ?value . BIND (?PATH AS ?p) }");
+	}
+	
+	
+	private void assertNotSubstituted(String queryString) throws Exception {
+		Path path = PathParser.parse("ex:p/ex:q", ValidationTestUtil.readTurtle("").getGraph().getPrefixMapping());
+		Assert.assertNull(SPARQLSubstitutions.substitutePaths(parse(queryString), path));
+	}
+	
+	
+	private void assertSubstituted(String queryString, String pathString, String... expectedValues) throws Exception {
+		Model model = ValidationTestUtil.readTurtle(DATA);
+		Path path = PathParser.parse(pathString, model.getGraph().getPrefixMapping());
+		Query query = parse(queryString);
+		Query result = SPARQLSubstitutions.substitutePaths(query, path);
+		Assert.assertNotNull(result);
+		Assert.assertNotSame(query, result);
+		Assert.assertEquals(Arrays.asList(expectedValues), getValues(result, model));
+		
+		// Must agree with the string-based substitution
+		Query fallback = SPARQLSubstitutions.substitutePaths(query, "(" + pathString + ")", model);
+		Assert.assertEquals(getValues(fallback, model), getValues(result, model));
+	}
+	
+	
+	private static List<String> getValues(Query query, Model model) {
+		List<String> values = new ArrayList<>();
+		try(QueryExecution qexec = ARQFactory.get().createQueryExecution(query, model)) {
+			ResultSet rs = qexec.execSelect();
+			while(rs.hasNext()) {
+				QuerySolution qs = rs.next();
+				values.add(qs.get("value").toString());
+			}
+		}
+		Collections.sort(values);
+		return values;
+	}
+	
+	
+	private static Query parse(String queryString) throws Exception {
+		Model model = ValidationTestUtil.readTurtle("");
+		return ARQFactory.get().createQuery(model, queryString);
+	}
+}